@@ -0,0 +1,158 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ *	Description:
+ *		Compares running compiled programs on TACMachine with running them
+ *		as classes from TACClassWriter. Each program is optimized, then run
+ *		on the same batch of random variable values by both back ends; the
+ *		results are checked against each other and the best time per run
+ *		over several rounds is printed.
+ *
+ *		Usage:
+ *			BackendBenchmark [-r runs] file...
+ *
+ *		Variables start between 1 and 9, so that the sample programs do not
+ *		divide by zero.
+ */
+public class BackendBenchmark {
+	
+	/**
+	 * Number of different stores in a batch
+	 */
+	private static final int STORES = 1024;
+	
+	/**
+	 * Rounds run before timing
+	 */
+	private static final int WARMUP = 5;
+	
+	/**
+	 * Rounds timed
+	 */
+	private static final int ROUNDS = 5;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int runs = 1 << 20;
+		int first = 0;
+		if(args.length > 1 && args[0].equals("-r")){
+			runs = Integer.parseInt(args[1]);
+			first = 2;
+		}
+		if(first == args.length){
+			System.err.println("Usage: BackendBenchmark [-r runs] file...");
+			System.exit(2);
+		}
+		try{
+			for(int f = first; f < args.length; ++f){
+				benchmark(args[f], runs);
+			}
+		}catch(IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+	
+	/**Method: benchmark(String, int)
+	 * Description:
+	 * 		Compiles a source file and times both back ends on it.
+	 * @param fileName
+	 * @param runs	Number of runs timed in each round
+	 * @throws IOException
+	 */
+	private static void benchmark(String fileName, int runs) throws IOException{
+		LexicalAnalyzer lex = new LexicalAnalyzer(fileName);
+		QuadBuffer quads = new QuadBuffer();
+		SyntacticAnalyzer parser = new SyntacticAnalyzer(lex, new ValueNumbering(new TempAllocation(new Peephole(quads))));
+		parser.setFolding(true);
+		if(!parser.analyze()){
+			System.out.println(fileName + ": syntax errors, skipped");
+			return;
+		}
+		TACMachine machine = new TACMachine(quads, lex.symbols());
+		TACClassWriter writer = new TACClassWriter(quads, lex.symbols());
+		TACProgram program = writer.load();
+		
+		//Same initial values for both, in each one's slots
+		Random random = new Random(42);
+		int variables = machine.variables();
+		long[][] machineStores = new long[STORES][];
+		long[][] programStores = new long[STORES][];
+		for(int s = 0; s < STORES; ++s){
+			machineStores[s] = machine.newStore();
+			programStores[s] = new long[writer.variables()];
+			for(int slot = 0; slot < variables; ++slot){
+				long value = 1 + random.nextInt(9);
+				machineStores[s][slot] = value;
+				programStores[s][writer.slot(machine.name(slot))] = value;
+			}
+		}
+		
+		long machineBest = Long.MAX_VALUE;
+		long programBest = Long.MAX_VALUE;
+		long machineSum = 0;
+		long programSum = 0;
+		for(int round = 0; round < WARMUP + ROUNDS; ++round){
+			long start = System.nanoTime();
+			machineSum = runMachine(machine, machineStores, runs);
+			long middle = System.nanoTime();
+			programSum = runProgram(program, programStores, runs);
+			long end = System.nanoTime();
+			if(round >= WARMUP){
+				machineBest = Math.min(machineBest, middle - start);
+				programBest = Math.min(programBest, end - middle);
+			}
+		}
+		if(machineSum != programSum){
+			throw new IllegalStateException(fileName + ": the back ends disagree");
+		}
+		System.out.printf("%s: %d quads, TACMachine %.1f ns/run, TACClassWriter %.1f ns/run (%.1fx)%n",
+				fileName, quads.size(), (double) machineBest / runs, (double) programBest / runs,
+				(double) machineBest / programBest);
+	}
+	
+	/**Method: runMachine(TACMachine, long[][], int)
+	 * @param machine
+	 * @param stores	Initial stores, cycled through
+	 * @param runs
+	 * @return	Sum of the final values, to check the results
+	 */
+	private static long runMachine(TACMachine machine, long[][] stores, int runs){
+		long sum = 0;
+		long[] store = machine.newStore();
+		for(int run = 0; run < runs; ++run){
+			long[] initial = stores[run & (STORES - 1)];
+			System.arraycopy(initial, 0, store, 0, initial.length);
+			machine.execute(store);
+			for(int slot = 0; slot < machine.variables(); ++slot){
+				sum += store[slot];
+			}
+		}
+		return sum;
+	}
+	
+	/**Method: runProgram(TACProgram, long[][], int)
+	 * @param program
+	 * @param stores	Initial variables, cycled through
+	 * @param runs
+	 * @return	Sum of the final values, to check the results
+	 */
+	private static long runProgram(TACProgram program, long[][] stores, int runs){
+		long sum = 0;
+		long[] variables = new long[stores[0].length];
+		for(int run = 0; run < runs; ++run){
+			long[] initial = stores[run & (STORES - 1)];
+			System.arraycopy(initial, 0, variables, 0, initial.length);
+			program.run(variables);
+			for(int slot = 0; slot < variables.length; ++slot){
+				sum += variables[slot];
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,363 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *	Description:
+ *		Measures the throughput of the front end of the compiler, phase by
+ *		phase, on source files and on synthetic inputs scaled up from them:
+ *			lex		LexicalAnalyzer.nextLine() over the whole source
+ *			parse	lexing, parsing and emitting the quads to a sink that
+ *					only counts them
+ *			emit	the same, with the quads written as text by TACWriter
+ *					to a stream that discards them
+ *			compile	BatchCompiler.compileFile() on a memory-mapped copy of
+ *					the source, writing its .tac file
+ *		Each benchmark runs for a warmup period, then for several timed
+ *		rounds; the mean over the rounds is printed as operations per
+ *		second, tokens or quads per second, MB of source per second, and
+ *		bytes allocated by the benchmark's thread per operation.
+ *
+ *		Usage:
+ *			CompilerBenchmark [-size MB] [-b lex|parse|emit|compile] file...
+ *
+ *		Each file is also scaled up by repeating its statements until the
+ *		source reaches the given size, 4MB by default, 0 to skip. Invalid
+ *		programs are skipped. The same benchmarks run under JMH from the
+ *		jmh module (see jmh/pom.xml).
+ */
+public class CompilerBenchmark {
+	
+	/**
+	 * Warmup period of a benchmark
+	 */
+	private static final long WARMUP_NANOS = 2000000000L;
+	
+	/**
+	 * Length of a timed round
+	 */
+	private static final long ROUND_NANOS = 1000000000L;
+	
+	/**
+	 * Rounds timed
+	 */
+	private static final int ROUNDS = 5;
+	
+	/**
+	 * Body of a program, between PROGRAM and END .
+	 */
+	private static final Pattern BODY = Pattern.compile("^\\s*program\\b(.*)\\bend\\s*\\.\\s*$",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	
+	/**
+	 * Names of the benchmarks, in the order they run
+	 */
+	private static final String[] BENCHMARKS = {"lex", "parse", "emit", "compile"};
+	
+	/**
+	 * Allocation counter of the threads, null if the JVM has none
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+	
+	/**
+	 * Keeps the results of the benchmarks alive
+	 */
+	private static long blackhole;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		long size = 4L << 20;
+		String only = null;
+		int first = 0;
+		while(first + 1 < args.length && args[first].startsWith("-")){
+			if(args[first].equals("-size")){
+				size = (long) (Double.parseDouble(args[first + 1]) * (1 << 20));
+			}else if(args[first].equals("-b")){
+				only = args[first + 1];
+			}else{
+				break;
+			}
+			first += 2;
+		}
+		if(first == args.length){
+			System.err.println("Usage: CompilerBenchmark [-size MB] [-b lex|parse|emit|compile] file...");
+			System.exit(2);
+		}
+		try{
+			Path directory = Files.createTempDirectory("tac-bench");
+			try{
+				for(int f = first; f < args.length; ++f){
+					byte[] source = Files.readAllBytes(Paths.get(args[f]));
+					String name = Paths.get(args[f]).getFileName().toString();
+					benchmark(name, source, only, directory);
+					if(size > 0){
+						byte[] scaled = scale(source, size);
+						if(scaled != null){
+							benchmark(name + "@" + (scaled.length >> 10) + "K", scaled, only, directory);
+						}
+					}
+				}
+			}finally{
+				delete(directory);
+			}
+		}catch(IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		if(blackhole == 42){
+			System.out.println();
+		}
+	}
+	
+	/**Method: benchmark(String, byte[], String, Path)
+	 * Description:
+	 * 		Runs the benchmarks on one source.
+	 * @param name		Name of the source, as printed
+	 * @param source
+	 * @param only		Name of the only benchmark to run, null to run them all
+	 * @param directory	Directory for the files of the compile benchmark
+	 * @throws IOException
+	 */
+	private static void benchmark(String name, byte[] source, String only, Path directory) throws IOException{
+		final ByteBuffer buffer = ByteBuffer.wrap(source);
+		final LexicalAnalyzer lex = new LexicalAnalyzer(buffer.duplicate());
+		final TokenBuffer tokens = new TokenBuffer();
+		final Counter counter = new Counter();
+		final SyntacticAnalyzer parser = new SyntacticAnalyzer(lex, counter);
+		final SyntacticAnalyzer emitter = new SyntacticAnalyzer(lex, OutputStream.nullOutputStream());
+		final Path file = directory.resolve(name);
+		Files.write(file, source);
+		
+		lex.reset(buffer.duplicate());
+		parser.reset();
+		if(!parser.analyze()){
+			System.out.println(name + ": syntax errors, skipped");
+			return;
+		}
+		
+		for(String benchmark : BENCHMARKS){
+			if(only != null && !only.equals(benchmark)){
+				continue;
+			}
+			Operation operation;
+			String unit;
+			if(benchmark.equals("lex")){
+				unit = "tokens";
+				operation = new Operation() {
+					@Override
+					public long run() throws IOException {
+						lex.reset(buffer.duplicate());
+						long count = 0;
+						boolean more = true;
+						while(more){
+							tokens.clear();
+							more = lex.nextLine(tokens);
+							count += tokens.size();
+						}
+						return count;
+					}
+				};
+			}else if(benchmark.equals("parse")){
+				unit = "quads";
+				operation = new Operation() {
+					@Override
+					public long run() throws IOException {
+						lex.reset(buffer.duplicate());
+						parser.reset();
+						counter.quads = 0;
+						parser.analyze();
+						return counter.quads;
+					}
+				};
+			}else if(benchmark.equals("emit")){
+				unit = "quads";
+				final long quads = counter.quads;
+				operation = new Operation() {
+					@Override
+					public long run() throws IOException {
+						lex.reset(buffer.duplicate());
+						emitter.reset();
+						emitter.analyze();
+						return quads;
+					}
+				};
+			}else{
+				unit = "quads";
+				final long quads = counter.quads;
+				operation = new Operation() {
+					@Override
+					public long run() throws IOException {
+						BatchCompiler.compileFile(file, true);
+						return quads;
+					}
+				};
+			}
+			measure(name, benchmark, operation, source.length, unit);
+		}
+	}
+	
+	/**Method: measure(String, String, Operation, long, String)
+	 * Description:
+	 * 		Warms an operation up, times it over the rounds and prints the
+	 * 		mean throughput.
+	 * @param name		Name of the source
+	 * @param benchmark	Name of the benchmark
+	 * @param operation
+	 * @param bytes		Size of the source
+	 * @param unit		What the operation counts
+	 * @throws IOException
+	 */
+	private static void measure(String name, String benchmark, Operation operation, long bytes, String unit) throws IOException{
+		long start = System.nanoTime();
+		while(System.nanoTime() - start < WARMUP_NANOS){
+			blackhole += operation.run();
+		}
+		
+		long operations = 0;
+		long items = 0;
+		long nanos = 0;
+		long allocated = 0;
+		for(int round = 0; round < ROUNDS; ++round){
+			long allocatedBefore = allocated();
+			start = System.nanoTime();
+			long now;
+			do{
+				items += operation.run();
+				++operations;
+				now = System.nanoTime();
+			}while(now - start < ROUND_NANOS);
+			nanos += now - start;
+			allocated += allocated() - allocatedBefore;
+		}
+		blackhole += items;
+		
+		double seconds = nanos / 1e9;
+		System.out.printf("%-24s %-8s %12.1f ops/s %14.0f %s/s %9.1f MB/s %12s B/op%n",
+				name, benchmark, operations / seconds, items / seconds, unit,
+				bytes * operations / seconds / (1 << 20),
+				THREADS == null ? "n/a" : String.format("%.0f", (double) allocated / operations));
+	}
+	
+	/**Method: scale(byte[], long)
+	 * Description:
+	 * 		Builds a synthetic program by repeating the statements of a
+	 * 		program until it reaches a size.
+	 * @param source	A program
+	 * @param size		Size to reach, in bytes
+	 * @return	The scaled program, null if the source is not a single program
+	 */
+	private static byte[] scale(byte[] source, long size){
+		Matcher matcher = BODY.matcher(new String(source, StandardCharsets.ISO_8859_1));
+		if(!matcher.matches()){
+			return null;
+		}
+		String body = matcher.group(1).trim();
+		if(body.isEmpty() || body.length() >= size){
+			return null;
+		}
+		if(!body.endsWith(";")){
+			body += ";";
+		}
+		StringBuilder builder = new StringBuilder((int) Math.min(size + body.length() + 16, Integer.MAX_VALUE - 16));
+		builder.append("program\n");
+		while(builder.length() < size){
+			builder.append(body).append('\n');
+		}
+		builder.append("end.\n");
+		return builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+	
+	/**Method: allocated(void)
+	 * @return	Bytes allocated so far by the current thread, 0 if unknown
+	 */
+	private static long allocated(){
+		return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+	
+	/**Method: threads(void)
+	 * @return	The JVM's thread bean if it counts the allocated bytes, null otherwise
+	 */
+	private static com.sun.management.ThreadMXBean threads(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if(threads.isThreadAllocatedMemorySupported()){
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return threads;
+			}
+		}
+		return null;
+	}
+	
+	/**Method: delete(Path)
+	 * Description:
+	 * 		Deletes the files of the compile benchmark and their directory.
+	 * @param directory
+	 * @throws IOException
+	 */
+	private static void delete(Path directory) throws IOException{
+		DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+		try{
+			for(Path file : files){
+				Files.delete(file);
+			}
+		}finally{
+			files.close();
+		}
+		Files.delete(directory);
+	}
+	
+	/**
+	 *	Description:
+	 *		One operation of a benchmark.
+	 */
+	private interface Operation{
+		
+		/**Method: run(void)
+		 * @return	Number of tokens or quads processed
+		 * @throws IOException
+		 */
+		long run() throws IOException;
+	}
+	
+	/**
+	 *	Description:
+	 *		Sink counting the quads it is handed, and discarding them.
+	 */
+	private static class Counter implements TACSink{
+		
+		/**
+		 * Quads counted
+		 */
+		private long quads;
+		
+		/*
+		 * (non-Javadoc)
+		 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+		 */
+		@Override
+		public void accept(QuadBuffer quads) throws IOException{
+			this.quads += quads.size();
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see edu.utt.wallace.syntax.TACSink#flush()
+		 */
+		@Override
+		public void flush() throws IOException{
+		}
+	}
+}
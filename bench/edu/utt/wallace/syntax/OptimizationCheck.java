@@ -0,0 +1,196 @@
+package edu.utt.wallace.syntax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ *	Description:
+ *		Checks the optimization passes against the plain 3AC: programs from
+ *		ProgramGenerator are compiled with and without each pass, run on
+ *		TACMachine from the same random variable values, and the final
+ *		values of the variables must agree. Half the runs start the
+ *		variables between 1 and 9, the others between -9 and 9. A run
+ *		that divides by zero or loops without the pass is skipped; one
+ *		that does so only with the pass is a failure.
+ *
+ *		Usage:
+ *			OptimizationCheck [-random count]
+ *
+ *		Always checks the programs that once miscompiled (see CASES), then
+ *		count programs of random seeds and knobs, 0 by default.
+ */
+public class OptimizationCheck {
+	
+	/**
+	 * Programs that once miscompiled: seed, statements, depth, nesting, variables
+	 */
+	private static final int[][] CASES = {
+		{3489, 10, 0, 0, 7},	//Peephole copies: e = #c mod 71 + 494 mod a;
+		{2896, 5, 0, 1, 2},		//Peephole copies: b = 429 ^ #a mod #b;
+		{2896, 10, 0, 1, 2},
+	};
+	
+	/**
+	 * Runs of each program
+	 */
+	private static final int RUNS = 64;
+	
+	/**
+	 * Jumps a run may take before it is deemed to loop
+	 */
+	private static final long JUMPS = 100000;
+	
+	/**
+	 * Passes checked, as named by pipeline()
+	 */
+	private static final String[] PASSES = {"peephole", "copies", "retarget", "jumps", "values", "temps", "dead", "all"};
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int count = 0;
+		if(args.length == 2 && args[0].equals("-random")){
+			count = Integer.parseInt(args[1]);
+		}else if(args.length != 0){
+			System.err.println("Usage: OptimizationCheck [-random count]");
+			System.exit(2);
+		}
+		int failures = 0;
+		try{
+			for(int[] c : CASES){
+				failures += check(c[0], c[1], c[2], c[3], c[4]);
+			}
+			Random random = new Random(42);
+			for(int i = 0; i < count; ++i){
+				failures += check(random.nextInt(1 << 20), 1 + random.nextInt(20), random.nextInt(4),
+						random.nextInt(3), 1 + random.nextInt(10));
+			}
+		}catch(IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		System.out.println((CASES.length + count) + " programs checked, " + failures + " failures");
+		if(failures > 0){
+			System.exit(1);
+		}
+	}
+	
+	/**Method: check(long, int, int, int, int)
+	 * Description:
+	 * 		Generates a program and checks every pass on it.
+	 * @return	Number of passes that changed the results
+	 * @throws IOException
+	 */
+	private static int check(long seed, int statements, int depth, int nesting, int variables) throws IOException{
+		ProgramGenerator generator = new ProgramGenerator(seed);
+		generator.setStatements(statements);
+		generator.setDepth(depth);
+		generator.setNesting(nesting);
+		generator.setVariables(variables);
+		ByteArrayOutputStream source = new ByteArrayOutputStream();
+		generator.generate(source);
+		String program = source.toString("ISO-8859-1");
+		
+		TACMachine plain = compile(program, null);
+		int failures = 0;
+		for(String pass : PASSES){
+			TACMachine optimized = compile(program, pass);
+			String failure = compare(plain, optimized);
+			if(failure != null){
+				System.out.println("seed " + seed + " (" + statements + " statements, depth " + depth + ", nesting "
+						+ nesting + ", " + variables + " variables), " + pass + ": " + failure);
+				++failures;
+			}
+		}
+		return failures;
+	}
+	
+	/**Method: compile(String, String)
+	 * @param program
+	 * @param pass	Pass to apply, null for none
+	 * @return	A machine running the compiled program
+	 */
+	private static TACMachine compile(String program, String pass){
+		LexicalAnalyzer lex = new LexicalAnalyzer((CharSequence) program);
+		QuadBuffer quads = new QuadBuffer();
+		SyntacticAnalyzer parser = new SyntacticAnalyzer(lex, pipeline(pass, lex.symbols(), quads));
+		parser.setQuiet(true);
+		parser.setMetrics(false);
+		if(!parser.analyze()){
+			throw new IllegalStateException("Generated program does not compile:\n" + program);
+		}
+		return new TACMachine(quads, lex.symbols());
+	}
+	
+	/**Method: pipeline(String, SymbolTable, TACSink)
+	 * @param pass
+	 * @param symbols
+	 * @param next
+	 * @return	The pass, sending its output to next
+	 */
+	private static TACSink pipeline(String pass, SymbolTable symbols, TACSink next){
+		if(pass == null){
+			return next;
+		}
+		switch(pass){
+		case "peephole":
+			return new Peephole(next);
+		case "copies":
+			return new Peephole(next, Peephole.COPIES);
+		case "retarget":
+			return new Peephole(next, Peephole.RETARGET);
+		case "jumps":
+			return new Peephole(next, Peephole.JUMPS);
+		case "values":
+			return new ValueNumbering(next);
+		case "temps":
+			return new TempAllocation(next);
+		case "dead":
+			return new DeadCodeElimination(symbols, next);
+		default:
+			return new ValueNumbering(new TempAllocation(new Peephole(new DeadCodeElimination(symbols, next))));
+		}
+	}
+	
+	/**Method: compare(TACMachine, TACMachine)
+	 * @param plain		The program without the pass
+	 * @param optimized	The program with the pass
+	 * @return	What differs, null if the results agree
+	 */
+	private static String compare(TACMachine plain, TACMachine optimized){
+		Random random = new Random(7);
+		for(int run = 0; run < RUNS; ++run){
+			long[] expected = plain.newStore();
+			long[] actual = optimized.newStore();
+			for(int slot = 0; slot < plain.variables(); ++slot){
+				long value = run % 2 == 0 ? 1 + random.nextInt(9) : random.nextInt(19) - 9;
+				expected[slot] = value;
+				int other = optimized.slot(plain.name(slot));
+				if(other >= 0){
+					actual[other] = value;
+				}
+			}
+			try{
+				plain.execute(expected, JUMPS);
+			}catch(ArithmeticException e){
+				continue;
+			}catch(IllegalStateException e){
+				continue;
+			}
+			try{
+				optimized.execute(actual, JUMPS);
+			}catch(RuntimeException e){
+				return "run " + run + " fails: " + e;
+			}
+			for(int slot = 0; slot < plain.variables(); ++slot){
+				int other = optimized.slot(plain.name(slot));
+				if(other >= 0 && actual[other] != expected[slot]){
+					return "run " + run + ": " + plain.name(slot) + " = " + actual[other] + " instead of " + expected[slot];
+				}
+			}
+		}
+		return null;
+	}
+}
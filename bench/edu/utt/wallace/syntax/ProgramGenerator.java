@@ -0,0 +1,461 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ *	Description:
+ *		Generates large valid programs for load and stress testing. The
+ *		programs use the whole grammar SyntacticAnalyzer accepts:
+ *		assignments, if ... then and while ... do statements nested in
+ *		each other, every binary and unary operator (+ - * / div mod ^ # ~),
+ *		every comparison, parentheses and {} comments.
+ *
+ *		The output is streamed, so the size of a program is only limited by
+ *		the disk, and it only depends on the seed and the knobs, so a given
+ *		command line always writes the same program:
+ *			statements	Number of top-level statements
+ *			size		Size to stop at, in bytes, 0 for no limit
+ *			depth		Nesting of parentheses in an expression, at most
+ *			variables	Number of distinct identifiers
+ *			nesting		Nesting of if and while statements, at most
+ *			comments	Percentage of statements preceded by a comment
+ *
+ *		Usage:
+ *			ProgramGenerator [-seed n] [-statements n] [-size MB] [-depth n]
+ *				[-variables n] [-nesting n] [-comments percent] file
+ *
+ *		With -size and no -statements, statements are generated until the
+ *		program reaches the size.
+ */
+public class ProgramGenerator {
+	
+	/**
+	 * Size of the output buffer
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Binary operators, the last two of which end their Term
+	 */
+	private static final String[] FACTOR_OPERATORS = {"*", "/", "div", "mod"};
+	
+	/**
+	 * Comparison operators
+	 */
+	private static final String[] COMPARISONS = {"=", "<", "<=", ">", ">=", "<>"};
+	
+	/**
+	 * Words of the comments
+	 */
+	private static final String[] WORDS = {"compute", "the", "next", "value", "of", "loop", "check", "bound", "sum", "total"};
+	
+	/**
+	 * Source of every choice
+	 */
+	private Random random;
+	
+	/**
+	 * Number of top-level statements
+	 */
+	private long statements = 1000;
+	
+	/**
+	 * Size at which to stop, 0 for no limit
+	 */
+	private long size;
+	
+	/**
+	 * Nesting of parentheses in an expression, at most
+	 */
+	private int depth = 4;
+	
+	/**
+	 * Spellings of the identifiers
+	 */
+	private String[] variables;
+	
+	/**
+	 * Nesting of if and while statements, at most
+	 */
+	private int nesting = 2;
+	
+	/**
+	 * Percentage of statements preceded by a comment
+	 */
+	private int comments = 5;
+	
+	/**
+	 * Output stream
+	 */
+	private OutputStream out;
+	
+	/**
+	 * Buffered output
+	 */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	/**
+	 * Number of bytes in buffer
+	 */
+	private int position;
+	
+	/**
+	 * Bytes written out of the buffer
+	 */
+	private long written;
+	
+	/**Constructor
+	 * @param seed	Seed of the choices
+	 */
+	public ProgramGenerator(long seed){
+		random = new Random(seed);
+		setVariables(64);
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		long seed = 1;
+		long statements = -1;
+		long size = 0;
+		int depth = -1;
+		int variables = -1;
+		int nesting = -1;
+		int comments = -1;
+		int first = 0;
+		try{
+			for(; first + 1 < args.length && args[first].startsWith("-"); first += 2){
+				String value = args[first + 1];
+				switch(args[first]){
+				case "-seed":
+					seed = Long.parseLong(value);
+					break;
+				case "-statements":
+					statements = Long.parseLong(value);
+					break;
+				case "-size":
+					size = (long) (Double.parseDouble(value) * (1 << 20));
+					break;
+				case "-depth":
+					depth = Integer.parseInt(value);
+					break;
+				case "-variables":
+					variables = Integer.parseInt(value);
+					break;
+				case "-nesting":
+					nesting = Integer.parseInt(value);
+					break;
+				case "-comments":
+					comments = Integer.parseInt(value);
+					break;
+				default:
+					first = args.length;	//Unknown option
+					break;
+				}
+			}
+		}catch(NumberFormatException e){
+			first = args.length;
+		}
+		if(first != args.length - 1){
+			System.err.println("Usage: ProgramGenerator [-seed n] [-statements n] [-size MB] [-depth n]");
+			System.err.println("\t[-variables n] [-nesting n] [-comments percent] file");
+			System.exit(2);
+		}
+		
+		ProgramGenerator generator = new ProgramGenerator(seed);
+		if(statements >= 0){
+			generator.setStatements(statements);
+		}else if(size > 0){
+			generator.setStatements(Long.MAX_VALUE);
+		}
+		generator.setSize(size);
+		if(depth >= 0){
+			generator.setDepth(depth);
+		}
+		if(variables > 0){
+			generator.setVariables(variables);
+		}
+		if(nesting >= 0){
+			generator.setNesting(nesting);
+		}
+		if(comments >= 0){
+			generator.setComments(comments);
+		}
+		try{
+			OutputStream out = Files.newOutputStream(Paths.get(args[first]));
+			try{
+				long bytes = generator.generate(out);
+				System.out.println(args[first] + ": " + bytes + " bytes");
+			}finally{
+				out.close();
+			}
+		}catch(IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+	
+	/**Method: setStatements(long)
+	 * @param statements	Number of top-level statements, 1000 by default
+	 */
+	public void setStatements(long statements){
+		this.statements = statements;
+	}
+	
+	/**Method: setSize(long)
+	 * Description:
+	 * 		Ends the program once it reaches a size, after the statement
+	 * 		crossing it, whatever the number of statements.
+	 * @param size	Size in bytes, 0 (the default) for no limit
+	 */
+	public void setSize(long size){
+		this.size = size;
+	}
+	
+	/**Method: setDepth(int)
+	 * @param depth	Nesting of parentheses in an expression, at most, 4 by default
+	 */
+	public void setDepth(int depth){
+		this.depth = depth;
+	}
+	
+	/**Method: setVariables(int)
+	 * Description:
+	 * 		Sets the vocabulary: a, b, ... z, a1, b1, ... z1, a2 ...
+	 * 		Identifiers never spell a keyword.
+	 * @param count	Number of distinct identifiers, 64 by default
+	 */
+	public void setVariables(int count){
+		variables = new String[count];
+		for(int i = 0; i < count; ++i){
+			char letter = (char) ('a' + i % 26);
+			variables[i] = i < 26 ? String.valueOf(letter) : letter + Integer.toString(i / 26);
+		}
+	}
+	
+	/**Method: setNesting(int)
+	 * @param nesting	Nesting of if and while statements, at most, 2 by default
+	 */
+	public void setNesting(int nesting){
+		this.nesting = nesting;
+	}
+	
+	/**Method: setComments(int)
+	 * @param comments	Percentage of statements preceded by a comment, 5 by default
+	 */
+	public void setComments(int comments){
+		this.comments = comments;
+	}
+	
+	/**Method: generate(OutputStream)
+	 * Description:
+	 * 		Writes a program. The stream is flushed, not closed.
+	 * @param out
+	 * @return	Number of bytes written
+	 * @throws IOException
+	 */
+	public long generate(OutputStream out) throws IOException{
+		this.out = out;
+		position = 0;
+		written = 0;
+		append("program\n");
+		for(long i = 0; i < statements && (size == 0 || written + position < size); ++i){
+			if(random.nextInt(100) < comments){
+				comment();
+				append('\n');
+			}
+			statement(0);
+			append(";\n");
+		}
+		append("end.\n");
+		flushBuffer();
+		out.flush();
+		return written;
+	}
+	
+	/**Method: statement(int)
+	 * Description:
+	 * 		Generates a statement:
+	 * 			id = Expr	|
+	 * 			if Expr compare Expr then Stmt	|
+	 * 			while Expr compare Expr do Stmt
+	 * @param level	Nesting of the statement
+	 * @throws IOException
+	 */
+	private void statement(int level) throws IOException{
+		int kind = level < nesting ? random.nextInt(8) : 7;
+		if(kind < 2){
+			append("if ");
+			condition();
+			append(" then\n");
+			indent(level + 1);
+			statement(level + 1);
+		}else if(kind < 3){
+			append("while ");
+			condition();
+			append(" do\n");
+			indent(level + 1);
+			statement(level + 1);
+		}else{
+			append(variable());
+			append(" = ");
+			expression(random.nextInt(depth + 1));
+		}
+	}
+	
+	/**Method: condition(void)
+	 * Description:
+	 * 		Generates Expr compare Expr.
+	 * @throws IOException
+	 */
+	private void condition() throws IOException{
+		expression(random.nextInt(depth + 1) / 2);
+		append(' ');
+		append(COMPARISONS[random.nextInt(COMPARISONS.length)]);
+		append(' ');
+		expression(random.nextInt(depth + 1) / 2);
+	}
+	
+	/**Method: expression(int)
+	 * Description:
+	 * 		Generates Expr -> Term { + Term | - Term }
+	 * @param depth	Nesting of parentheses left
+	 * @throws IOException
+	 */
+	private void expression(int depth) throws IOException{
+		term(depth);
+		for(int terms = random.nextInt(3); terms > 0; --terms){
+			append(random.nextBoolean() ? " + " : " - ");
+			term(depth);
+		}
+	}
+	
+	/**Method: term(int)
+	 * Description:
+	 * 		Generates Term -> Factor { * Factor | / Factor } [ div Factor | mod Factor ]
+	 * 		since div and mod end their Term.
+	 * @param depth	Nesting of parentheses left
+	 * @throws IOException
+	 */
+	private void term(int depth) throws IOException{
+		factor(depth);
+		for(int factors = random.nextInt(3); factors > 0; --factors){
+			String operator = FACTOR_OPERATORS[random.nextInt(FACTOR_OPERATORS.length)];
+			append(' ');
+			append(operator);
+			append(' ');
+			factor(depth);
+			if(operator.length() > 1){
+				break;
+			}
+		}
+	}
+	
+	/**Method: factor(int)
+	 * Description:
+	 * 		Generates Factor -> Base [ ^ Factor ]
+	 * @param depth	Nesting of parentheses left
+	 * @throws IOException
+	 */
+	private void factor(int depth) throws IOException{
+		base(depth);
+		while(random.nextInt(8) == 0){
+			append(" ^ ");
+			base(depth);
+		}
+	}
+	
+	/**Method: base(int)
+	 * Description:
+	 * 		Generates Base -> # Value | ~ Value | Value, and
+	 * 		Value -> ( Expr ) | id | num
+	 * @param depth	Nesting of parentheses left
+	 * @throws IOException
+	 */
+	private void base(int depth) throws IOException{
+		int unary = random.nextInt(16);
+		if(unary == 0){
+			append('#');
+		}else if(unary == 1){
+			append('~');
+		}
+		int value = random.nextInt(8);
+		if(depth > 0 && value < 2){
+			append('(');
+			expression(depth - 1);
+			append(')');
+		}else if(value < 5){
+			append(variable());
+		}else{
+			append(Integer.toString(random.nextInt(1000)));
+		}
+	}
+	
+	/**Method: variable(void)
+	 * @return	A random identifier of the vocabulary
+	 */
+	private String variable(){
+		return variables[random.nextInt(variables.length)];
+	}
+	
+	/**Method: comment(void)
+	 * Description:
+	 * 		Generates a { } comment of a few words.
+	 * @throws IOException
+	 */
+	private void comment() throws IOException{
+		append('{');
+		for(int words = 1 + random.nextInt(6); words > 0; --words){
+			append(' ');
+			append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		append(" }");
+	}
+	
+	/**Method: indent(int)
+	 * @param level	Number of tabs
+	 * @throws IOException
+	 */
+	private void indent(int level) throws IOException{
+		for(int i = 0; i < level; ++i){
+			append('\t');
+		}
+	}
+	
+	/**Method: append(String)
+	 * @param text	ASCII text to write
+	 * @throws IOException
+	 */
+	private void append(String text) throws IOException{
+		for(int i = 0; i < text.length(); ++i){
+			append(text.charAt(i));
+		}
+	}
+	
+	/**Method: append(char)
+	 * @param c	ASCII character to write
+	 * @throws IOException
+	 */
+	private void append(char c) throws IOException{
+		if(position == buffer.length){
+			flushBuffer();
+		}
+		buffer[position++] = (byte) c;
+	}
+	
+	/**Method: flushBuffer(void)
+	 * Description:
+	 * 		Writes the buffered bytes out, without flushing the stream.
+	 * @throws IOException
+	 */
+	private void flushBuffer() throws IOException{
+		out.write(buffer, 0, position);
+		written += position;
+		position = 0;
+	}
+}
@@ -0,0 +1,198 @@
+package edu.utt.wallace.syntax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *	Description:
+ *		JMH counterpart of CompilerBenchmark, for numbers JMH vouches for:
+ *			lex		LexicalAnalyzer.nextLine() over the whole source
+ *			parse	lexing, parsing and emitting the quads to a sink that
+ *					discards them
+ *			compile	BatchCompiler.compileFile() on a memory-mapped copy of
+ *					the source, writing its .tac file
+ *		Each runs on every sample program and on programs of several sizes
+ *		from ProgramGenerator, named gen:statements.
+ *
+ *		Usage (see pom.xml):
+ *			java -jar target/benchmarks.jar -prof gc [-p source=Program1.txt]
+ *		-prof gc adds the bytes allocated per operation to the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerJmh {
+	
+	/**
+	 * Prefix of the sources generated by ProgramGenerator
+	 */
+	private static final String GENERATED = "gen:";
+	
+	/**
+	 * Source benchmarked: a sample program, or gen: and a number of statements
+	 */
+	@Param({"Program1.txt", "Program2.txt", "Program3.txt", "Program4.txt", "Program5.txt", "Program6.txt",
+			"gen:100", "gen:10000", "gen:100000"})
+	public String source;
+	
+	/**
+	 * The source
+	 */
+	private ByteBuffer buffer;
+	
+	/**
+	 * Lexer of the lex and parse benchmarks
+	 */
+	private LexicalAnalyzer lex;
+	
+	/**
+	 * Tokens of a line
+	 */
+	private TokenBuffer tokens;
+	
+	/**
+	 * Parser of the parse benchmark
+	 */
+	private SyntacticAnalyzer parser;
+	
+	/**
+	 * Copy of the source for the compile benchmark
+	 */
+	private Path file;
+	
+	/**Method: setUp(void)
+	 * Description:
+	 * 		Loads or generates the source and checks that it compiles.
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException{
+		byte[] bytes = read(source);
+		buffer = ByteBuffer.wrap(bytes);
+		lex = new LexicalAnalyzer(buffer.duplicate());
+		tokens = new TokenBuffer();
+		parser = new SyntacticAnalyzer(lex, new Discard());
+		if(!parser.analyze()){
+			throw new IllegalStateException(source + " does not compile");
+		}
+		file = Files.createTempFile("tac-jmh", ".txt");
+		Files.write(file, bytes);
+	}
+	
+	/**Method: tearDown(void)
+	 * Description:
+	 * 		Deletes the copy of the source and its output.
+	 * @throws IOException
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException{
+		Files.deleteIfExists(file);
+		String name = file.getFileName().toString();
+		Files.deleteIfExists(file.resolveSibling(name.substring(0, name.length() - 4) + ".tac"));
+	}
+	
+	/**Method: lex(void)
+	 * @return	Number of tokens read
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long lex() throws IOException{
+		lex.reset(buffer.duplicate());
+		long count = 0;
+		boolean more = true;
+		while(more){
+			tokens.clear();
+			more = lex.nextLine(tokens);
+			count += tokens.size();
+		}
+		return count;
+	}
+	
+	/**Method: parse(void)
+	 * @return	Whether the source compiled
+	 */
+	@Benchmark
+	public boolean parse(){
+		lex.reset(buffer.duplicate());
+		parser.reset();
+		return parser.analyze();
+	}
+	
+	/**Method: compile(void)
+	 * @return	Whether the source compiled
+	 * @throws IOException
+	 */
+	@Benchmark
+	public boolean compile() throws IOException{
+		return BatchCompiler.compileFile(file, true);
+	}
+	
+	/**Method: read(String)
+	 * @param source	A sample program, or gen: and a number of statements
+	 * @return	Its text
+	 * @throws IOException
+	 */
+	private static byte[] read(String source) throws IOException{
+		if(source.startsWith(GENERATED)){
+			ProgramGenerator generator = new ProgramGenerator(1);
+			generator.setStatements(Long.parseLong(source.substring(GENERATED.length())));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			generator.generate(out);
+			return out.toByteArray();
+		}
+		InputStream in = CompilerJmh.class.getResourceAsStream("/" + source);
+		if(in == null){
+			throw new IOException("No sample program " + source);
+		}
+		try{
+			return in.readAllBytes();
+		}finally{
+			in.close();
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Sink discarding the quads it is handed.
+	 */
+	private static class Discard implements TACSink{
+		
+		/*
+		 * (non-Javadoc)
+		 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+		 */
+		@Override
+		public void accept(QuadBuffer quads) throws IOException{
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see edu.utt.wallace.syntax.TACSink#flush()
+		 */
+		@Override
+		public void flush() throws IOException{
+		}
+	}
+}
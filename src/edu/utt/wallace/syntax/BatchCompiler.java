@@ -0,0 +1,590 @@
+package edu.utt.wallace.syntax;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *	Description:
+ *		Compiles many source files at once on a work-stealing pool.
+ *		Every file gets its own SyntacticAnalyzer (and therefore its own
+ *		temp/label numbering), so the .tac written for each file is the same
+ *		as the one a serial run would produce.
+ *
+ *		Usage:
+ *			BatchCompiler [-j threads] [-mmap] [-binary] [-cache directory [-cache-size megabytes]]
+ *					[-metrics] [-fold] [-vn] [-temps] [-peephole] [-dce] (directory | file | @listFile)...
+ *
+ *		A directory compiles every *.txt file directly inside it, a file
+ *		compiles that file and @listFile compiles every path listed (one per
+ *		line) in listFile. Each X.txt is compiled to X.tac next to it.
+ *		With -mmap the sources are memory-mapped and scanned in place. With
+ *		-binary each X.txt is compiled to X.tacb instead (see TACBinaryWriter).
+ *		With -cache the output of every program compiled successfully is
+ *		kept in a CompilationCache in the directory (256 MB at most by
+ *		default), and a source already compiled gets its output from there.
+ *		With -metrics the CompilerMetrics of the run are registered as an
+ *		MXBean, counting the bytes allocated too, and printed at the end.
+ *
+ *		The 3AC is written as the parser generates it unless optimization
+ *		passes are asked for (see setPasses(int)):
+ *			-fold	constant folding in the parser (see
+ *					SyntacticAnalyzer.setFolding(boolean))
+ *			-vn		ValueNumbering; the number of quads it removed is
+ *					printed at the end
+ *			-temps	TempAllocation; the largest number of temps a statement
+ *					used before and after it is printed at the end
+ *			-peephole	Peephole, with every rule; the number of quads it
+ *					removed is printed at the end
+ *			-dce	DeadCodeElimination; the number of quads it removed is
+ *					printed at the end. The pass holds the whole program
+ *					until its end, so the 3AC is no longer streamed.
+ *		The passes run in that order.
+ */
+public class BatchCompiler {
+	
+	/**
+	 * Pass removing the recomputed values (see ValueNumbering)
+	 */
+	public static final int VALUES = 1;
+	
+	/**
+	 * Pass renumbering the temps of each statement (see TempAllocation)
+	 */
+	public static final int TEMPS = 2;
+	
+	/**
+	 * Pass applying every peephole rule (see Peephole)
+	 */
+	public static final int PEEPHOLE = 4;
+	
+	/**
+	 * Pass removing the unreachable code and dead stores (see DeadCodeElimination)
+	 */
+	public static final int DEAD = 8;
+	
+	/**
+	 * Constant folding by the parser (see SyntacticAnalyzer.setFolding(boolean))
+	 */
+	public static final int FOLD = 16;
+	
+	/**
+	 * Number of worker threads.
+	 */
+	private int threads;
+	
+	/**
+	 * Whether the sources are memory-mapped.
+	 */
+	private boolean mapped;
+	
+	/**
+	 * Whether the 3AC is written in the binary .tacb format.
+	 */
+	private boolean binary;
+	
+	/**
+	 * Cache of the outputs, null if none.
+	 */
+	private CompilationCache cache;
+	
+	/**
+	 * Optimization passes run on the 3AC.
+	 */
+	private int passes;
+	
+	/**Constructor
+	 * @param threads	Number of worker threads, 0 to use every available core.
+	 * @param mapped	Whether the sources are memory-mapped instead of read through a Reader.
+	 */
+	public BatchCompiler(int threads, boolean mapped){
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		this.mapped = mapped;
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int threads = 0;
+		boolean mapped = false;
+		boolean binary = false;
+		Path cacheDirectory = null;
+		long cacheSize = CompilationCache.DEFAULT_LIMIT;
+		boolean metrics = false;
+		int passes = 0;
+		List<Path> sources = new ArrayList<Path>();
+		
+		try {
+			for(int i = 0; i < args.length; ++i){
+				if(args[i].equals("-j") && i + 1 < args.length){
+					threads = Integer.parseInt(args[++i]);
+				}else if(args[i].equals("-mmap")){
+					mapped = true;
+				}else if(args[i].equals("-binary")){
+					binary = true;
+				}else if(args[i].equals("-cache") && i + 1 < args.length){
+					cacheDirectory = Paths.get(args[++i]);
+				}else if(args[i].equals("-cache-size") && i + 1 < args.length){
+					cacheSize = Long.parseLong(args[++i]) << 20;
+				}else if(args[i].equals("-metrics")){
+					metrics = true;
+				}else if(args[i].equals("-fold")){
+					passes |= FOLD;
+				}else if(args[i].equals("-vn")){
+					passes |= VALUES;
+				}else if(args[i].equals("-temps")){
+					passes |= TEMPS;
+				}else if(args[i].equals("-peephole")){
+					passes |= PEEPHOLE;
+				}else if(args[i].equals("-dce")){
+					passes |= DEAD;
+				}else if(args[i].startsWith("@")){
+					for(String line : Files.readAllLines(Paths.get(args[i].substring(1)), StandardCharsets.UTF_8)){
+						if(!line.trim().isEmpty()){
+							sources.add(Paths.get(line.trim()));
+						}
+					}
+				}else{
+					addSources(Paths.get(args[i]), sources);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Could not read the list of source files: " + e.getMessage());
+			System.exit(-1);
+		}
+		
+		if(sources.isEmpty()){
+			System.err.println("Usage: BatchCompiler [-j threads] [-mmap] [-binary] [-cache directory [-cache-size megabytes]]"
+					+ " [-metrics] [-fold] [-vn] [-temps] [-peephole] [-dce] (directory | file | @listFile)...");
+			System.exit(-1);
+		}
+		
+		BatchCompiler compiler = new BatchCompiler(threads, mapped);
+		compiler.setBinary(binary);
+		compiler.setPasses(passes);
+		if(metrics){
+			CompilerMetrics.register();
+		}
+		if(cacheDirectory != null){
+			try {
+				compiler.setCache(new CompilationCache(cacheDirectory, cacheSize));
+			} catch (IOException e) {
+				System.err.println("Could not open the cache: " + e.getMessage());
+				System.exit(-1);
+			}
+		}
+		Result result = compiler.compile(sources);
+		System.out.println(result);
+		if(compiler.cache != null){
+			System.out.println(compiler.cache);
+		}
+		if(metrics){
+			System.out.println(CompilerMetrics.global());
+		}
+		if((passes & VALUES) != 0){
+			System.out.println("Value numbering: " + result.valuesRemoved + " quads removed");
+		}
+		if((passes & TEMPS) != 0){
+			System.out.println("Temps per statement: at most " + result.maxTempsBefore + " generated, "
+					+ result.maxTempsAfter + " once allocated");
+		}
+		if((passes & PEEPHOLE) != 0){
+			System.out.println("Peephole: " + result.peepholeRemoved + " quads removed");
+		}
+		if((passes & DEAD) != 0){
+			System.out.println("Dead code elimination: " + result.deadRemoved + " quads removed");
+		}
+		if(result.failed > 0){
+			System.exit(1);
+		}
+	}
+	
+	/**Method: addSources(Path, List)
+	 * Description:
+	 * 		Adds a source file, or every *.txt file of a directory, to the list.
+	 * @param path
+	 * @param sources
+	 * @throws IOException
+	 */
+	private static void addSources(Path path, List<Path> sources) throws IOException{
+		if(Files.isDirectory(path)){
+			List<Path> found = new ArrayList<Path>();
+			DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.txt");
+			try {
+				for(Path file : dir){
+					found.add(file);
+				}
+			} finally {
+				dir.close();
+			}
+			Collections.sort(found);
+			sources.addAll(found);
+		}else{
+			sources.add(path);
+		}
+	}
+	
+	/**Method: outputFor(Path)
+	 * Description:
+	 * 		Determines the name of the 3AC file for a source file.
+	 * @param source
+	 * @return	The source path with its extension replaced by .tac
+	 */
+	public static Path outputFor(Path source){
+		return outputFor(source, false);
+	}
+	
+	/**Method: outputFor(Path, boolean)
+	 * Description:
+	 * 		Determines the name of the 3AC file for a source file.
+	 * @param source
+	 * @param binary	Whether the 3AC is written in the binary .tacb format
+	 * @return	The source path with its extension replaced by .tac or .tacb
+	 */
+	public static Path outputFor(Path source, boolean binary){
+		return TACBinaryConverter.withExtension(source, binary ? ".tacb" : ".tac");
+	}
+	
+	/**Method: setBinary(boolean)
+	 * Description:
+	 * 		Chooses between the text 3AC (the default) and the binary .tacb format.
+	 * @param binary
+	 */
+	public void setBinary(boolean binary){
+		this.binary = binary;
+	}
+	
+	/**Method: setPasses(int)
+	 * Description:
+	 * 		Chooses the optimization passes run on the 3AC before it is
+	 * 		written, and whose figures are added to the Result. None run by
+	 * 		default, which keeps the 3AC exactly as the parser generates it.
+	 * @param passes	FOLD, VALUES, TEMPS, PEEPHOLE and DEAD or'ed together, 0 for none
+	 */
+	public void setPasses(int passes){
+		this.passes = passes;
+	}
+	
+	/**Method: setCache(CompilationCache)
+	 * Description:
+	 * 		Serves the outputs of sources already compiled from a cache, and
+	 * 		stores the others there.
+	 * @param cache	The cache, null for none (the default)
+	 */
+	public void setCache(CompilationCache cache){
+		this.cache = cache;
+	}
+	
+	/**Method: compile(List)
+	 * Description:
+	 * 		Compiles every source file on the pool and waits for all of them.
+	 * @param sources
+	 * @return	Aggregate statistics for the batch
+	 */
+	public Result compile(List<Path> sources){
+		ExecutorService pool = Executors.newWorkStealingPool(threads);
+		List<Future<Boolean>> pending = new ArrayList<Future<Boolean>>(sources.size());
+		final Result result = new Result();
+		long start = System.nanoTime();
+		
+		for(final Path source : sources){
+			pending.add(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws IOException {
+					return compileFile(source, mapped, binary, cache, passes, result);
+				}
+			}));
+		}
+		
+		for(int i = 0; i < pending.size(); ++i){
+			try {
+				if(pending.get(i).get()){
+					++result.compiled;
+				}else{
+					System.err.println("[ERROR] " + sources.get(i) + " is not a valid program.");
+					++result.failed;
+				}
+			} catch (ExecutionException e) {
+				System.err.println("[ERROR] " + sources.get(i) + ": " + e.getCause());
+				++result.failed;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		result.nanos = System.nanoTime() - start;
+		pool.shutdown();
+		return result;
+	}
+	
+	/**Method: compileFile(Path, boolean)
+	 * Description:
+	 * 		Compiles a single source file to its .tac file.
+	 * @param source
+	 * @param mapped	Whether the source is memory-mapped instead of read through a Reader.
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	public static boolean compileFile(Path source, boolean mapped) throws IOException{
+		return compileFile(source, mapped, false);
+	}
+	
+	/**Method: compileFile(Path, boolean, boolean)
+	 * Description:
+	 * 		Compiles a single source file to its .tac or .tacb file.
+	 * @param source
+	 * @param mapped	Whether the source is memory-mapped instead of read through a Reader.
+	 * @param binary	Whether the 3AC is written in the binary .tacb format
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	public static boolean compileFile(Path source, boolean mapped, boolean binary) throws IOException{
+		return compileFile(source, mapped, binary, null, 0, null);
+	}
+	
+	/**Method: compileFile(Path, boolean, boolean, CompilationCache)
+	 * Description:
+	 * 		Compiles a single source file to its .tac or .tacb file, unless
+	 * 		the cache has its output. With a cache the source is always
+	 * 		memory-mapped, so that the bytes compiled are the bytes hashed.
+	 * @param source
+	 * @param mapped	Whether the source is memory-mapped instead of read through a Reader.
+	 * @param binary	Whether the 3AC is written in the binary .tacb format
+	 * @param cache		Cache of the outputs, null if none
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	public static boolean compileFile(Path source, boolean mapped, boolean binary, CompilationCache cache) throws IOException{
+		return compileFile(source, mapped, binary, cache, 0, null);
+	}
+	
+	/**Method: compileFile(Path, boolean, boolean, CompilationCache, int, Result)
+	 * Description:
+	 * 		Compiles a single source file to its .tac or .tacb file through
+	 * 		optimization passes, unless the cache has its output. The figures
+	 * 		of the passes are only added for the files actually compiled.
+	 * @param source
+	 * @param mapped	Whether the source is memory-mapped instead of read through a Reader.
+	 * @param binary	Whether the 3AC is written in the binary .tacb format
+	 * @param cache		Cache of the outputs, null if none
+	 * @param passes	Optimization passes run on the 3AC (see setPasses(int))
+	 * @param result	Result the figures of the passes are added to, null if none
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	private static boolean compileFile(Path source, boolean mapped, boolean binary, CompilationCache cache,
+			int passes, Result result) throws IOException{
+		if(cache == null){
+			LexicalAnalyzer lex = mapped ? LexicalAnalyzer.map(source.toString()) : new LexicalAnalyzer(source.toString());
+			return compile(lex, outputFor(source, binary), binary, passes, result);
+		}
+		ByteBuffer bytes = LexicalAnalyzer.mapFile(source.toString());
+		String format = binary ? "tacb " + TACBinaryWriter.VERSION : "tac";
+		String key = CompilationCache.key(bytes, passes == 0 ? format : format + " passes " + passes);
+		Path output = outputFor(source, binary);
+		if(cache.get(key, output)){
+			return true;
+		}
+		boolean valid = compile(new LexicalAnalyzer(bytes), output, binary, passes, result);
+		if(valid){
+			cache.put(key, output);
+		}
+		return valid;
+	}
+	
+	/**Method: compile(LexicalAnalyzer, Path, boolean, int, Result)
+	 * Description:
+	 * 		Compiles a source to a file, closing the source even if the file
+	 * 		cannot be opened.
+	 * @param lex		Lexical analyzer over the source
+	 * @param output	The .tac or .tacb file
+	 * @param binary	Whether the 3AC is written in the binary .tacb format
+	 * @param passes	Optimization passes run on the 3AC (see setPasses(int))
+	 * @param result	Result the figures of the passes are added to, null if none
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	private static boolean compile(LexicalAnalyzer lex, Path output, boolean binary, int passes, Result result)
+			throws IOException{
+		FileChannel target = null;
+		Closeable writer = null;
+		try {
+			target = FileChannel.open(output,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			TACSink sink;
+			if(binary){
+				TACBinaryWriter out = new TACBinaryWriter(lex.symbols(), target);
+				writer = out;
+				sink = out;
+			}else{
+				TACWriter out = new TACWriter(lex.symbols(), target);
+				writer = out;
+				sink = out;
+			}
+			DeadCodeElimination dead = null;
+			if((passes & DEAD) != 0){
+				sink = dead = new DeadCodeElimination(lex.symbols(), sink);
+			}
+			Peephole peephole = null;
+			if((passes & PEEPHOLE) != 0){
+				sink = peephole = new Peephole(sink);
+			}
+			TempAllocation temps = null;
+			if((passes & TEMPS) != 0){
+				sink = temps = new TempAllocation(sink);
+			}
+			ValueNumbering values = null;
+			if((passes & VALUES) != 0){
+				sink = values = new ValueNumbering(sink);
+			}
+			SyntacticAnalyzer synt = new SyntacticAnalyzer(lex, sink);
+			synt.setFolding((passes & FOLD) != 0);
+			boolean valid = synt.analyze();
+			if(result != null && values != null){
+				result.record(values);
+			}
+			if(result != null && temps != null){
+				result.record(temps);
+			}
+			if(result != null && peephole != null){
+				result.record(peephole);
+			}
+			if(result != null && dead != null){
+				result.record(dead);
+			}
+			return valid;
+		} finally {
+			try {
+				lex.close();
+			} finally {
+				if(writer != null){
+					writer.close();
+				}else if(target != null){
+					target.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Aggregate statistics of a batch compilation.
+	 */
+	public static class Result{
+		
+		/**
+		 * Number of files compiled successfully
+		 */
+		public int compiled;
+		
+		/**
+		 * Number of files that failed to compile
+		 */
+		public int failed;
+		
+		/**
+		 * Wall time of the whole batch
+		 */
+		public long nanos;
+		
+		/**
+		 * Number of quads removed by ValueNumbering, in the files compiled
+		 * with VALUES
+		 */
+		public long valuesRemoved;
+		
+		/**
+		 * Largest number of temps used by a statement, as generated, in the
+		 * files compiled with TEMPS
+		 */
+		public int maxTempsBefore;
+		
+		/**
+		 * Largest number of temps used by a statement, once renumbered, in
+		 * the files compiled with TEMPS
+		 */
+		public int maxTempsAfter;
+		
+		/**
+		 * Number of quads removed by Peephole, in the files compiled with
+		 * PEEPHOLE
+		 */
+		public long peepholeRemoved;
+		
+		/**
+		 * Number of quads removed by DeadCodeElimination, in the files
+		 * compiled with DEAD
+		 */
+		public long deadRemoved;
+		
+		/**Method: record(ValueNumbering)
+		 * Description:
+		 * 		Adds the figures of the value numbering of a file. Called by
+		 * 		the worker threads.
+		 * @param values
+		 */
+		synchronized void record(ValueNumbering values){
+			valuesRemoved += values.removed();
+		}
+		
+		/**Method: record(TempAllocation)
+		 * Description:
+		 * 		Adds the figures of the temp allocation of a file. Called by
+		 * 		the worker threads.
+		 * @param temps
+		 */
+		synchronized void record(TempAllocation temps){
+			maxTempsBefore = Math.max(maxTempsBefore, temps.maxTempsBefore());
+			maxTempsAfter = Math.max(maxTempsAfter, temps.maxTempsAfter());
+		}
+		
+		/**Method: record(Peephole)
+		 * Description:
+		 * 		Adds the figures of the peephole optimization of a file.
+		 * 		Called by the worker threads.
+		 * @param peephole
+		 */
+		synchronized void record(Peephole peephole){
+			peepholeRemoved += peephole.removed();
+		}
+		
+		/**Method: record(DeadCodeElimination)
+		 * Description:
+		 * 		Adds the figures of the dead code elimination of a file.
+		 * 		Called by the worker threads.
+		 * @param dead
+		 */
+		synchronized void record(DeadCodeElimination dead){
+			deadRemoved += dead.removed();
+		}
+		
+		/**Method: filesPerSecond(void)
+		 * @return	Aggregate throughput of the batch
+		 */
+		public double filesPerSecond(){
+			return nanos == 0 ? 0 : (compiled + failed) * 1e9 / nanos;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Compiled %d files (%d failed) in %.1f ms: %.1f files/sec",
+					compiled + failed, failed, nanos / 1e6, filesPerSecond());
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *	Description:
+ *		On-disk cache of compiled 3AC, shared by every compilation (and
+ *		every JVM) pointed at the same directory. An entry is keyed by the
+ *		SHA-256 of the compiler's VERSION, the options that change the
+ *		output and the source bytes, so the same source compiled the same
+ *		way is only ever compiled once.
+ *
+ *		Layout: each entry is the output file as written by the compiler,
+ *		stored as directory/ab/cdef... for the key abcdef... . Only
+ *		programs that compile successfully are stored, so that an invalid
+ *		program still gets its error messages.
+ *
+ *		Concurrency: an entry is written to a temporary file and moved
+ *		into place atomically, so a reader sees a whole entry or none, and
+ *		two JVMs storing the same key store the same bytes. Evictions take
+ *		an exclusive FileLock on directory/lock. A reader that opened an
+ *		entry before it was evicted still copies it whole.
+ *
+ *		Eviction: a hit sets the entry's modification time, and when the
+ *		entries exceed the size limit the least recently used ones are
+ *		deleted until they fit in 3/4 of it. The directory is scanned once
+ *		a sixteenth of the limit was stored since the last scan.
+ *
+ *		A cache is thread-safe; use one instance per directory in a JVM.
+ */
+public class CompilationCache {
+	
+	/**
+	 * Version of the compiler's output, part of every key. Must change
+	 * whenever the 3AC compiled from a given source changes.
+	 */
+	public static final String VERSION = "TAC-Compiler 1";
+	
+	/**
+	 * Default size limit of the entries
+	 */
+	public static final long DEFAULT_LIMIT = 256L << 20;
+	
+	/**
+	 * Suffix of the entries being written
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	/**
+	 * Age after which a temporary file is left over from a crash
+	 */
+	private static final long STALE_MILLIS = 60 * 60 * 1000;
+	
+	/**
+	 * Directory of the cache
+	 */
+	private final Path directory;
+	
+	/**
+	 * Size limit of the entries, in bytes
+	 */
+	private final long limit;
+	
+	/**
+	 * Bytes stored since the directory was last scanned, -1 before the first scan
+	 */
+	private long unscanned = -1;
+	
+	/**
+	 * Lookups served from the cache
+	 */
+	private final AtomicLong hits = new AtomicLong();
+	
+	/**
+	 * Lookups not found in the cache
+	 */
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Entries stored
+	 */
+	private final AtomicLong stores = new AtomicLong();
+	
+	/**
+	 * Entries evicted
+	 */
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**Constructor
+	 * @param directory	Directory of the cache, created if needed
+	 * @param limit		Size limit of the entries, in bytes
+	 * @throws IOException	The directory cannot be created
+	 */
+	public CompilationCache(Path directory, long limit) throws IOException{
+		this.directory = Files.createDirectories(directory);
+		this.limit = limit;
+	}
+	
+	/**Method: key(ByteBuffer, String)
+	 * Description:
+	 * 		Computes the key of a compilation.
+	 * @param source	Bytes of the source, from its position to its limit
+	 * @param options	The options that change the output, e.g. "binary"
+	 * @return	Hexadecimal SHA-256 of VERSION, the options and the source
+	 */
+	public static String key(ByteBuffer source, String options){
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);	//Every JVM has SHA-256
+		}
+		digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(options.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(source.duplicate());
+		return HexFormat.of().formatHex(digest.digest());
+	}
+	
+	/**Method: entry(String)
+	 * @param key
+	 * @return	Path of the entry of the key
+	 */
+	private Path entry(String key){
+		return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+	}
+	
+	/**Method: get(String, Path)
+	 * Description:
+	 * 		Looks a compilation up and, on a hit, copies its output to the
+	 * 		target and marks the entry as recently used.
+	 * @param key		Key of the compilation
+	 * @param target	Output file, replaced on a hit
+	 * @return	True on a hit, false on a miss
+	 * @throws IOException	The target cannot be written
+	 */
+	public boolean get(String key, Path target) throws IOException{
+		Path entry = entry(key);
+		FileChannel in;
+		try {
+			in = FileChannel.open(entry, StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			misses.incrementAndGet();
+			return false;
+		}
+		try {
+			FileChannel out = FileChannel.open(target,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				long size = in.size();
+				for(long position = 0; position < size; ){
+					position += in.transferTo(position, size - position, out);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (NoSuchFileException e) {
+			//Evicted meanwhile, the copy is still whole
+		}
+		hits.incrementAndGet();
+		return true;
+	}
+	
+	/**Method: put(String, Path)
+	 * Description:
+	 * 		Stores the output of a compilation, then evicts entries if the
+	 * 		cache may have grown past its limit.
+	 * @param key		Key of the compilation
+	 * @param output	Output file of the compilation
+	 * @throws IOException
+	 */
+	public void put(String key, Path output) throws IOException{
+		Path entry = entry(key);
+		Path parent = Files.createDirectories(entry.getParent());
+		Path temp = Files.createTempFile(parent, entry.getFileName().toString(), TEMP_SUFFIX);
+		long size;
+		try {
+			Files.copy(output, temp, StandardCopyOption.REPLACE_EXISTING);
+			size = Files.size(temp);
+			Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		stores.incrementAndGet();
+		
+		boolean scan;
+		synchronized (this) {
+			if(unscanned >= 0){
+				unscanned += size;
+			}
+			scan = unscanned < 0 || unscanned >= limit / 16;
+		}
+		if(scan){
+			evict();
+		}
+	}
+	
+	/**Method: evict(void)
+	 * Description:
+	 * 		Deletes the least recently used entries until they fit in 3/4 of
+	 * 		the size limit, if they exceed it, along with the temporary files
+	 * 		left over by crashed writers. Holds the cache's lock meanwhile.
+	 * @throws IOException
+	 */
+	public synchronized void evict() throws IOException{
+		FileChannel channel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			FileLock lock = channel.lock();
+			try {
+				List<Entry> entries = new ArrayList<Entry>();
+				long total = scan(entries);
+				unscanned = 0;
+				if(total > limit){
+					Collections.sort(entries, new Comparator<Entry>() {
+						@Override
+						public int compare(Entry a, Entry b) {
+							return Long.compare(a.used, b.used);
+						}
+					});
+					long target = limit - limit / 4;
+					for(int i = 0; i < entries.size() && total > target; ++i){
+						Entry entry = entries.get(i);
+						if(Files.deleteIfExists(entry.path)){
+							evictions.incrementAndGet();
+						}
+						total -= entry.size;
+					}
+				}
+			} finally {
+				lock.release();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**Method: scan(List)
+	 * Description:
+	 * 		Lists the entries, deleting stale temporary files.
+	 * @param entries	List receiving the entries
+	 * @return	Total size of the entries
+	 * @throws IOException
+	 */
+	private long scan(List<Entry> entries) throws IOException{
+		long total = 0;
+		long stale = System.currentTimeMillis() - STALE_MILLIS;
+		DirectoryStream<Path> buckets = Files.newDirectoryStream(directory);
+		try {
+			for(Path bucket : buckets){
+				if(!Files.isDirectory(bucket)){
+					continue;
+				}
+				DirectoryStream<Path> files = Files.newDirectoryStream(bucket);
+				try {
+					for(Path file : files){
+						BasicFileAttributes attributes;
+						try {
+							attributes = Files.readAttributes(file, BasicFileAttributes.class);
+						} catch (NoSuchFileException e) {
+							continue;	//Evicted or moved meanwhile
+						}
+						long used = attributes.lastModifiedTime().toMillis();
+						if(file.getFileName().toString().endsWith(TEMP_SUFFIX)){
+							if(used < stale){
+								Files.deleteIfExists(file);
+							}
+						}else{
+							entries.add(new Entry(file, attributes.size(), used));
+							total += attributes.size();
+						}
+					}
+				} finally {
+					files.close();
+				}
+			}
+		} finally {
+			buckets.close();
+		}
+		return total;
+	}
+	
+	/**Method: hits(void)
+	 * @return	Number of lookups served from the cache
+	 */
+	public long hits(){
+		return hits.get();
+	}
+	
+	/**Method: misses(void)
+	 * @return	Number of lookups not found in the cache
+	 */
+	public long misses(){
+		return misses.get();
+	}
+	
+	/**Method: stores(void)
+	 * @return	Number of entries stored
+	 */
+	public long stores(){
+		return stores.get();
+	}
+	
+	/**Method: evictions(void)
+	 * @return	Number of entries evicted
+	 */
+	public long evictions(){
+		return evictions.get();
+	}
+	
+	@Override
+	public String toString() {
+		long lookups = hits() + misses();
+		return String.format("Cache %s: %d hits, %d misses (%.1f%% hit rate), %d stored, %d evicted",
+				directory, hits(), misses(), lookups == 0 ? 0 : 100.0 * hits() / lookups, stores(), evictions());
+	}
+	
+	/**
+	 *	Description:
+	 *		An entry found by a scan of the directory.
+	 */
+	private static class Entry{
+		
+		/**
+		 * File of the entry
+		 */
+		private final Path path;
+		
+		/**
+		 * Size of the file
+		 */
+		private final long size;
+		
+		/**
+		 * Time the entry was last used, in milliseconds
+		 */
+		private final long used;
+		
+		/**Constructor
+		 * @param path
+		 * @param size
+		 * @param used
+		 */
+		private Entry(Path path, long size, long used){
+			this.path = path;
+			this.size = size;
+			this.used = used;
+		}
+	}
+}
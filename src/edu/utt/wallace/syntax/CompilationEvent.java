@@ -0,0 +1,92 @@
+package edu.utt.wallace.syntax;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ *	Description:
+ *		Flight Recorder event of one analysis by a SyntacticAnalyzer, which
+ *		only creates it when Flight Recorder is running, and commits it
+ *		with the CompilationStats of the analysis when it ends. The event
+ *		spans the whole analysis; its time is split between the phases:
+ *			lexing	time spent waiting for tokens from the token source
+ *			parsing	the rest of the analysis
+ *			emit	time spent handing the quads over to the sink
+ *		In large programs, the lexing and emit times are estimated from a
+ *		sample of the lines and statements (see SyntacticAnalyzer.Phase).
+ *		The bytes allocated are those of the analyzing thread, so the
+ *		allocations of the lexer's thread in a pipelined analysis are not
+ *		counted; they are only counted after CompilerMetrics.register().
+ *
+ *		Recorded like any other event, e.g. with
+ *			java -XX:StartFlightRecording=filename=tac.jfr ...
+ *			jfr print --events edu.utt.wallace.syntax.Compilation tac.jfr
+ */
+@Name("edu.utt.wallace.syntax.Compilation")
+@Label("Compilation")
+@Category("TAC Compiler")
+@Description("Analysis of a program, from its source to its 3AC")
+@StackTrace(false)
+public class CompilationEvent extends Event {
+	
+	@Label("Valid")
+	@Description("Whether the program compiled without errors")
+	boolean valid;
+	
+	@Label("Errors")
+	int errors;
+	
+	@Label("Lexing Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long lexTime;
+	
+	@Label("Parsing Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long parseTime;
+	
+	@Label("Emit Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long emitTime;
+	
+	@Label("Tokens")
+	long tokens;
+	
+	@Label("Lines")
+	long lines;
+	
+	@Label("Quads")
+	long quads;
+	
+	@Label("Temps")
+	long temps;
+	
+	@Label("Labels")
+	long labels;
+	
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+	
+	/**Method: set(CompilationStats)
+	 * @param stats	Measurements of the analysis
+	 */
+	void set(CompilationStats stats){
+		valid = stats.valid;
+		errors = stats.errors;
+		lexTime = stats.lexTime;
+		parseTime = stats.parseTime;
+		emitTime = stats.emitTime;
+		tokens = stats.tokens;
+		lines = stats.lines;
+		quads = stats.quads;
+		temps = stats.temps;
+		labels = stats.labels;
+		allocated = stats.allocated;
+	}
+}
@@ -0,0 +1,86 @@
+package edu.utt.wallace.syntax;
+
+/**
+ *	Description:
+ *		Measurements of one analysis by a SyntacticAnalyzer, which fills
+ *		them in as the analysis goes and hands them over to
+ *		CompilerMetrics when it ends. Each analyzer reuses its own, so
+ *		measuring an analysis allocates nothing; the fields and phases
+ *		are those of CompilationEvent, which is only created when Flight
+ *		Recorder is running.
+ */
+class CompilationStats {
+	
+	/**
+	 * Whether the program compiled without errors
+	 */
+	boolean valid;
+	
+	/**
+	 * Errors found
+	 */
+	int errors;
+	
+	/**
+	 * Time spent waiting for tokens
+	 */
+	long lexTime;
+	
+	/**
+	 * Time spent analyzing, other than lexing and emitting
+	 */
+	long parseTime;
+	
+	/**
+	 * Time spent handing the quads over to the sink
+	 */
+	long emitTime;
+	
+	/**
+	 * Tokens read
+	 */
+	long tokens;
+	
+	/**
+	 * Source lines read
+	 */
+	long lines;
+	
+	/**
+	 * Quads emitted
+	 */
+	long quads;
+	
+	/**
+	 * Temps allocated
+	 */
+	long temps;
+	
+	/**
+	 * Labels allocated
+	 */
+	long labels;
+	
+	/**
+	 * Bytes allocated by the analyzing thread
+	 */
+	long allocated;
+	
+	/**Method: clear(void)
+	 * Description:
+	 * 		Forgets the measurements, for a new analysis.
+	 */
+	void clear(){
+		valid = false;
+		errors = 0;
+		lexTime = 0;
+		parseTime = 0;
+		emitTime = 0;
+		tokens = 0;
+		lines = 0;
+		quads = 0;
+		temps = 0;
+		labels = 0;
+		allocated = 0;
+	}
+}
@@ -0,0 +1,370 @@
+package edu.utt.wallace.syntax;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *	Description:
+ *		Cumulative metrics of every analysis run in the JVM, which can be
+ *		published as an MXBean (see CompilerMetricsMXBean) with register().
+ *		Each SyntacticAnalyzer measures its analyses (see CompilationStats)
+ *		unless told not to, and records them here when they end.
+ *
+ *		Recording an analysis only adds to striped counters and histogram
+ *		buckets, so that analyzers on many threads do not contend, and the
+ *		analyzers only read the clock once per line and per statement, so
+ *		that the metrics can stay on. Nothing is registered until asked,
+ *		since the platform MBean server takes longer to start than a
+ *		whole compilation of a small program.
+ */
+public class CompilerMetrics implements CompilerMetricsMXBean {
+	
+	/**
+	 * Name of the MXBean
+	 */
+	public static final String OBJECT_NAME = "edu.utt.wallace.syntax:type=CompilerMetrics";
+	
+	/**
+	 * Number of buckets of a histogram
+	 */
+	private static final int BUCKETS = 32;
+	
+	/**
+	 * Whether the metrics are registered with the platform MBean server
+	 */
+	private static boolean registered;
+	
+	/**
+	 * Allocation counter of the threads, null until registered or if the JVM has none
+	 */
+	private static volatile com.sun.management.ThreadMXBean threads;
+	
+	/**
+	 * Analyses
+	 */
+	private final LongAdder compilations = new LongAdder();
+	
+	/**
+	 * Analyses of invalid programs
+	 */
+	private final LongAdder failures = new LongAdder();
+	
+	/**
+	 * Tokens read
+	 */
+	private final LongAdder tokens = new LongAdder();
+	
+	/**
+	 * Source lines read
+	 */
+	private final LongAdder lines = new LongAdder();
+	
+	/**
+	 * Quads emitted
+	 */
+	private final LongAdder quads = new LongAdder();
+	
+	/**
+	 * Temps allocated
+	 */
+	private final LongAdder temps = new LongAdder();
+	
+	/**
+	 * Labels allocated
+	 */
+	private final LongAdder labels = new LongAdder();
+	
+	/**
+	 * Bytes allocated by the analyzing threads
+	 */
+	private final LongAdder allocated = new LongAdder();
+	
+	/**
+	 * Time spent lexing
+	 */
+	private final LongAdder lexNanos = new LongAdder();
+	
+	/**
+	 * Time spent parsing
+	 */
+	private final LongAdder parseNanos = new LongAdder();
+	
+	/**
+	 * Time spent emitting
+	 */
+	private final LongAdder emitNanos = new LongAdder();
+	
+	/**
+	 * Time spent analyzing
+	 */
+	private final LongAdder totalNanos = new LongAdder();
+	
+	/**
+	 * Histogram of the analysis times
+	 */
+	private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+	
+	/**
+	 * Histogram of the lexing times
+	 */
+	private final AtomicLongArray lexLatency = new AtomicLongArray(BUCKETS);
+	
+	/**
+	 * Histogram of the parsing times
+	 */
+	private final AtomicLongArray parseLatency = new AtomicLongArray(BUCKETS);
+	
+	/**
+	 * Histogram of the emit times
+	 */
+	private final AtomicLongArray emitLatency = new AtomicLongArray(BUCKETS);
+	
+	/**Method: global(void)
+	 * @return	The metrics of the JVM, which every analyzer records to
+	 */
+	public static CompilerMetrics global(){
+		return Global.METRICS;
+	}
+	
+	/**Method: register(void)
+	 * Description:
+	 * 		Registers the metrics of the JVM with the platform MBean server,
+	 * 		if not done yet, and starts counting the bytes the analyses
+	 * 		allocate. They are still kept if they cannot be registered.
+	 * @return	The metrics of the JVM
+	 */
+	public static synchronized CompilerMetrics register(){
+		if(!registered){
+			registered = true;
+			threads = threads();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(Global.METRICS, new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				//Already registered by another class loader
+			} catch (SecurityException e) {
+				//Not allowed to register it
+			}
+		}
+		return Global.METRICS;
+	}
+	
+	/**Method: allocatedBytes(void)
+	 * @return	Bytes allocated so far by the current thread, 0 if unknown
+	 * 			or not counted before register()
+	 */
+	static long allocatedBytes(){
+		com.sun.management.ThreadMXBean threads = CompilerMetrics.threads;
+		return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+	}
+	
+	/**Method: threads(void)
+	 * @return	The JVM's thread bean if it counts the allocated bytes, null otherwise
+	 */
+	private static com.sun.management.ThreadMXBean threads(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()){
+				return threads;
+			}
+		}
+		return null;
+	}
+	
+	/**Method: record(CompilationStats, long)
+	 * Description:
+	 * 		Adds an analysis to the metrics.
+	 * @param stats		The analysis, measured
+	 * @param nanos		Its total time
+	 */
+	void record(CompilationStats stats, long nanos){
+		compilations.increment();
+		if(!stats.valid){
+			failures.increment();
+		}
+		tokens.add(stats.tokens);
+		lines.add(stats.lines);
+		quads.add(stats.quads);
+		temps.add(stats.temps);
+		labels.add(stats.labels);
+		allocated.add(stats.allocated);
+		lexNanos.add(stats.lexTime);
+		parseNanos.add(stats.parseTime);
+		emitNanos.add(stats.emitTime);
+		totalNanos.add(nanos);
+		latency.incrementAndGet(bucket(nanos));
+		lexLatency.incrementAndGet(bucket(stats.lexTime));
+		parseLatency.incrementAndGet(bucket(stats.parseTime));
+		emitLatency.incrementAndGet(bucket(stats.emitTime));
+	}
+	
+	/**Method: bucket(long)
+	 * @param nanos
+	 * @return	Histogram bucket of a time
+	 */
+	private static int bucket(long nanos){
+		return Math.min(64 - Long.numberOfLeadingZeros(nanos / 1000), BUCKETS - 1);
+	}
+	
+	/**Method: histogram(AtomicLongArray)
+	 * @param buckets
+	 * @return	Copy of a histogram
+	 */
+	private static long[] histogram(AtomicLongArray buckets){
+		long[] histogram = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; ++i){
+			histogram[i] = buckets.get(i);
+		}
+		return histogram;
+	}
+	
+	/**Method: percentile(double)
+	 * @param fraction	Fraction of the analyses at or under the percentile
+	 * @return	Upper bound of the bucket holding the percentile, in microseconds
+	 */
+	private long percentile(double fraction){
+		long[] histogram = histogram(latency);
+		long count = 0;
+		for(long bucket : histogram){
+			count += bucket;
+		}
+		long rank = (long) Math.ceil(count * fraction);
+		for(int i = 0; i < BUCKETS && count > 0; ++i){
+			rank -= histogram[i];
+			if(rank <= 0){
+				return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+			}
+		}
+		return 0;
+	}
+	
+	@Override
+	public long getCompilations() {
+		return compilations.sum();
+	}
+	
+	@Override
+	public long getFailedCompilations() {
+		return failures.sum();
+	}
+	
+	@Override
+	public long getTokens() {
+		return tokens.sum();
+	}
+	
+	@Override
+	public long getLines() {
+		return lines.sum();
+	}
+	
+	@Override
+	public long getQuads() {
+		return quads.sum();
+	}
+	
+	@Override
+	public long getTemps() {
+		return temps.sum();
+	}
+	
+	@Override
+	public long getLabels() {
+		return labels.sum();
+	}
+	
+	@Override
+	public long getAllocatedBytes() {
+		return allocated.sum();
+	}
+	
+	@Override
+	public double getLexingMillis() {
+		return lexNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getParsingMillis() {
+		return parseNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getEmitMillis() {
+		return emitNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getTotalMillis() {
+		return totalNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public long[] getLatencyHistogram() {
+		return histogram(latency);
+	}
+	
+	@Override
+	public long[] getLexingHistogram() {
+		return histogram(lexLatency);
+	}
+	
+	@Override
+	public long[] getParsingHistogram() {
+		return histogram(parseLatency);
+	}
+	
+	@Override
+	public long[] getEmitHistogram() {
+		return histogram(emitLatency);
+	}
+	
+	@Override
+	public long getMedianLatencyMicros() {
+		return percentile(0.5);
+	}
+	
+	@Override
+	public long getP99LatencyMicros() {
+		return percentile(0.99);
+	}
+	
+	@Override
+	public void reset() {
+		LongAdder[] counters = {compilations, failures, tokens, lines, quads, temps, labels, allocated,
+				lexNanos, parseNanos, emitNanos, totalNanos};
+		for(LongAdder counter : counters){
+			counter.reset();
+		}
+		AtomicLongArray[] histograms = {latency, lexLatency, parseLatency, emitLatency};
+		for(AtomicLongArray histogram : histograms){
+			for(int i = 0; i < BUCKETS; ++i){
+				histogram.set(i, 0);
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Compiled %d programs (%d failed): %d lines, %d tokens, %d quads, %d temps, %d labels, %d bytes allocated%n"
+				+ "Time: %.1f ms lexing, %.1f ms parsing, %.1f ms emitting, %.1f ms in all (median <= %d us, p99 <= %d us)",
+				getCompilations(), getFailedCompilations(), getLines(), getTokens(), getQuads(), getTemps(), getLabels(),
+				getAllocatedBytes(), getLexingMillis(), getParsingMillis(), getEmitMillis(), getTotalMillis(),
+				getMedianLatencyMicros(), getP99LatencyMicros());
+	}
+	
+	/**
+	 *	Description:
+	 *		Holds the metrics of the JVM, created when first used.
+	 */
+	private static class Global{
+		
+		/**
+		 * The metrics every analyzer records to
+		 */
+		private static final CompilerMetrics METRICS = new CompilerMetrics();
+	}
+}
@@ -0,0 +1,112 @@
+package edu.utt.wallace.syntax;
+
+/**
+ *	Description:
+ *		Management interface of CompilerMetrics, registered with the
+ *		platform MBean server as edu.utt.wallace.syntax:type=CompilerMetrics.
+ *		Counters are cumulative since the JVM started or the last reset().
+ *
+ *		Latency histograms have one bucket per power of two microseconds:
+ *		bucket 0 counts the analyses under 1us, bucket i those from 2^(i-1)
+ *		up to 2^i us, and the last bucket everything longer.
+ */
+public interface CompilerMetricsMXBean {
+	
+	/**Method: getCompilations(void)
+	 * @return	Number of analyses
+	 */
+	long getCompilations();
+	
+	/**Method: getFailedCompilations(void)
+	 * @return	Number of analyses of invalid programs
+	 */
+	long getFailedCompilations();
+	
+	/**Method: getTokens(void)
+	 * @return	Number of tokens read by the parsers
+	 */
+	long getTokens();
+	
+	/**Method: getLines(void)
+	 * @return	Number of source lines read by the parsers
+	 */
+	long getLines();
+	
+	/**Method: getQuads(void)
+	 * @return	Number of quads emitted
+	 */
+	long getQuads();
+	
+	/**Method: getTemps(void)
+	 * @return	Number of temps allocated
+	 */
+	long getTemps();
+	
+	/**Method: getLabels(void)
+	 * @return	Number of labels allocated
+	 */
+	long getLabels();
+	
+	/**Method: getAllocatedBytes(void)
+	 * @return	Bytes allocated by the analyzing threads
+	 */
+	long getAllocatedBytes();
+	
+	/**Method: getLexingMillis(void)
+	 * @return	Time spent lexing, in milliseconds
+	 */
+	double getLexingMillis();
+	
+	/**Method: getParsingMillis(void)
+	 * @return	Time spent parsing, in milliseconds
+	 */
+	double getParsingMillis();
+	
+	/**Method: getEmitMillis(void)
+	 * @return	Time spent handing the quads to the sinks, in milliseconds
+	 */
+	double getEmitMillis();
+	
+	/**Method: getTotalMillis(void)
+	 * @return	Time spent analyzing, in milliseconds
+	 */
+	double getTotalMillis();
+	
+	/**Method: getLatencyHistogram(void)
+	 * @return	Histogram of the analysis times
+	 */
+	long[] getLatencyHistogram();
+	
+	/**Method: getLexingHistogram(void)
+	 * @return	Histogram of the lexing times of the analyses
+	 */
+	long[] getLexingHistogram();
+	
+	/**Method: getParsingHistogram(void)
+	 * @return	Histogram of the parsing times of the analyses
+	 */
+	long[] getParsingHistogram();
+	
+	/**Method: getEmitHistogram(void)
+	 * @return	Histogram of the emit times of the analyses
+	 */
+	long[] getEmitHistogram();
+	
+	/**Method: getMedianLatencyMicros(void)
+	 * @return	Upper bound of the bucket of the median analysis time, in
+	 * 			microseconds, 0 before any analysis
+	 */
+	long getMedianLatencyMicros();
+	
+	/**Method: getP99LatencyMicros(void)
+	 * @return	Upper bound of the bucket of the 99th percentile of the
+	 * 			analysis times, in microseconds, 0 before any analysis
+	 */
+	long getP99LatencyMicros();
+	
+	/**Method: reset(void)
+	 * Description:
+	 * 		Sets every counter and histogram back to 0.
+	 */
+	void reset();
+}
@@ -0,0 +1,126 @@
+package edu.utt.wallace.syntax;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Integer constants computed by the compiler (as opposed to number
+ *		literals of the source, which are symbols), each stored once with
+ *		its decimal spelling. Operand.CONST operands index this pool.
+ *
+ *		A pool is filled and read by the parser's thread only, even when
+ *		the lexical analyzer runs on its own thread.
+ */
+public class ConstantPool {
+	
+	/**
+	 * Open-addressed hash table of constant indexes plus one; 0 marks an empty slot.
+	 */
+	private int[] slots = new int[64];
+	
+	/**
+	 * Value of every constant
+	 */
+	private long[] values = new long[32];
+	
+	/**
+	 * Decimal spelling of every constant
+	 */
+	private byte[][] spellings = new byte[32][];
+	
+	/**
+	 * Number of constants
+	 */
+	private int size;
+	
+	/**Method: add(long)
+	 * Description:
+	 * 		Looks up a constant, adding it if it is not in the pool yet.
+	 * @param value
+	 * @return	Index of the constant
+	 */
+	public int add(long value){
+		int mask = slots.length - 1;
+		int slot = hash(value) & mask;
+		int entry;
+		while((entry = slots[slot]) != 0){
+			if(values[entry - 1] == value){
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		if(size == values.length){
+			values = Arrays.copyOf(values, size * 2);
+			spellings = Arrays.copyOf(spellings, size * 2);
+		}
+		int index = size++;
+		values[index] = value;
+		spellings[index] = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+		slots[slot] = index + 1;
+		if(size * 2 > slots.length){
+			rehash();
+		}
+		return index;
+	}
+	
+	/**Method: hash(long)
+	 * @param value
+	 * @return	Hash of a value
+	 */
+	private static int hash(long value){
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ h >>> 32);
+	}
+	
+	/**Method: rehash(void)
+	 * Description:
+	 * 		Doubles the hash table.
+	 */
+	private void rehash(){
+		int[] table = new int[slots.length * 2];
+		int mask = table.length - 1;
+		for(int index = 0; index < size; ++index){
+			int slot = hash(values[index]) & mask;
+			while(table[slot] != 0){
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+		slots = table;
+	}
+	
+	/**Method: value(int)
+	 * @param index
+	 * @return	Value of a constant
+	 */
+	public long value(int index){
+		return values[index];
+	}
+	
+	/**Method: spelling(int)
+	 * @param index
+	 * @return	Decimal spelling of a constant. Must not be modified.
+	 */
+	public byte[] spelling(int index){
+		return spellings[index];
+	}
+	
+	/**Method: size(void)
+	 * @return	Number of constants
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**Method: clear(void)
+	 * Description:
+	 * 		Forgets every constant, keeping the allocated storage.
+	 */
+	public void clear(){
+		Arrays.fill(slots, 0);
+		Arrays.fill(spellings, 0, size, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,237 @@
+package edu.utt.wallace.syntax;
+
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Control flow graph of a program's 3AC: its basic blocks and the
+ *		edges between them. A block starts at the first quad, at every LBL
+ *		and after every TST and JMP, and ends before the next start. A
+ *		block ending with a JMP goes to the block of its label; one ending
+ *		with a TST goes to the block of its label and falls through to the
+ *		next block; any other block falls through.
+ *
+ *		Falling through the last block, or jumping to a label that is
+ *		never placed (which only a program with syntax errors does), leaves
+ *		the program: such a block is an exit.
+ */
+public class ControlFlowGraph {
+	
+	/**
+	 * Successor of an edge that leaves the program
+	 */
+	public static final int EXIT = -1;
+	
+	/**
+	 * Successor of an edge that does not exist
+	 */
+	public static final int NONE = -2;
+	
+	/**
+	 * Number of blocks
+	 */
+	private int size;
+	
+	/**
+	 * Index of the first quad of each block
+	 */
+	private int[] starts;
+	
+	/**
+	 * Index after the last quad of each block
+	 */
+	private int[] ends;
+	
+	/**
+	 * Fall-through successor of each block, EXIT or NONE (after a JMP)
+	 */
+	private int[] fallThroughs;
+	
+	/**
+	 * Jump successor of each block, EXIT or NONE (no TST or JMP)
+	 */
+	private int[] jumps;
+	
+	/**
+	 * Predecessors of the blocks, grouped by block
+	 */
+	private int[] predecessors;
+	
+	/**
+	 * Index in predecessors of the first predecessor of each block, plus an
+	 * entry for the end
+	 */
+	private int[] predecessorStarts;
+	
+	/**Constructor
+	 * Splits the 3AC into basic blocks and links them.
+	 * @param quads	3AC of a whole program
+	 */
+	public ControlFlowGraph(QuadBuffer quads){
+		int count = quads.size();
+		starts = new int[16];
+		int maxLabel = -1;
+		boolean leader = true;
+		for(int i = 0; i < count; ++i){
+			Opcode opcode = quads.opcode(i);
+			if(leader || opcode == Opcode.LBL){
+				if(size == starts.length){
+					starts = Arrays.copyOf(starts, size * 2);
+				}
+				starts[size++] = i;
+			}
+			leader = opcode == Opcode.TST || opcode == Opcode.JMP;
+			if(opcode == Opcode.LBL){
+				maxLabel = Math.max(maxLabel, Operand.index(quads.result(i)));
+			}
+		}
+		starts = Arrays.copyOf(starts, size);
+		ends = new int[size];
+		for(int b = 0; b < size; ++b){
+			ends[b] = b + 1 < size ? starts[b + 1] : count;
+		}
+		
+		//Block of each label
+		int[] labels = new int[maxLabel + 1];
+		Arrays.fill(labels, EXIT);
+		for(int b = 0; b < size; ++b){
+			int first = starts[b];
+			if(quads.opcode(first) == Opcode.LBL){
+				labels[Operand.index(quads.result(first))] = b;
+			}
+		}
+		
+		fallThroughs = new int[size];
+		jumps = new int[size];
+		int[] counts = new int[size + 1];
+		for(int b = 0; b < size; ++b){
+			int last = ends[b] - 1;
+			Opcode opcode = quads.opcode(last);
+			int next = b + 1 < size ? b + 1 : EXIT;
+			fallThroughs[b] = opcode == Opcode.JMP ? NONE : next;
+			jumps[b] = NONE;
+			if(opcode == Opcode.JMP || opcode == Opcode.TST){
+				int label = Operand.index(quads.result(last));
+				jumps[b] = label < labels.length ? labels[label] : EXIT;
+			}
+			if(fallThroughs[b] >= 0){
+				++counts[fallThroughs[b]];
+			}
+			if(jumps[b] >= 0 && jumps[b] != fallThroughs[b]){
+				++counts[jumps[b]];
+			}
+		}
+		
+		//Predecessors, grouped by block
+		predecessorStarts = new int[size + 1];
+		for(int b = 0; b < size; ++b){
+			predecessorStarts[b + 1] = predecessorStarts[b] + counts[b];
+		}
+		predecessors = new int[predecessorStarts[size]];
+		int[] positions = Arrays.copyOf(predecessorStarts, size);
+		for(int b = 0; b < size; ++b){
+			if(fallThroughs[b] >= 0){
+				predecessors[positions[fallThroughs[b]]++] = b;
+			}
+			if(jumps[b] >= 0 && jumps[b] != fallThroughs[b]){
+				predecessors[positions[jumps[b]]++] = b;
+			}
+		}
+	}
+	
+	/**Method: size(void)
+	 * @return	Number of blocks
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**Method: start(int)
+	 * @param block
+	 * @return	Index of the first quad of the block
+	 */
+	public int start(int block){
+		return starts[block];
+	}
+	
+	/**Method: end(int)
+	 * @param block
+	 * @return	Index after the last quad of the block
+	 */
+	public int end(int block){
+		return ends[block];
+	}
+	
+	/**Method: fallThrough(int)
+	 * @param block
+	 * @return	The block reached by falling through, EXIT if it leaves the
+	 * 			program, NONE if the block ends with a JMP
+	 */
+	public int fallThrough(int block){
+		return fallThroughs[block];
+	}
+	
+	/**Method: jump(int)
+	 * @param block
+	 * @return	The block reached by the TST or JMP ending the block, EXIT if
+	 * 			its label is never placed, NONE if the block ends otherwise
+	 */
+	public int jump(int block){
+		return jumps[block];
+	}
+	
+	/**Method: exits(int)
+	 * @param block
+	 * @return	True if the program can end right after the block
+	 */
+	public boolean exits(int block){
+		return fallThroughs[block] == EXIT || jumps[block] == EXIT;
+	}
+	
+	/**Method: predecessors(int)
+	 * @param block
+	 * @return	Number of blocks with an edge to the block
+	 */
+	public int predecessors(int block){
+		return predecessorStarts[block + 1] - predecessorStarts[block];
+	}
+	
+	/**Method: predecessor(int, int)
+	 * @param block
+	 * @param i		Index of the predecessor, less than predecessors(block)
+	 * @return	A block with an edge to the block
+	 */
+	public int predecessor(int block, int i){
+		return predecessors[predecessorStarts[block] + i];
+	}
+	
+	/**Method: reachable(void)
+	 * Description:
+	 * 		Finds the blocks that can be reached from the first one.
+	 * @return	Whether each block is reachable
+	 */
+	public boolean[] reachable(){
+		boolean[] reached = new boolean[size];
+		if(size == 0){
+			return reached;
+		}
+		int[] stack = new int[size];
+		int top = 0;
+		stack[top++] = 0;
+		reached[0] = true;
+		while(top > 0){
+			int block = stack[--top];
+			int successor = fallThroughs[block];
+			if(successor >= 0 && !reached[successor]){
+				reached[successor] = true;
+				stack[top++] = successor;
+			}
+			successor = jumps[block];
+			if(successor >= 0 && !reached[successor]){
+				reached[successor] = true;
+				stack[top++] = successor;
+			}
+		}
+		return reached;
+	}
+}
@@ -0,0 +1,400 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Dead code elimination over the control flow graph of the whole
+ *		program. The pass collects every chunk and does its work when the
+ *		program is flushed:
+ *			- a TST comparing two constants is decided: it becomes a JMP
+ *			  if the comparison holds and disappears otherwise
+ *			- blocks that cannot be reached from the start are removed
+ *			- stores whose value is never read are removed, using the
+ *			  liveness of variables and temps over the graph; every variable
+ *			  is live at the end of the program
+ *			- labels no longer targeted by any TST or JMP are removed
+ *		Removing a store can make the stores feeding it dead, so the last
+ *		steps are repeated until nothing changes. Like any dead code
+ *		elimination, removing an unused division also removes the division
+ *		by zero it may have caused.
+ *
+ *		Liveness is kept as one bit set per block, over every variable and
+ *		temp. When that would take too much memory (many blocks and many
+ *		variables), every variable and temp is assumed live at the end of
+ *		each block instead, which still removes the dead stores inside
+ *		blocks.
+ */
+public class DeadCodeElimination implements TACSink {
+	
+	/**
+	 * Most longs the liveness bit sets may take
+	 */
+	private static final long LIVENESS_BUDGET = 1 << 22;
+	
+	/**
+	 * Symbol table of the operands, for the values of constants
+	 */
+	private final SymbolTable symbols;
+	
+	/**
+	 * Sink of the optimized 3AC
+	 */
+	private final TACSink next;
+	
+	/**
+	 * Whole program, collected chunk by chunk
+	 */
+	private QuadBuffer program = new QuadBuffer();
+	
+	/**
+	 * Number of variables (symbol IDs) in the bit sets; temps come after them
+	 */
+	private int variables;
+	
+	/**
+	 * Number of quads removed so far
+	 */
+	private long removed;
+	
+	/**Constructor
+	 * @param symbols	Symbol table of the operands
+	 * @param next		Sink of the optimized 3AC
+	 */
+	public DeadCodeElimination(SymbolTable symbols, TACSink next){
+		this.symbols = symbols;
+		this.next = next;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Collects the chunk.
+	 */
+	@Override
+	public void accept(QuadBuffer quads){
+		program.addAll(quads);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Optimizes the program, passes it on and flushes the next sink.
+	 */
+	@Override
+	public void flush() throws IOException{
+		QuadBuffer quads = decideTests(program);
+		while(true){
+			QuadBuffer optimized = eliminate(quads);
+			if(optimized == null){
+				break;
+			}
+			quads = optimized;
+		}
+		program.clear();
+		next.accept(quads);
+		next.flush();
+	}
+	
+	/**Method: decideTests(QuadBuffer)
+	 * Description:
+	 * 		Replaces the TSTs between two constants by a JMP or nothing.
+	 * 		Constants beyond 2^53 are left alone, since a floating-point
+	 * 		target would not compare them exactly.
+	 * @param quads
+	 * @return	The program with the TSTs decided
+	 */
+	private QuadBuffer decideTests(QuadBuffer quads){
+		QuadBuffer decided = new QuadBuffer(quads.size());
+		for(int i = 0; i < quads.size(); ++i){
+			if(quads.opcode(i) == Opcode.TST && constant(quads.arg1(i)) && constant(quads.arg2(i))){
+				long a = symbols.value(quads.arg1(i));
+				long b = symbols.value(quads.arg2(i));
+				boolean holds;
+				switch (quads.comparison(i)){
+				case 0:
+					holds = a == b;
+					break;
+				case 1:
+					holds = a < b;
+					break;
+				case 2:
+					holds = a <= b;
+					break;
+				case 3:
+					holds = a > b;
+					break;
+				case 4:
+					holds = a >= b;
+					break;
+				default:
+					holds = a != b;
+					break;
+				}
+				if(holds){
+					decided.jump(quads.result(i));
+				}else{
+					++removed;
+				}
+			}else{
+				decided.add(quads, i);
+			}
+		}
+		return decided;
+	}
+	
+	/**Method: constant(int)
+	 * @param operand
+	 * @return	True if the operand is a constant that compares exactly
+	 */
+	private boolean constant(int operand){
+		return symbols.hasValue(operand) && Math.abs(symbols.value(operand)) <= SyntacticAnalyzer.MAX_EXACT;
+	}
+	
+	/**Method: eliminate(QuadBuffer)
+	 * Description:
+	 * 		Removes the unreachable blocks, the dead stores and the unused labels.
+	 * @param quads
+	 * @return	The program without them, null if nothing was removed
+	 */
+	private QuadBuffer eliminate(QuadBuffer quads){
+		int size = quads.size();
+		ControlFlowGraph graph = new ControlFlowGraph(quads);
+		boolean[] reached = graph.reachable();
+		boolean[] dead = new boolean[size];
+		for(int b = 0; b < graph.size(); ++b){
+			if(!reached[b]){
+				Arrays.fill(dead, graph.start(b), graph.end(b), true);
+			}
+		}
+		deadStores(quads, graph, reached, dead);
+		
+		//Labels still targeted
+		int maxLabel = -1;
+		for(int i = 0; i < size; ++i){
+			if(quads.opcode(i) == Opcode.LBL){
+				maxLabel = Math.max(maxLabel, Operand.index(quads.result(i)));
+			}
+		}
+		boolean[] targeted = new boolean[maxLabel + 1];
+		for(int i = 0; i < size; ++i){
+			Opcode opcode = quads.opcode(i);
+			if(!dead[i] && (opcode == Opcode.TST || opcode == Opcode.JMP)){
+				int label = Operand.index(quads.result(i));
+				if(label <= maxLabel){
+					targeted[label] = true;
+				}
+			}
+		}
+		
+		QuadBuffer kept = new QuadBuffer(size);
+		for(int i = 0; i < size; ++i){
+			if(!dead[i] && (quads.opcode(i) != Opcode.LBL || targeted[Operand.index(quads.result(i))])){
+				kept.add(quads, i);
+			}
+		}
+		if(kept.size() == size){
+			return null;
+		}
+		removed += size - kept.size();
+		return kept;
+	}
+	
+	/**Method: deadStores(QuadBuffer, ControlFlowGraph, boolean[], boolean[])
+	 * Description:
+	 * 		Marks the stores of the reachable blocks whose value is never read.
+	 * @param quads
+	 * @param graph
+	 * @param reached	Whether each block is reachable
+	 * @param dead		Whether each quad is removed, updated
+	 */
+	private void deadStores(QuadBuffer quads, ControlFlowGraph graph, boolean[] reached, boolean[] dead){
+		int temps = 0;
+		for(int i = 0; i < quads.size(); ++i){
+			temps = Math.max(temps, temps(quads.arg1(i)));
+			temps = Math.max(temps, temps(quads.arg2(i)));
+			temps = Math.max(temps, temps(quads.result(i)));
+		}
+		variables = symbols.size();
+		int words = (variables + temps + 63) >>> 6;
+		int blocks = graph.size();
+		
+		long[] liveOut;
+		if((long) words * blocks * 4 <= LIVENESS_BUDGET){
+			liveOut = liveness(quads, graph, reached, words);
+		}else{
+			liveOut = null;	//Everything is live at the end of every block
+		}
+		
+		long[] live = new long[words];
+		for(int b = 0; b < blocks; ++b){
+			if(!reached[b]){
+				continue;
+			}
+			if(liveOut != null){
+				System.arraycopy(liveOut, b * words, live, 0, words);
+			}else{
+				Arrays.fill(live, -1L);
+			}
+			for(int i = graph.end(b) - 1; i >= graph.start(b); --i){
+				int form = quads.opcode(i).form();
+				if(form == Opcode.BINARY || form == Opcode.UNARY){
+					int bit = bit(quads.result(i));
+					if(bit >= 0){
+						if((live[bit >>> 6] & 1L << bit) == 0){
+							dead[i] = true;
+							continue;
+						}
+						live[bit >>> 6] &= ~(1L << bit);
+					}
+				}
+				if(form != Opcode.JUMP && form != Opcode.LABEL){
+					set(live, bit(quads.arg1(i)));
+					set(live, bit(quads.arg2(i)));
+				}
+			}
+		}
+	}
+	
+	/**Method: liveness(QuadBuffer, ControlFlowGraph, boolean[], int)
+	 * Description:
+	 * 		Computes the variables and temps live at the end of every
+	 * 		reachable block, iterating the data flow equations
+	 * 			in(b) = use(b) + (out(b) - def(b))
+	 * 			out(b) = in(successors of b), plus every variable at an exit
+	 * 		until they are stable.
+	 * @param quads
+	 * @param graph
+	 * @param reached	Whether each block is reachable
+	 * @param words		Number of longs of a bit set
+	 * @return	The bit set of each block, one after the other
+	 */
+	private long[] liveness(QuadBuffer quads, ControlFlowGraph graph, boolean[] reached, int words){
+		int blocks = graph.size();
+		long[] uses = new long[blocks * words];
+		long[] defs = new long[blocks * words];
+		long[] ins = new long[blocks * words];
+		long[] outs = new long[blocks * words];
+		
+		for(int b = 0; b < blocks; ++b){
+			if(!reached[b]){
+				continue;
+			}
+			int base = b * words;
+			for(int i = graph.start(b); i < graph.end(b); ++i){
+				int form = quads.opcode(i).form();
+				if(form == Opcode.JUMP || form == Opcode.LABEL){
+					continue;
+				}
+				use(uses, defs, base, bit(quads.arg1(i)));
+				use(uses, defs, base, bit(quads.arg2(i)));
+				if(form != Opcode.TEST){
+					int bit = bit(quads.result(i));
+					if(bit >= 0){
+						defs[base + (bit >>> 6)] |= 1L << bit;
+					}
+				}
+			}
+		}
+		
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			for(int b = blocks - 1; b >= 0; --b){
+				if(!reached[b]){
+					continue;
+				}
+				int base = b * words;
+				if(graph.exits(b)){
+					for(int w = 0; w < variables >>> 6; ++w){
+						outs[base + w] = -1L;
+					}
+					if((variables & 63) != 0){
+						outs[base + (variables >>> 6)] |= (1L << variables) - 1;
+					}
+				}
+				merge(outs, ins, base, graph.fallThrough(b), words);
+				merge(outs, ins, base, graph.jump(b), words);
+				for(int w = 0; w < words; ++w){
+					long in = uses[base + w] | outs[base + w] & ~defs[base + w];
+					if(in != ins[base + w]){
+						ins[base + w] = in;
+						changed = true;
+					}
+				}
+			}
+		}
+		return outs;
+	}
+	
+	/**Method: merge(long[], long[], int, int, int)
+	 * @param outs		Bit sets at the end of the blocks
+	 * @param ins		Bit sets at the start of the blocks
+	 * @param base		Index of the block's bit set in outs
+	 * @param successor	Successor of the block, if any
+	 * @param words		Number of longs of a bit set
+	 */
+	private static void merge(long[] outs, long[] ins, int base, int successor, int words){
+		if(successor >= 0){
+			int from = successor * words;
+			for(int w = 0; w < words; ++w){
+				outs[base + w] |= ins[from + w];
+			}
+		}
+	}
+	
+	/**Method: use(long[], long[], int, int)
+	 * Description:
+	 * 		Records a read in a block, unless the block wrote the operand before.
+	 * @param uses
+	 * @param defs
+	 * @param base	Index of the block's bit set
+	 * @param bit	Bit of the operand, -1 for constants
+	 */
+	private static void use(long[] uses, long[] defs, int base, int bit){
+		if(bit >= 0 && (defs[base + (bit >>> 6)] & 1L << bit) == 0){
+			uses[base + (bit >>> 6)] |= 1L << bit;
+		}
+	}
+	
+	/**Method: set(long[], int)
+	 * @param bits
+	 * @param bit	Bit to set, ignored if -1
+	 */
+	private static void set(long[] bits, int bit){
+		if(bit >= 0){
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+	
+	/**Method: temps(int)
+	 * @param operand
+	 * @return	Number of temps needed to hold the operand, 0 if it is not a temp
+	 */
+	private static int temps(int operand){
+		return Operand.kind(operand) == Operand.TEMP ? Operand.index(operand) + 1 : 0;
+	}
+	
+	/**Method: bit(int)
+	 * @param operand
+	 * @return	Bit of a variable or temp in the bit sets, -1 for other operands
+	 */
+	private int bit(int operand){
+		switch (Operand.kind(operand)){
+		case Operand.VAR:
+			return Operand.index(operand);
+		case Operand.TEMP:
+			return variables + Operand.index(operand);
+		default:
+			return -1;
+		}
+	}
+	
+	/**Method: removed(void)
+	 * @return	Number of quads removed so far
+	 */
+	public long removed(){
+		return removed;
+	}
+}
@@ -0,0 +1,536 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Compilation session for a program that is compiled over and over
+ *		with small edits, as editors and generators do. The session keeps
+ *		the previous version of the source split into its top-level
+ *		statements, with the 3AC of each; compiling the next version only
+ *		recompiles the statements whose text changed and reuses the quads
+ *		of the others, renumbering their labels.
+ *
+ *		The statements of Stmt_list are separated by ';' and nothing else
+ *		(an if or while holds a single statement), so the source splits at
+ *		every ';' outside a comment. The previous and next versions are
+ *		compared byte by byte: the statements lying in their common prefix
+ *		and suffix are kept, and only the text in between is split again,
+ *		up to the first ';' past the end of the line holding the change.
+ *		A statement is compiled on its own, wrapped in "program" and
+ *		"end.", with the session's analyzers, so symbol IDs are shared and
+ *		temps and labels are numbered from 0 as for any statement; a label
+ *		is then offset by the labels of the statements before it. The 3AC
+ *		written is the same as a full compilation of the source.
+ *
+ *		When a statement does not compile cleanly on its own, the whole
+ *		source is compiled instead, so that an invalid program gets exactly
+ *		the 3AC and the error messages of a full compilation. Every
+ *		statement is still kept for the next version.
+ *
+ *		The symbol table keeps the symbols of the statements edited away.
+ *		A session is not thread-safe.
+ */
+public class IncrementalCompiler {
+	
+	/**
+	 * Text put before a statement compiled on its own
+	 */
+	private static final byte[] HEADER = "program\n".getBytes(StandardCharsets.ISO_8859_1);
+	
+	/**
+	 * Text put after a statement compiled on its own
+	 */
+	private static final byte[] TRAILER = "\nend.".getBytes(StandardCharsets.ISO_8859_1);
+	
+	/**
+	 * Reusable lexical analyzer
+	 */
+	private final LexicalAnalyzer lex;
+	
+	/**
+	 * Reusable syntactic analyzer, writing to recorder
+	 */
+	private final SyntacticAnalyzer synt;
+	
+	/**
+	 * 3AC of the last analysis
+	 */
+	private final Recorder recorder = new Recorder();
+	
+	/**
+	 * Tokens read after the end of a statement compiled on its own
+	 */
+	private TokenBuffer rest = new TokenBuffer();
+	
+	/**
+	 * Source of the last compilation, null before the first one
+	 */
+	private byte[] source;
+	
+	/**
+	 * Number of statements of the source; the last one runs to the end
+	 * of the source and holds the "end."
+	 */
+	private int count;
+	
+	/**
+	 * Length of each statement, without the ';' ending it
+	 */
+	private int[] lengths = new int[16];
+	
+	/**
+	 * Index in store of the first quad of each statement
+	 */
+	private int[] firsts = new int[16];
+	
+	/**
+	 * Number of quads of each statement
+	 */
+	private int[] sizes = new int[16];
+	
+	/**
+	 * Number of labels of each statement, -1 if it does not compile cleanly
+	 */
+	private int[] labels = new int[16];
+	
+	/**
+	 * Lengths of the statements split from the edited text
+	 */
+	private int[] split = new int[16];
+	
+	/**
+	 * Quads of the statements, including those of statements edited away
+	 * until the store is compacted
+	 */
+	private QuadBuffer store = new QuadBuffer();
+	
+	/**
+	 * Number of quads in store belonging to current statements
+	 */
+	private int live;
+	
+	/**
+	 * 3AC of a full compilation, null when every statement compiles cleanly
+	 */
+	private Recorder fallback;
+	
+	/**
+	 * Statement being compiled on its own
+	 */
+	private byte[] unit = new byte[256];
+	
+	/**
+	 * Chunk handed to the sinks
+	 */
+	private QuadBuffer chunk = new QuadBuffer();
+	
+	/**
+	 * Result of the last compilation
+	 */
+	private boolean valid;
+	
+	/**
+	 * Number of statements compiled by the last compilation
+	 */
+	private int recompiled;
+	
+	/**Constructor
+	 */
+	public IncrementalCompiler(){
+		lex = new LexicalAnalyzer(ByteBuffer.wrap(new byte[0]));
+		synt = new SyntacticAnalyzer(lex, recorder);
+		synt.setQuiet(true);
+	}
+	
+	/**Method: compile(CharSequence)
+	 * Description:
+	 * 		Compiles the next version of the program.
+	 * @param source
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 */
+	public boolean compile(CharSequence source){
+		byte[] bytes = new byte[source.length()];
+		for(int i = 0; i < bytes.length; ++i){
+			bytes[i] = (byte) source.charAt(i);
+		}
+		return update(bytes);
+	}
+	
+	/**Method: compile(byte[])
+	 * Description:
+	 * 		Compiles the next version of the program, held in a byte array
+	 * 		with one character per byte. The array is copied.
+	 * @param source
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 */
+	public boolean compile(byte[] source){
+		return update(source.clone());
+	}
+	
+	/**Method: update(byte[])
+	 * Description:
+	 * 		Splits again the part of the source that changed since the last
+	 * 		compilation and compiles the statements found there.
+	 * @param text	The new source, kept by the session
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 */
+	private boolean update(byte[] text){
+		int first = 0;	//First statement replaced
+		int start = 0;	//Where it starts
+		int sync = text.length;	//Past it, the new text splits as the old one
+		int delta = 0;
+		if(source != null){
+			int prefix = Arrays.mismatch(source, text);
+			if(prefix < 0){
+				recompiled = 0;
+				return check();
+			}
+			int limit = Math.min(source.length, text.length) - prefix;
+			int suffix = 0;
+			while(suffix < limit && source[source.length - 1 - suffix] == text[text.length - 1 - suffix]){
+				++suffix;
+			}
+			while(start + lengths[first] < prefix){
+				start += lengths[first] + 1;
+				++first;
+			}
+			//A comment ends with its line, so the splits agree after the next line break
+			sync = text.length - suffix;
+			while(sync < text.length && text[sync] != '\n' && text[sync] != '\r'){
+				++sync;
+			}
+			delta = text.length - source.length;
+		}
+		
+		//Split the new text until a ';' of the old one is reached
+		int added = 0;
+		int last = first - 1;	//Last statement replaced
+		int end = source == null ? 0 : start + lengths[first];	//Its end in the old text
+		int piece = start;
+		boolean matched = false;
+		for(int i = start; i < text.length && !matched; ++i){
+			byte b = text[i];
+			if(b == '{'){
+				while(i + 1 < text.length && text[i + 1] != '}' && text[i + 1] != '\n' && text[i + 1] != '\r'){
+					++i;
+				}
+				if(i + 1 < text.length && text[i + 1] == '}'){
+					++i;
+				}
+			}else if(b == ';'){
+				split = ensure(split, added + 1);
+				split[added++] = i - piece;
+				piece = i + 1;
+				if(i > sync){
+					if(last < first){
+						last = first;
+					}
+					while(last < count - 1 && end < i - delta){
+						++last;
+						end += lengths[last] + 1;
+					}
+					matched = end == i - delta && last < count - 1;
+				}
+			}
+		}
+		if(!matched){
+			split = ensure(split, added + 1);
+			split[added++] = text.length - piece;
+			last = count - 1;
+		}
+		
+		replace(first, last + 1, added);
+		source = text;
+		int position = start;
+		for(int index = first; index < first + added; ++index){
+			compile(position, index);
+			position += lengths[index] + 1;
+		}
+		recompiled = added;
+		if(store.size() > 2 * live + 4096){
+			compact();
+		}
+		return check();
+	}
+	
+	/**Method: check(void)
+	 * Description:
+	 * 		Falls back to compiling the whole source, reporting its errors,
+	 * 		if a statement does not compile cleanly on its own.
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 */
+	private boolean check(){
+		fallback = null;
+		for(int index = 0; index < count; ++index){
+			if(labels[index] < 0){
+				lex.reset(ByteBuffer.wrap(source));
+				synt.reset();
+				recorder.clear();
+				synt.setQuiet(false);
+				valid = synt.analyze();
+				synt.setQuiet(true);
+				fallback = new Recorder();
+				fallback.quads.addAll(recorder.quads);
+				fallback.ends = Arrays.copyOf(recorder.ends, recorder.chunks);
+				fallback.chunks = recorder.chunks;
+				return valid;
+			}
+		}
+		valid = true;
+		return valid;
+	}
+	
+	/**Method: replace(int, int, int)
+	 * Description:
+	 * 		Replaces statements by the statements split, whose lengths are
+	 * 		set but which are not compiled yet.
+	 * @param from	First statement replaced
+	 * @param to	End of the statements replaced
+	 * @param added	Number of statements split
+	 */
+	private void replace(int from, int to, int added){
+		for(int index = from; index < to; ++index){
+			live -= sizes[index];
+		}
+		int size = count - to + from + added;
+		lengths = ensure(lengths, size);
+		firsts = ensure(firsts, size);
+		sizes = ensure(sizes, size);
+		labels = ensure(labels, size);
+		int tail = count - to;
+		System.arraycopy(lengths, to, lengths, from + added, tail);
+		System.arraycopy(firsts, to, firsts, from + added, tail);
+		System.arraycopy(sizes, to, sizes, from + added, tail);
+		System.arraycopy(labels, to, labels, from + added, tail);
+		System.arraycopy(split, 0, lengths, from, added);
+		count = size;
+	}
+	
+	/**Method: compile(int, int)
+	 * Description:
+	 * 		Compiles a statement on its own and stores its quads. It compiles
+	 * 		cleanly if it gets no error and, unless it is the last one, is
+	 * 		exactly one statement.
+	 * @param start	Where the statement starts in the source
+	 * @param index	Index of the statement
+	 */
+	private void compile(int start, int index){
+		boolean last = index == count - 1;
+		int length = lengths[index];
+		int size = (index > 0 ? HEADER.length : 0) + length + (last ? 0 : TRAILER.length);
+		if(size > unit.length){
+			unit = new byte[Math.max(size, unit.length * 2)];
+		}
+		size = 0;
+		if(index > 0){
+			System.arraycopy(HEADER, 0, unit, 0, HEADER.length);
+			size = HEADER.length;
+		}
+		System.arraycopy(source, start, unit, size, length);
+		size += length;
+		if(!last){
+			System.arraycopy(TRAILER, 0, unit, size, TRAILER.length);
+			size += TRAILER.length;
+		}
+		
+		lex.reset(ByteBuffer.wrap(unit, 0, size));
+		synt.reset();
+		recorder.clear();
+		boolean clean = synt.analyze() && synt.errors() == 0;
+		if(!last){
+			clean = clean && synt.statements() == 1 && exhausted();
+		}
+		
+		firsts[index] = store.size();
+		sizes[index] = 0;
+		labels[index] = -1;
+		if(clean){
+			QuadBuffer quads = recorder.quads;
+			int labelCount = 0;
+			for(int i = 0; i < quads.size(); ++i){
+				if(quads.opcode(i).form() > Opcode.UNARY){
+					labelCount = Math.max(labelCount, Operand.index(quads.result(i)) + 1);
+				}
+			}
+			store.addAll(quads);
+			sizes[index] = quads.size();
+			labels[index] = labelCount;
+			live += quads.size();
+		}
+	}
+	
+	/**Method: exhausted(void)
+	 * @return	True if the lexical analyzer has no line left, that is if
+	 * 			the analysis ended at the "end." put after the statement
+	 */
+	private boolean exhausted(){
+		rest.clear();
+		try {
+			return !lex.nextLine(rest);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**Method: compact(void)
+	 * Description:
+	 * 		Drops the quads of the statements edited away from the store.
+	 */
+	private void compact(){
+		QuadBuffer compacted = new QuadBuffer(live);
+		for(int index = 0; index < count; ++index){
+			int first = firsts[index];
+			firsts[index] = compacted.size();
+			for(int i = first; i < first + sizes[index]; ++i){
+				compacted.add(store, i);
+			}
+		}
+		store = compacted;
+	}
+	
+	/**Method: isValid(void)
+	 * @return	True if the last compiled program was syntactically correct
+	 */
+	public boolean isValid(){
+		return valid;
+	}
+	
+	/**Method: recompiled(void)
+	 * @return	Number of statements compiled by the last compilation, the
+	 * 			others being reused
+	 */
+	public int recompiled(){
+		return recompiled;
+	}
+	
+	/**Method: symbols(void)
+	 * @return	Symbol table of the operands of the 3AC
+	 */
+	public SymbolTable symbols(){
+		return lex.symbols();
+	}
+	
+	/**Method: write(TACSink)
+	 * Description:
+	 * 		Hands the 3AC of the last compiled program to a sink, one chunk
+	 * 		per statement, then flushes the sink. The 3AC is written even if
+	 * 		the program is not syntactically correct.
+	 * @param sink	Sink of the quads, whose operands refer to symbols()
+	 * @throws IOException
+	 */
+	public void write(TACSink sink) throws IOException{
+		if(fallback != null){
+			int first = 0;
+			for(int c = 0; c < fallback.chunks; ++c){
+				chunk.clear();
+				for(int i = first; i < fallback.ends[c]; ++i){
+					chunk.add(fallback.quads, i);
+				}
+				first = fallback.ends[c];
+				sink.accept(chunk);
+			}
+		}else{
+			int base = 0;
+			for(int index = 0; index < count; ++index){
+				chunk.clear();
+				int first = firsts[index];
+				for(int i = first; i < first + sizes[index]; ++i){
+					Opcode opcode = store.opcode(i);
+					switch (opcode.form()){
+					case Opcode.LABEL:
+						chunk.label(Operand.make(Operand.LABEL, Operand.index(store.result(i)) + base));
+						break;
+					case Opcode.JUMP:
+						chunk.jump(Operand.make(Operand.LABEL, Operand.index(store.result(i)) + base));
+						break;
+					case Opcode.TEST:
+						chunk.test(store.arg1(i), store.arg2(i), store.comparison(i),
+								Operand.make(Operand.LABEL, Operand.index(store.result(i)) + base));
+						break;
+					default:
+						chunk.add(store, i);
+						break;
+					}
+				}
+				base += labels[index];
+				if(chunk.size() > 0){
+					sink.accept(chunk);
+				}
+			}
+		}
+		sink.flush();
+	}
+	
+	/**Method: write(OutputStream)
+	 * Description:
+	 * 		Writes the 3AC of the last compiled program as text to a stream.
+	 * 		The 3AC is written even if the program is not syntactically correct.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException{
+		write(new TACWriter(lex.symbols(), out));
+	}
+	
+	/**Method: ensure(int[], int)
+	 * @param array
+	 * @param size	Number of elements needed
+	 * @return	The array, or a larger copy of it
+	 */
+	private static int[] ensure(int[] array, int size){
+		return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+	
+	/**
+	 *	Description:
+	 *		Sink collecting the 3AC of an analysis, with the end of each chunk.
+	 */
+	private static class Recorder implements TACSink {
+		
+		/**
+		 * Quads of every chunk
+		 */
+		private QuadBuffer quads = new QuadBuffer();
+		
+		/**
+		 * End of each chunk in quads
+		 */
+		private int[] ends = new int[16];
+		
+		/**
+		 * Number of chunks
+		 */
+		private int chunks;
+		
+		/*
+		 * (non-Javadoc)
+		 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+		 */
+		@Override
+		public void accept(QuadBuffer chunk){
+			quads.addAll(chunk);
+			ends = ensure(ends, chunks + 1);
+			ends[chunks++] = quads.size();
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see edu.utt.wallace.syntax.TACSink#flush()
+		 */
+		@Override
+		public void flush(){
+		}
+		
+		/**Method: clear(void)
+		 */
+		private void clear(){
+			quads.clear();
+			chunks = 0;
+		}
+	}
+}
@@ -0,0 +1,486 @@
+package edu.utt.wallace.syntax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *	Description:
+ *		Generates the lexical analyzer's DFA from a TokenSpec.
+ *
+ *		Every rule's pattern is compiled to an NFA (Thompson's construction),
+ *		the 256 byte values are partitioned into classes of bytes that no
+ *		pattern tells apart, the NFA is turned into a DFA over those classes
+ *		(subset construction) and the DFA is minimized (Moore's partition
+ *		refinement). The result is a LexerTables.
+ *
+ *		Running main prints the tables generated for TokenSpec.standard().
+ */
+public class LexerGenerator {
+	
+	/**
+	 * Source state of every NFA edge
+	 */
+	private final List<Integer> edgeFrom = new ArrayList<Integer>();
+	
+	/**
+	 * Target state of every NFA edge
+	 */
+	private final List<Integer> edgeTo = new ArrayList<Integer>();
+	
+	/**
+	 * Bytes accepted by every NFA edge, null for an epsilon edge
+	 */
+	private final List<BitSet> edgeBytes = new ArrayList<BitSet>();
+	
+	/**
+	 * Number of NFA states
+	 */
+	private int nfaStates;
+	
+	/**
+	 * Whether letters match regardless of case
+	 */
+	private boolean caseInsensitive;
+	
+	/**
+	 * Pattern being parsed
+	 */
+	private String pattern;
+	
+	/**
+	 * Position in the pattern being parsed
+	 */
+	private int pos;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		System.out.println(generate(TokenSpec.standard()));
+	}
+	
+	/**Method: generate(TokenSpec)
+	 * Description:
+	 * 		Generates the minimized DFA of a token specification.
+	 * @param spec
+	 * @return	Tables of the DFA
+	 */
+	public static LexerTables generate(TokenSpec spec){
+		return new LexerGenerator().build(spec);
+	}
+	
+	/**Method: build(TokenSpec)
+	 * Description:
+	 * 		Runs every stage of the generator.
+	 * @param spec
+	 * @return	Tables of the DFA
+	 */
+	private LexerTables build(TokenSpec spec){
+		caseInsensitive = spec.isCaseInsensitive();
+		
+		//NFA: a start state with an epsilon edge to every rule
+		int start = newState();
+		List<Integer> ruleEnds = new ArrayList<Integer>();
+		for(int rule = 0; rule < spec.size(); ++rule){
+			pattern = spec.pattern(rule);
+			pos = 0;
+			int[] fragment = alternation();
+			if(pos != pattern.length()){
+				throw new IllegalArgumentException("Unexpected '" + pattern.charAt(pos) + "' in pattern " + pattern);
+			}
+			edge(start, fragment[0], null);
+			ruleEnds.add(fragment[1]);
+		}
+		int[] acceptRule = new int[nfaStates];
+		Arrays.fill(acceptRule, -1);
+		for(int rule = ruleEnds.size() - 1; rule >= 0; --rule){
+			acceptRule[ruleEnds.get(rule)] = rule;
+		}
+		
+		//Byte classes
+		byte[] classMap = new byte[256];
+		int classCount = byteClasses(classMap);
+		List<BitSet> edgeClasses = new ArrayList<BitSet>(edgeBytes.size());
+		for(BitSet bytes : edgeBytes){
+			BitSet classes = null;
+			if(bytes != null){
+				classes = new BitSet(classCount);
+				for(int b = bytes.nextSetBit(0); b >= 0; b = bytes.nextSetBit(b + 1)){
+					classes.set(classMap[b]);
+				}
+			}
+			edgeClasses.add(classes);
+		}
+		
+		//Subset construction. State 0 is the dead (empty) state.
+		List<BitSet> dfaSets = new ArrayList<BitSet>();
+		Map<BitSet, Integer> dfaIndex = new HashMap<BitSet, Integer>();
+		List<int[]> dfaMoves = new ArrayList<int[]>();
+		BitSet dead = new BitSet();
+		dfaSets.add(dead);
+		dfaIndex.put(dead, 0);
+		BitSet initial = new BitSet();
+		initial.set(start);
+		closure(initial);
+		dfaSets.add(initial);
+		dfaIndex.put(initial, 1);
+		
+		for(int s = 0; s < dfaSets.size(); ++s){
+			BitSet set = dfaSets.get(s);
+			int[] moves = new int[classCount];
+			for(int c = 0; c < classCount; ++c){
+				BitSet target = new BitSet();
+				for(int e = 0; e < edgeFrom.size(); ++e){
+					BitSet classes = edgeClasses.get(e);
+					if(classes != null && classes.get(c) && set.get(edgeFrom.get(e))){
+						target.set(edgeTo.get(e));
+					}
+				}
+				closure(target);
+				Integer index = dfaIndex.get(target);
+				if(index == null){
+					index = dfaSets.size();
+					dfaSets.add(target);
+					dfaIndex.put(target, index);
+				}
+				moves[c] = index;
+			}
+			dfaMoves.add(moves);
+		}
+		
+		//Action of every DFA state: the token of its highest priority rule
+		int[] codes = new int[dfaSets.size()];
+		for(int s = 0; s < codes.length; ++s){
+			int best = -1;
+			BitSet set = dfaSets.get(s);
+			for(int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1)){
+				if(acceptRule[n] >= 0 && (best < 0 || acceptRule[n] < best)){
+					best = acceptRule[n];
+				}
+			}
+			if(best < 0){
+				codes[s] = LexerTables.NONE;
+			}else{
+				codes[s] = spec.token(best) == null ? LexerTables.SKIP : spec.token(best).ordinal();
+			}
+		}
+		
+		return minimize(dfaMoves, codes, classMap, classCount);
+	}
+	
+	/**Method: minimize(List, int[], byte[], int)
+	 * Description:
+	 * 		Merges equivalent DFA states by partition refinement, starting
+	 * 		from a partition by action, until no partition splits. The dead
+	 * 		state becomes state 0 and the start state becomes state 1.
+	 * @param moves		Transitions of every state, by class
+	 * @param codes		Action of every state
+	 * @param classMap
+	 * @param classCount
+	 * @return	Tables of the minimized DFA
+	 */
+	private static LexerTables minimize(List<int[]> moves, int[] codes, byte[] classMap, int classCount){
+		int states = moves.size();
+		int[] block = new int[states];
+		int blocks = partition(block, codes, null, moves, classCount);
+		while(true){
+			int[] refined = new int[states];
+			int count = partition(refined, codes, block, moves, classCount);
+			block = refined;
+			if(count == blocks){
+				break;
+			}
+			blocks = count;
+		}
+		
+		//Renumber so that the dead state is 0 and the start state is 1
+		int[] number = new int[blocks];
+		Arrays.fill(number, -1);
+		number[block[0]] = 0;
+		number[block[1]] = 1;
+		int next = 2;
+		for(int s = 0; s < states; ++s){
+			if(number[block[s]] < 0){
+				number[block[s]] = next++;
+			}
+		}
+		
+		int[] transitions = new int[blocks * classCount];
+		int[] actions = new int[blocks];
+		for(int s = 0; s < states; ++s){
+			int state = number[block[s]];
+			for(int c = 0; c < classCount; ++c){
+				transitions[state * classCount + c] = number[block[moves.get(s)[c]]];
+			}
+			actions[state] = codes[s];
+		}
+		for(int state = 1; state < blocks; ++state){
+			if(actions[state] == LexerTables.NONE){
+				continue;
+			}
+			boolean isFinal = true;
+			for(int c = 0; c < classCount && isFinal; ++c){
+				isFinal = transitions[state * classCount + c] == 0;
+			}
+			if(isFinal){
+				actions[state] |= LexerTables.FINAL;
+			}
+		}
+		return new LexerTables(classMap, classCount, transitions, actions);
+	}
+	
+	/**Method: partition(int[], int[], int[], List, int)
+	 * Description:
+	 * 		Splits states into blocks of equal action whose transitions lead
+	 * 		to the same blocks of the previous partition.
+	 * @param block		Receives the block of every state
+	 * @param codes		Action of every state
+	 * @param previous	Previous partition, null for the initial partition
+	 * @param moves
+	 * @param classCount
+	 * @return	Number of blocks
+	 */
+	private static int partition(int[] block, int[] codes, int[] previous, List<int[]> moves, int classCount){
+		Map<List<Integer>, Integer> keys = new HashMap<List<Integer>, Integer>();
+		for(int s = 0; s < block.length; ++s){
+			List<Integer> key = new ArrayList<Integer>(classCount + 2);
+			key.add(codes[s]);
+			if(previous != null){
+				key.add(previous[s]);
+				for(int c = 0; c < classCount; ++c){
+					key.add(previous[moves.get(s)[c]]);
+				}
+			}
+			Integer id = keys.get(key);
+			if(id == null){
+				id = keys.size();
+				keys.put(key, id);
+			}
+			block[s] = id;
+		}
+		return keys.size();
+	}
+	
+	/**Method: byteClasses(byte[])
+	 * Description:
+	 * 		Groups the byte values that are accepted by exactly the same NFA
+	 * 		edges. Class 0 holds the bytes that no edge accepts.
+	 * @param classMap	Receives the class of every byte value
+	 * @return	Number of classes
+	 */
+	private int byteClasses(byte[] classMap){
+		Map<BitSet, Integer> classes = new HashMap<BitSet, Integer>();
+		classes.put(new BitSet(), 0);
+		for(int b = 0; b < 256; ++b){
+			BitSet signature = new BitSet();
+			for(int e = 0; e < edgeBytes.size(); ++e){
+				if(edgeBytes.get(e) != null && edgeBytes.get(e).get(b)){
+					signature.set(e);
+				}
+			}
+			Integer id = classes.get(signature);
+			if(id == null){
+				id = classes.size();
+				classes.put(signature, id);
+			}
+			classMap[b] = (byte) (int) id;
+		}
+		if(classes.size() > 128){
+			throw new IllegalStateException("Too many byte classes: " + classes.size());
+		}
+		return classes.size();
+	}
+	
+	/**Method: closure(BitSet)
+	 * Description:
+	 * 		Adds to a set of NFA states every state reachable through epsilon edges.
+	 * @param set
+	 */
+	private void closure(BitSet set){
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			for(int e = 0; e < edgeFrom.size(); ++e){
+				if(edgeBytes.get(e) == null && set.get(edgeFrom.get(e)) && !set.get(edgeTo.get(e))){
+					set.set(edgeTo.get(e));
+					changed = true;
+				}
+			}
+		}
+	}
+	
+	/**Method: newState(void)
+	 * @return	A new NFA state
+	 */
+	private int newState(){
+		return nfaStates++;
+	}
+	
+	/**Method: edge(int, int, BitSet)
+	 * Description:
+	 * 		Adds an NFA edge.
+	 * @param from
+	 * @param to
+	 * @param bytes	Bytes accepted by the edge, null for an epsilon edge
+	 */
+	private void edge(int from, int to, BitSet bytes){
+		edgeFrom.add(from);
+		edgeTo.add(to);
+		edgeBytes.add(bytes);
+	}
+	
+	/**Method: alternation(void)
+	 * Description:
+	 * 		Parses x|y|...
+	 * @return	Start and end state of the fragment
+	 */
+	private int[] alternation(){
+		int[] first = sequence();
+		if(pos >= pattern.length() || pattern.charAt(pos) != '|'){
+			return first;
+		}
+		int start = newState();
+		int end = newState();
+		edge(start, first[0], null);
+		edge(first[1], end, null);
+		while(pos < pattern.length() && pattern.charAt(pos) == '|'){
+			++pos;
+			int[] next = sequence();
+			edge(start, next[0], null);
+			edge(next[1], end, null);
+		}
+		return new int[]{start, end};
+	}
+	
+	/**Method: sequence(void)
+	 * Description:
+	 * 		Parses xy...
+	 * @return	Start and end state of the fragment
+	 */
+	private int[] sequence(){
+		int start = newState();
+		int end = start;
+		while(pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')'){
+			int[] next = repetition();
+			edge(end, next[0], null);
+			end = next[1];
+		}
+		return new int[]{start, end};
+	}
+	
+	/**Method: repetition(void)
+	 * Description:
+	 * 		Parses x, x*, x+ and x?
+	 * @return	Start and end state of the fragment
+	 */
+	private int[] repetition(){
+		int[] fragment = atom();
+		while(pos < pattern.length()){
+			char c = pattern.charAt(pos);
+			if(c != '*' && c != '+' && c != '?'){
+				break;
+			}
+			++pos;
+			int start = newState();
+			int end = newState();
+			edge(start, fragment[0], null);
+			edge(fragment[1], end, null);
+			if(c != '+'){
+				edge(start, end, null);
+			}
+			if(c != '?'){
+				edge(fragment[1], fragment[0], null);
+			}
+			fragment = new int[]{start, end};
+		}
+		return fragment;
+	}
+	
+	/**Method: atom(void)
+	 * Description:
+	 * 		Parses a character, an escaped character, a class or a group.
+	 * @return	Start and end state of the fragment
+	 */
+	private int[] atom(){
+		char c = pattern.charAt(pos++);
+		if(c == '('){
+			int[] group = alternation();
+			if(pos >= pattern.length() || pattern.charAt(pos) != ')'){
+				throw new IllegalArgumentException("Unbalanced parenthesis in pattern " + pattern);
+			}
+			++pos;
+			return group;
+		}
+		
+		BitSet bytes = new BitSet(256);
+		if(c == '['){
+			characterClass(bytes);
+		}else if(c == '\\'){
+			addByte(bytes, pattern.charAt(pos++));
+		}else if(c == '*' || c == '+' || c == '?'){
+			throw new IllegalArgumentException("Nothing to repeat in pattern " + pattern);
+		}else{
+			addByte(bytes, c);
+		}
+		int start = newState();
+		int end = newState();
+		edge(start, end, bytes);
+		return new int[]{start, end};
+	}
+	
+	/**Method: characterClass(BitSet)
+	 * Description:
+	 * 		Parses the body of [...] or [^...], after the opening bracket.
+	 * @param bytes	Receives the bytes of the class
+	 */
+	private void characterClass(BitSet bytes){
+		boolean negated = pos < pattern.length() && pattern.charAt(pos) == '^';
+		if(negated){
+			++pos;
+		}
+		while(pos < pattern.length() && pattern.charAt(pos) != ']'){
+			char low = pattern.charAt(pos++);
+			if(low == '\\'){
+				low = pattern.charAt(pos++);
+			}
+			char high = low;
+			if(pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']'){
+				high = pattern.charAt(pos + 1);
+				pos += 2;
+			}
+			for(char ch = low; ch <= high; ++ch){
+				addByte(bytes, ch);
+			}
+		}
+		if(pos >= pattern.length()){
+			throw new IllegalArgumentException("Unterminated class in pattern " + pattern);
+		}
+		++pos;
+		if(negated){
+			bytes.flip(0, 256);
+		}
+	}
+	
+	/**Method: addByte(BitSet, char)
+	 * Description:
+	 * 		Adds a character to a set of bytes, along with its other case
+	 * 		when matching is case-insensitive.
+	 * @param bytes
+	 * @param c
+	 */
+	private void addByte(BitSet bytes, char c){
+		if(c > 0xFF){
+			throw new IllegalArgumentException("Character out of range in pattern " + pattern);
+		}
+		bytes.set(c);
+		if(caseInsensitive && c >= 'a' && c <= 'z'){
+			bytes.set(c - 'a' + 'A');
+		}else if(caseInsensitive && c >= 'A' && c <= 'Z'){
+			bytes.set(c - 'A' + 'a');
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package edu.utt.wallace.syntax;
+
+/**
+ *	Description:
+ *		Immutable tables of a DFA generated by LexerGenerator.
+ *
+ *		classMap maps each of the 256 byte values to a byte class, and
+ *		transitions is a flat table holding the next state of every
+ *		(state, class) pair at state * classCount + class. State 0 is the
+ *		dead state and state 1 the start state.
+ *
+ *		actions holds the action code of every state: NONE if the state does
+ *		not accept, otherwise the ordinal of the accepted Token (or SKIP for
+ *		text that produces no token), plus the FINAL bit if the state has no
+ *		way out. A scanner remembers the last accepting state it went
+ *		through and backs up to it once it reaches the dead state; a FINAL
+ *		state accepts at once without reading any further.
+ */
+public class LexerTables {
+	
+	/**
+	 * Action of a state that does not accept
+	 */
+	public static final int NONE = -1;
+	
+	/**
+	 * Action code of a state accepting text that produces no token
+	 */
+	public static final int SKIP = 0xFF;
+	
+	/**
+	 * Bit set in the action of a state without transitions
+	 */
+	public static final int FINAL = 0x100;
+	
+	/**
+	 * Mask of the token ordinal (or SKIP) of an action
+	 */
+	public static final int CODE = 0xFF;
+	
+	/**
+	 * Dead state
+	 */
+	public static final int DEAD = 0;
+	
+	/**
+	 * Start state
+	 */
+	public static final int START = 1;
+	
+	/**
+	 * Tables of TokenSpec.standard(), shared by every lexical analyzer
+	 */
+	private static LexerTables standard;
+	
+	/**
+	 * Byte class of every byte value
+	 */
+	final byte[] classMap;
+	
+	/**
+	 * Number of byte classes
+	 */
+	final int classCount;
+	
+	/**
+	 * Next state of every (state, class) pair
+	 */
+	final int[] transitions;
+	
+	/**
+	 * Action code of every state
+	 */
+	final int[] actions;
+	
+	/**Constructor
+	 * @param classMap
+	 * @param classCount
+	 * @param transitions
+	 * @param actions
+	 */
+	LexerTables(byte[] classMap, int classCount, int[] transitions, int[] actions){
+		this.classMap = classMap;
+		this.classCount = classCount;
+		this.transitions = transitions;
+		this.actions = actions;
+	}
+	
+	/**Method: standard(void)
+	 * Description:
+	 * 		Generates the tables of the language on first use.
+	 * @return	Tables of TokenSpec.standard()
+	 */
+	public static synchronized LexerTables standard(){
+		if(standard == null){
+			standard = LexerGenerator.generate(TokenSpec.standard());
+		}
+		return standard;
+	}
+	
+	/**Method: stateCount(void)
+	 * @return	Number of states, including the dead state
+	 */
+	public int stateCount(){
+		return actions.length;
+	}
+	
+	/**Method: classCount(void)
+	 * @return	Number of byte classes
+	 */
+	public int classCount(){
+		return classCount;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 * Dumps the byte classes, transitions and actions.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%d states, %d byte classes%n", stateCount(), classCount));
+		for(int c = 1; c < classCount; ++c){
+			builder.append(String.format("class %2d:", c));
+			for(int b = 0; b < 256; ++b){
+				if(classMap[b] == c){
+					builder.append(b > ' ' && b < 0x7F ? " " + (char) b : String.format(" 0x%02X", b));
+				}
+			}
+			builder.append(String.format("%n"));
+		}
+		for(int s = 0; s < actions.length; ++s){
+			builder.append(String.format("state %2d:", s));
+			for(int c = 0; c < classCount; ++c){
+				builder.append(String.format(" %2d", transitions[s * classCount + c]));
+			}
+			int action = actions[s];
+			if(action != NONE){
+				int code = action & CODE;
+				builder.append(code == SKIP ? "  skip" : "  " + Token.values()[code]);
+				if((action & FINAL) != 0){
+					builder.append(" (final)");
+				}
+			}
+			builder.append(String.format("%n"));
+		}
+		return builder.toString();
+	}
+}
@@ -1,20 +1,40 @@
 package edu.utt.wallace.syntax;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.TreeMap;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 
 /**
  * @author Glen Wallace
  *
  *	Description:
- *		Performs lexical analysis on a given input file
+ *		Performs lexical analysis on a given input file, character stream
+ *		or in-memory source. The state and keyword tables are immutable and
+ *		shared by every instance, and an instance can be reset and reused.
+ *		Identifiers and numbers are interned in the analyzer's SymbolTable
+ *		and reach the parser as symbol IDs.
+ *
+ *		Every line is scanned as bytes. Byte sources (such as a memory-mapped
+ *		file) are scanned in place; character sources are first copied into
+ *		a reusable line buffer. Characters are matched case-insensitively
+ *		and tokens are appended to a TokenBuffer as offsets into the line,
+ *		so a lexeme's text is only materialized when the parser asks for it.
+ *
+ *		Lexemes are recognized by the DFA that LexerGenerator builds from
+ *		TokenSpec.standard(), taking the longest match. A character that
+ *		starts no lexeme is skipped as general punctuation.
  */
-public class LexicalAnalyzer {
+public class LexicalAnalyzer implements TokenSource, Closeable {
 	
 	/**
 	 * Rudimentary debugging variable. Holds the line at which the lex
@@ -23,356 +43,406 @@ public class LexicalAnalyzer {
 	private int fileLineNumber = -1;
 	
 	/**
-	 * Holds Finite State Machine transitions
+	 * Number of lines analyzed since the last reset
+	 */
+	private int lines;
+	
+	/**
+	 * Holds the DFA generated from TokenSpec.standard(). Shared by every instance.
 	 */
-	private int[][] stateTable;
+	private static final LexerTables tables = LexerTables.standard();
 	
 	/**
-	 * Holds the keyword -> token mapping.
-	 * O(log(n)) access.
+	 * Token values, indexed by ordinal.
 	 */
-	private TreeMap<String, Token> keywordTable;
+	private static final Token[] tokenValues = Token.values();
 	
 	/**
-	 * Holds the source file to be analyzed.
+	 * Holds the source file to be analyzed, null when analyzing
+	 * an in-memory or byte source.
 	 */
 	private BufferedReader file;
 	
 	/**
-	 * String to determine whether a given character is alphabetical
+	 * Holds the in-memory source to be analyzed, null when analyzing
+	 * a file or byte source.
+	 */
+	private CharSequence source;
+	
+	/**
+	 * Holds the byte source (e.g. a memory-mapped file) to be analyzed,
+	 * null when analyzing a file or in-memory source.
+	 */
+	private ByteBuffer bytes;
+	
+	/**
+	 * Position of the next unread character of the in-memory or byte source.
+	 */
+	private int sourcePos;
+	
+	/**
+	 * Interned identifiers and number literals. Kept when the analyzer is
+	 * reset, since consecutive programs tend to reuse the same names.
+	 */
+	private final SymbolTable symbols = new SymbolTable();
+	
+	/**
+	 * Reusable copy of the current line of character sources.
+	 */
+	private byte[] lineBuffer = new byte[256];
+	
+	/**
+	 * Reusable scratch space to materialize lexemes of direct buffers.
 	 */
-	private String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+	private byte[] lexemeBuffer = new byte[64];
 	
 	/**
-	 * String to determine whether a given character is a digit
+	 * Buffer view of lineBuffer.
 	 */
-	private String digits = "1234567890";
+	private ByteBuffer lineWrapper = ByteBuffer.wrap(lineBuffer);
 	
 	/**
-	 * String to determine whether a given character is an operator
+	 * Buffer holding the line currently being scanned.
 	 */
-	private String operators = "{}()=<>#~^+-*/;.";
+	private ByteBuffer line;
+	
+	/**
+	 * Position of the first byte of the current line in the line buffer.
+	 */
+	private int lineStart;
+	
+	/**
+	 * Position one past the last byte of the current line in the line buffer.
+	 */
+	private int lineEnd;
 	
 	/**Constructor: LexicalAnalyzer(String)
 	 * 
 	 * @param fileName	Name of the source-file to be analyzed
-	 * @throws FileNotFoundException 
+	 * @throws FileNotFoundException
 	 */
 	public LexicalAnalyzer(String fileName) throws FileNotFoundException{
-		initStateTable();
-		initKeywordTable();
-		file = new BufferedReader(new FileReader(fileName));
+		this(new FileReader(fileName));
+	}
+	
+	/**Constructor: LexicalAnalyzer(Reader)
+	 * 
+	 * @param reader	Character stream of the source to be analyzed
+	 */
+	public LexicalAnalyzer(Reader reader){
+		reset(reader);
 	}
 	
-	/**Method: initStateTable(void)
+	/**Constructor: LexicalAnalyzer(CharSequence)
+	 * 
+	 * @param source	In-memory source to be analyzed. No disk I/O is performed.
+	 */
+	public LexicalAnalyzer(CharSequence source){
+		reset(source);
+	}
+	
+	/**Constructor: LexicalAnalyzer(ByteBuffer)
+	 * 
+	 * @param source	Bytes of the source to be analyzed, from its position to its limit.
+	 * 					The bytes are scanned in place.
+	 */
+	public LexicalAnalyzer(ByteBuffer source){
+		reset(source);
+	}
+	
+	/**Method: map(String)
+	 * 
 	 * Description:
-	 * 		Populates a 2d array of integers with a default state-transition
-	 * 		table for the lexical analyzer's Finite State machine.
-	 * @return	Finite State Machine transition table
+	 * 		Creates a lexical analyzer over a memory-mapped source file.
+	 * 		The file is scanned in place, without copying it onto the heap.
+	 * @param fileName	Name of the source-file to be analyzed
+	 * @return	Lexical analyzer over the mapped file
+	 * @throws IOException
 	 */
-	private void initStateTable(){
-		//						L	D	{	}	(	)	=	<	>	op	p	sp
-		int[][] table = {	{	1,	3,	5,	16,	7,	8,	9,	10,	13,	15,	17,	0	},	//0	Start
-							{	1,	1,	2,	2,	2,	2,	2,	2,	2,	2,	2,	2	},	//1	In identifier
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//2 End identifier
-							{	4,	3,	4,	4,	4,	4,	4,	4,	4,	4,	4,	4	},	//3 In constant
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//4 End constant
-							{	5,	5,	5,	6,	5,	5,	5,	5,	5,	5,	5,	5	},	//5 In comment
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//6 End comment
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//7 Found (
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//8 Found )
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//9 Found =
-							{	16,	16,	16,	16,	16,	16,	11, 16, 12, 16,	16,	16	},	//10 Found <
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//11 Found <=
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//12 Found <>
-							{	16,	16,	16,	16,	16,	16,	14,	16,	16,	16,	16,	16	},	//13 Found >
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//14 Found >=
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//15 Found Operator
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//16 Found < or >
-							{	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0,	0	},	//17 General punctuation
-						};
-		this.stateTable = table;
+	public static LexicalAnalyzer map(String fileName) throws IOException{
+		return new LexicalAnalyzer(mapFile(fileName));
 	}
-
-	/**Method: initKeywordTable(void)
+	
+	/**Method: mapFile(String)
 	 * 
 	 * Description:
-	 * 		Initializes the keyword table
+	 * 		Memory-maps a whole file read-only. The mapping stays valid
+	 * 		after the channel used to create it is closed.
+	 * @param fileName
+	 * @return	The mapped file
+	 * @throws IOException
 	 */
-	private void initKeywordTable(){
-		this.keywordTable = new TreeMap<String, Token>();
-		this.keywordTable.put("DIV", Token.INTDIV);
-		this.keywordTable.put("MOD", Token.MOD);
-		this.keywordTable.put("PROGRAM", Token.PROGRAM);
-		this.keywordTable.put("END", Token.END);
-		this.keywordTable.put("IF", Token.IF);
-		this.keywordTable.put("WHILE", Token.WHILE);
-		this.keywordTable.put("THEN", Token.THEN);
-		this.keywordTable.put("DO", Token.DO);
+	public static MappedByteBuffer mapFile(String fileName) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
 	}
-
-	/**Method: nextLine(void)
+	
+	/**Method: reset(Reader)
+	 * 
+	 * Description:
+	 * 		Starts analyzing a new character stream, reusing this instance.
+	 * @param reader
+	 */
+	public void reset(Reader reader){
+		this.file = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		this.source = null;
+		this.bytes = null;
+		this.fileLineNumber = -1;
+		this.lines = 0;
+	}
+	
+	/**Method: reset(CharSequence)
+	 * 
+	 * Description:
+	 * 		Starts analyzing a new in-memory source, reusing this instance.
+	 * @param source
+	 */
+	public void reset(CharSequence source){
+		this.file = null;
+		this.source = source;
+		this.bytes = null;
+		this.sourcePos = 0;
+		this.fileLineNumber = -1;
+		this.lines = 0;
+	}
+	
+	/**Method: reset(ByteBuffer)
+	 * 
+	 * Description:
+	 * 		Starts analyzing a new byte source, reusing this instance.
+	 * @param source	Bytes of the source, from its position to its limit
+	 */
+	public void reset(ByteBuffer source){
+		this.file = null;
+		this.source = null;
+		this.bytes = source;
+		this.sourcePos = source.position();
+		this.fileLineNumber = -1;
+		this.lines = 0;
+	}
+	
+	/**Method: nextLine(TokenBuffer)
 	 * 
 	 * Description:
-	 * 		Analyzes the next line of the source file, then outputs
-	 * 		a Queue (implemented as a LinkedList) of the token->lexeme
-	 * 		mappings.
-	 * @return	Queue of the next line's token -> lexeme mappings, null
-	 * 			if the end of file is reached
+	 * 		Analyzes the next line of the source file, then appends
+	 * 		its tokens to the output buffer. The offsets of the lexemes
+	 * 		can be turned into text with lexeme(int, int) until the next
+	 * 		line is analyzed.
+	 * @param output	Buffer receiving the line's tokens
+	 * @return	False if the end of file is reached, true otherwise
 	 * @throws IOException 
 	 */
-	public LinkedList<KeyVal<Token, String>> nextLine() throws IOException{
+	public boolean nextLine(TokenBuffer output) throws IOException{
 		//Increment the line number
 		++this.fileLineNumber;
 		
-		int state = 0;
-		
-		String line = file.readLine();
-		
-		if(line == null){//Check if EOF reached
-			return null;
+		if(!readLine()){//Check if EOF reached
+			return false;
 		}
+		++this.lines;
 		
-		//Uppercase string for comparison. Add white noise to the end to
-		//ensure single word lines get parsed
-		String u_line = line.toUpperCase() + " ";
+		//Line number reported with the tokens
+		int lineNumber = fileLineNumber + 1;
 		
-		//Output queue
-		LinkedList<KeyVal<Token, String>> output = new LinkedList<KeyVal<Token, String>>();
+		byte[] classMap = tables.classMap;
+		int classCount = tables.classCount;
+		int[] transitions = tables.transitions;
+		int[] actions = tables.actions;
+		ByteBuffer line = this.line;
+		int end = lineEnd;
 		
 		//Position of the beginning of the current lexeme
-		int startChar = 0;
-		//Position of the current character
-		int curChar = 0;
-		//Current column of the FSM
-		int curColum = 0;
-		
-		//Current lexeme
-		String lexeme = "";
+		int startChar = lineStart;
 		
-		while(curChar < u_line.length()){
+		while(startChar < end){
+			int state = LexerTables.START;
+			//Action and end of the longest lexeme accepted so far
+			int accepted = LexerTables.NONE;
+			int acceptEnd = startChar;
+			//Position of the current character
+			int curChar = startChar;
 			
-			curColum = getColumn(u_line.charAt(curChar));
-			
-			//Check to see if the inputted character is not recognized
-			if(curColum == -1){
-				System.out.printf("Unknown input at [Line: %d][Pos: %d]: %c", fileLineNumber, curChar, line.charAt(curChar));
-			}else{//If the character is recognized then change the state
-				state = this.stateTable[state][curColum];
-			}
-			
-			switch(state){
-			case 2:		//End identifier
-				lexeme = line.substring(startChar, curChar);
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(kwSearch(lexeme.toUpperCase()), lexeme));
-				
-				//Backup the character pointer
-				--curChar;
-				
-				break;
-			case 4:		//End number
-				lexeme = line.substring(startChar, curChar);
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.NUMBER, lexeme));
-				
-				//Backup the character pointer
-				--curChar;
-				
-				break;
-		
-			case 6:		//End comment
-				state = 0;
-				break;
-			case 7:		//Found (
-				lexeme = String.valueOf(line.charAt(curChar));
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.OPARENTH, lexeme));
-				
-				break;
-			case 8:		//Found )
-				lexeme = String.valueOf(line.charAt(curChar));
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.CPARENTH, lexeme));
-				
-				break;
-			case 9:		//Found =
-				lexeme = String.valueOf(line.charAt(curChar));
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.EQUAL, lexeme));
-				break;
-			case 11:	//Found <=
-				lexeme = line.substring(startChar, curChar);
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.LE, lexeme));
-				break;
-			case 12:	//Found <>
-				lexeme = line.substring(startChar, curChar);
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.NE, lexeme));
-				break;
-			case 14:	//Found >=
-				lexeme = line.substring(startChar, curChar);
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(Token.GE, lexeme));
-				
-				break;
-		
-			case 15:		//Found Operator
-				lexeme = String.valueOf(line.charAt(curChar));
-				
-				//Determine which operator the character is
-				int opCode = operators.indexOf(lexeme);
-				
-				Token token;
-				
-				switch (opCode){
-				
-				case 4://'=' : Assignment
-					token = Token.EQUAL;
-					break;
-					
-				case 7://'#' : Unary Plus
-					token = Token.UPLUS;
-					break;
-					
-				case 8://'~' : Unary Minus
-					token = Token.UMINUS;
+			while(curChar < end){
+				state = transitions[state * classCount + classMap[line.get(curChar) & 0xFF]];
+				if(state == LexerTables.DEAD){
 					break;
-					
-				case 9://'^' : Exponential
-					token = Token.EXPON;
-					break;
-					
-				case 10://'+' : Addition
-					token = Token.ADD;
-					break;
-					
-				case 11://'-' : Subtraction
-					token = Token.SUB;
-					break;
-					
-				case 12://'*' : Multiplication
-					token = Token.MULT;
-					break;
-					
-				case 13://'/' : Division
-					token = Token.DIV;
-					break;
-					
-					
-				case 14://';' : Semicolon
-					token = Token.SEMICOLON;
-					break;
-				case 15://'.' : period
-					token = Token.PERIOD;
-					break;
-				
-				default:
-					token = Token.ERROR;
 				}
-				
-				//Go back to the starting state
-				state = 0;
-				
-				output.add(new KeyVal<Token, String>(token, lexeme));
-				
-				break;
-			case 16:	//Found either < or >
-				lexeme = String.valueOf(line.charAt(curChar-1));
-				
-				//Go back to the starting state
-				state = 0;
-				if(lexeme.equals("<")){
-					output.add(new KeyVal<Token, String>(Token.LT, lexeme));					
-				}else if(lexeme.equals(">")){
-					output.add(new KeyVal<Token, String>(Token.GT, lexeme));
-				}else {output.add(new KeyVal<Token, String>(Token.ERROR, lexeme));}
-				
-				--curChar;
-				break;
-			case 17:	//General punctuation.
-				
-				break;
-			}//End switch
+				++curChar;
+				
+				int action = actions[state];
+				if(action != LexerTables.NONE){
+					accepted = action;
+					acceptEnd = curChar;
+					if((action & LexerTables.FINAL) != 0){
+						break;
+					}
+				}
+			}
 			
-			//Increment the character pointer
-			++curChar;
+			if(accepted == LexerTables.NONE){
+				//General punctuation: skip the character
+				++startChar;
+				continue;
+			}
 			
-			if(state == 0){
-				startChar = curChar;
+			int code = accepted & LexerTables.CODE;
+			int length = acceptEnd - startChar;
+			if(code == Token.IDENT.ordinal()){
+				Token keyword = SymbolTable.keyword(line, startChar, length);
+				if(keyword != null){
+					output.add(keyword, -1, startChar, length, lineNumber);
+				}else{
+					output.add(Token.IDENT, symbols.intern(line, startChar, length), startChar, length, lineNumber);
+				}
+			}else if(code == Token.NUMBER.ordinal()){
+				output.add(Token.NUMBER, symbols.intern(line, startChar, length), startChar, length, lineNumber);
+			}else if(code != LexerTables.SKIP){
+				output.add(tokenValues[code], -1, startChar, length, lineNumber);
 			}
-
+			
+			//Backup the character pointer to the end of the longest lexeme
+			startChar = acceptEnd;
 		}
 		
-		//Clear the lexeme
-		lexeme = "";
-		
-		return output;
+		return true;
 	}
 	
-	/**Method: getColumn(char)
+	/**Method: readLine(void)
 	 * 
-	 * Description
-	 * 		Finds the column of the state table associated with the inputted character
-	 * @param input		-	Inputted character
-	 * @return	The column of the character. -1 if the character isn't found
+	 * Description:
+	 * 		Positions line, lineStart and lineEnd on the next line of the
+	 * 		source, with the same line terminator handling as
+	 * 		BufferedReader.readLine(). Byte sources are not copied.
+	 * @return	True if a line was read, false if the end of file is reached
+	 * @throws IOException
 	 */
-	private int getColumn(char input){
+	private boolean readLine() throws IOException{
+		if(bytes != null){
+			int length = bytes.limit();
+			if(sourcePos >= length){
+				return false;
+			}
+			
+			int end = sourcePos;
+			byte b = 0;
+			while(end < length && (b = bytes.get(end)) != '\n' && b != '\r'){
+				++end;
+			}
+			
+			line = bytes;
+			lineStart = sourcePos;
+			lineEnd = end;
+			
+			sourcePos = end + 1;
+			if(end < length && b == '\r' && sourcePos < length && bytes.get(sourcePos) == '\n'){
+				++sourcePos;
+			}
+			return true;
+		}
 		
-		if(alphabet.indexOf(input) >= 0){			//Letter
-			return 0;
-		}else if(digits.indexOf(input) >= 0){		//Digit
-			return 1;
+		int length;
+		if(file != null){
+			String text = file.readLine();
+			if(text == null){
+				return false;
+			}
+			length = text.length();
+			copyLine(text, 0, length);
 		}else{
-			int opCode = operators.indexOf(input);
-			if(opCode >=0){							//Either { } ( ) = < > or an operator
-				if(opCode < 8){
-					return opCode + 2;					
-				}else { return 9 ;}
-			}else if(input == ' '){					//Space
-				return 11;
-			}else { return 10; } 					//General punctuation
+			int sourceLength = source.length();
+			if(sourcePos >= sourceLength){
+				return false;
+			}
+			
+			int end = sourcePos;
+			char c = 0;
+			while(end < sourceLength && (c = source.charAt(end)) != '\n' && c != '\r'){
+				++end;
+			}
+			
+			length = end - sourcePos;
+			copyLine(source, sourcePos, length);
+			
+			sourcePos = end + 1;
+			if(end < sourceLength && c == '\r' && sourcePos < sourceLength && source.charAt(sourcePos) == '\n'){
+				++sourcePos;
+			}
 		}
 		
+		lineStart = 0;
+		lineEnd = length;
+		return true;
+	}
+	
+	/**Method: copyLine(CharSequence, int, int)
+	 * 
+	 * Description:
+	 * 		Copies a line of a character source into the reusable line buffer,
+	 * 		one byte per character. Characters outside of Latin-1 become '?'.
+	 * @param text
+	 * @param start
+	 * @param length
+	 */
+	private void copyLine(CharSequence text, int start, int length){
+		if(lineBuffer.length < length){
+			lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+			lineWrapper = ByteBuffer.wrap(lineBuffer);
+		}
+		for(int i = 0; i < length; ++i){
+			char c = text.charAt(start + i);
+			lineBuffer[i] = c <= 0xFF ? (byte) c : (byte) '?';
+		}
+		line = lineWrapper;
+	}
+	
+	/**Method: lexeme(int, int)
+	 * 
+	 * Description:
+	 * 		Materializes the original text of a lexeme of the current line.
+	 * @param start		Offset of the lexeme, as stored in a TokenBuffer
+	 * @param length	Length of the lexeme
+	 * @return	The lexeme
+	 */
+	public String lexeme(int start, int length){
+		if(line.hasArray()){
+			return new String(line.array(), line.arrayOffset() + start, length, StandardCharsets.ISO_8859_1);
+		}
+		if(lexemeBuffer.length < length){
+			lexemeBuffer = new byte[Math.max(length, lexemeBuffer.length * 2)];
+		}
+		for(int i = 0; i < length; ++i){
+			lexemeBuffer[i] = line.get(start + i);
+		}
+		return new String(lexemeBuffer, 0, length, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**Method: lines(void)
+	 * @return	Number of lines analyzed since the source was set
+	 */
+	public int lines(){
+		return lines;
+	}
+	
+	/**Method: symbols(void)
+	 * @return	Symbol table of the identifiers and numbers analyzed so far
+	 */
+	public SymbolTable symbols(){
+		return symbols;
 	}
 	
-	/**Method: kwSearch(String)
+	/**Method: close(void)
 	 * 
 	 * Description:
-	 * 		Determines whether the inputted lexeme is a keyword or identifier.
-	 * @param lexeme
-	 * @return	Keyword's Token if found, Token.IDENT otherwise.
+	 * 		Closes the source file.
+	 * @throws IOException
 	 */
-	private Token kwSearch(String lexeme){
-		Token token = this.keywordTable.get(lexeme);
-		if(token == null){
-			token = Token.IDENT;
+	public void close() throws IOException{
+		if(file != null){
+			file.close();
 		}
-		return token;
 	}
 }
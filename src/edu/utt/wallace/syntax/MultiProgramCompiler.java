@@ -0,0 +1,539 @@
+package edu.utt.wallace.syntax;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *	Description:
+ *		Compiles files holding many programs back to back, such as
+ *		Programs-In.txt, in one pass. A unit runs from a "program" keyword
+ *		to the next one (or to the end of the file); the parser stops at the
+ *		unit's "end.", so whatever follows it, like the file names of
+ *		Programs-In.txt, is ignored, as is the text before the first unit.
+ *
+ *		The file is memory-mapped one window at a time and scanned for the
+ *		keyword outside comments; a window starts at the first unit not
+ *		compiled yet, and grows when a single unit does not fit in it. Each
+ *		unit is compiled from the mapping, with a fresh symbol table, either
+ *		on the reading thread or on a worker pool as the units are found.
+ *		At most a few units per worker are in flight, and their 3AC is
+ *		written in order, so memory stays bounded whatever the file size.
+ *
+ *		Usage:
+ *			MultiProgramCompiler [-j threads] [-split] [-window megabytes] file...
+ *
+ *		X.txt is compiled to X.tac, the 3AC of every unit one after the
+ *		other, and X.idx, which has one line per unit:
+ *			unit	source offset	3AC offset	3AC length	valid|invalid
+ *		With -split, unit n (from 1) is compiled to X.n.tac instead.
+ *		The syntax errors of an invalid unit are printed in order with the
+ *		unit's number, their lines counted from the start of the unit.
+ *
+ *		A unit given to the parser ends with the next unit's keyword, so
+ *		that a unit missing its "end." gets the same error as when the
+ *		whole file is parsed as one stream.
+ */
+public class MultiProgramCompiler {
+	
+	/**
+	 * The keyword starting a unit
+	 */
+	private static final byte[] PROGRAM = "PROGRAM".getBytes(StandardCharsets.ISO_8859_1);
+	
+	/**
+	 * Default size of the mapped windows
+	 */
+	public static final long DEFAULT_WINDOW = 64L << 20;
+	
+	/**
+	 * Units in flight per worker
+	 */
+	private static final int UNITS_PER_WORKER = 4;
+	
+	/**
+	 * Analyzers of each worker thread
+	 */
+	private static final ThreadLocal<Worker> WORKERS = new ThreadLocal<Worker>() {
+		@Override
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+	
+	/**
+	 * Number of worker threads, 1 to compile on the reading thread
+	 */
+	private int threads;
+	
+	/**
+	 * Whether each unit gets its own output file
+	 */
+	private boolean split;
+	
+	/**
+	 * Initial size of the mapped windows
+	 */
+	private long window = DEFAULT_WINDOW;
+	
+	/**Constructor
+	 * @param threads	Number of worker threads, 1 (or less) to compile
+	 * 					the units on the reading thread
+	 */
+	public MultiProgramCompiler(int threads){
+		this.threads = Math.max(threads, 1);
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int threads = 1;
+		boolean split = false;
+		long window = DEFAULT_WINDOW;
+		int first = 0;
+		for(; first < args.length && args[first].startsWith("-"); ++first){
+			if(args[first].equals("-j") && first + 1 < args.length){
+				threads = Integer.parseInt(args[++first]);
+			}else if(args[first].equals("-split")){
+				split = true;
+			}else if(args[first].equals("-window") && first + 1 < args.length){
+				window = Long.parseLong(args[++first]) << 20;
+			}else{
+				break;
+			}
+		}
+		if(first == args.length){
+			System.err.println("Usage: MultiProgramCompiler [-j threads] [-split] [-window megabytes] file...");
+			System.exit(-1);
+		}
+		
+		MultiProgramCompiler compiler = new MultiProgramCompiler(threads);
+		compiler.setSplit(split);
+		compiler.setWindow(window);
+		boolean failed = false;
+		for(int i = first; i < args.length; ++i){
+			try {
+				BatchCompiler.Result result = compiler.compile(Paths.get(args[i]));
+				System.out.println(args[i] + ": " + summary(result));
+				failed |= result.failed > 0;
+			} catch (IOException e) {
+				System.err.println("[ERROR] " + args[i] + ": " + e.getMessage());
+				failed = true;
+			}
+		}
+		if(failed){
+			System.exit(1);
+		}
+	}
+	
+	/**Method: summary(BatchCompiler.Result)
+	 * @param result	Statistics of the units of a file
+	 * @return	The statistics, worded for units
+	 */
+	private static String summary(BatchCompiler.Result result){
+		return String.format("Compiled %d units (%d failed) in %.1f ms: %.1f units/sec",
+				result.compiled + result.failed, result.failed, result.nanos / 1e6, result.filesPerSecond());
+	}
+	
+	/**Method: setSplit(boolean)
+	 * Description:
+	 * 		Chooses between one output file per unit and one output file
+	 * 		with an index (the default).
+	 * @param split
+	 */
+	public void setSplit(boolean split){
+		this.split = split;
+	}
+	
+	/**Method: setWindow(long)
+	 * Description:
+	 * 		Sets the initial size of the windows in which the file is mapped.
+	 * @param window	Size in bytes, at least 64
+	 */
+	public void setWindow(long window){
+		this.window = Math.min(Math.max(window, 64), Integer.MAX_VALUE);
+	}
+	
+	/**Method: compile(Path)
+	 * Description:
+	 * 		Compiles every unit of a file.
+	 * @param source
+	 * @return	Statistics of the units compiled
+	 * @throws IOException	The file cannot be read, or the output written
+	 */
+	public BatchCompiler.Result compile(Path source) throws IOException{
+		BatchCompiler.Result result = new BatchCompiler.Result();
+		long start = System.nanoTime();
+		Output output = new Output(source, split);
+		ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		ArrayDeque<Future<Unit>> pending = new ArrayDeque<Future<Unit>>();
+		FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long base = 0;	//Start of the window
+			long length = window;
+			boolean inUnit = false;	//Whether the window starts with a unit
+			int index = 0;
+			while(base < size){
+				ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(length, size - base));
+				int limit = map.limit();
+				boolean atEnd = base + limit == size;
+				int unit = inUnit ? 0 : nextProgram(map, 0, limit, atEnd);
+				if(unit < 0){
+					if(atEnd){
+						break;	//No unit at all
+					}
+					length = grow(length);
+					continue;
+				}
+				inUnit = true;
+				while(true){
+					int next = nextProgram(map, unit + PROGRAM.length, limit, atEnd);
+					if(next < 0 && !atEnd){
+						if(unit == 0){
+							length = grow(length);	//The unit does not fit
+						}
+						base += unit;
+						break;
+					}
+					int end = next < 0 ? limit : next + PROGRAM.length;
+					Unit task = new Unit(++index, base + unit, slice(map, unit, end));
+					if(pool == null){
+						output.write(task.call(), result);
+					}else{
+						if(pending.size() >= UNITS_PER_WORKER * threads){
+							output.write(take(pending), result);
+						}
+						pending.add(pool.submit(task));
+					}
+					if(next < 0){
+						base = size;
+						break;
+					}
+					unit = next;
+				}
+			}
+			while(!pending.isEmpty()){
+				output.write(take(pending), result);
+			}
+		} finally {
+			channel.close();
+			if(pool != null){
+				pool.shutdownNow();
+			}
+			output.close();
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+	
+	/**Method: grow(long)
+	 * @param length	Size of a window
+	 * @return	The size of a window twice as large
+	 * @throws IOException	The window would exceed 2GB
+	 */
+	private static long grow(long length) throws IOException{
+		if(length >= Integer.MAX_VALUE){
+			throw new IOException("A program is larger than 2GB");
+		}
+		return Math.min(length * 2, Integer.MAX_VALUE);
+	}
+	
+	/**Method: take(ArrayDeque)
+	 * @param pending	Units in flight, in order
+	 * @return	The first unit, once compiled
+	 * @throws IOException	The compilation failed
+	 */
+	private static Unit take(ArrayDeque<Future<Unit>> pending) throws IOException{
+		try {
+			return pending.poll().get();
+		} catch (ExecutionException e) {
+			throw new IOException("Compilation failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		}
+	}
+	
+	/**Method: slice(ByteBuffer, int, int)
+	 * @param map
+	 * @param start
+	 * @param end
+	 * @return	A buffer of its own over the bytes from start to end
+	 */
+	private static ByteBuffer slice(ByteBuffer map, int start, int end){
+		ByteBuffer slice = map.duplicate();
+		slice.limit(end).position(start);
+		return slice.slice();
+	}
+	
+	/**Method: nextProgram(ByteBuffer, int, int, boolean)
+	 * Description:
+	 * 		Finds the next "program" keyword, tokenizing identifiers and
+	 * 		comments as the lexical analyzer does: an identifier is a letter
+	 * 		followed by letters and digits, and a comment runs from { to } or
+	 * 		to the end of the line.
+	 * @param text
+	 * @param from	Where to start, outside any token or comment
+	 * @param limit	Where to stop
+	 * @param atEnd	Whether the limit is the end of the file, so that an
+	 * 				identifier ending there is whole
+	 * @return	Position of the keyword, -1 if there is none
+	 */
+	static int nextProgram(ByteBuffer text, int from, int limit, boolean atEnd){
+		int i = from;
+		while(i < limit){
+			int c = text.get(i);
+			if(c == '{'){
+				++i;
+				while(i < limit && (c = text.get(i)) != '}' && c != '\n' && c != '\r'){
+					++i;
+				}
+				++i;
+			}else if(letter(c)){
+				int start = i++;
+				while(i < limit && (letter(c = text.get(i)) || c >= '0' && c <= '9')){
+					++i;
+				}
+				if(i == limit && !atEnd){
+					return -1;	//It may go on
+				}
+				if(i - start == PROGRAM.length && keyword(text, start)){
+					return start;
+				}
+			}else{
+				++i;
+			}
+		}
+		return -1;
+	}
+	
+	/**Method: letter(int)
+	 * @param c
+	 * @return	True if the character is a letter
+	 */
+	private static boolean letter(int c){
+		c &= 0xDF;
+		return c >= 'A' && c <= 'Z';
+	}
+	
+	/**Method: keyword(ByteBuffer, int)
+	 * @param text
+	 * @param start
+	 * @return	True if the identifier at start spells "program", in any case
+	 */
+	private static boolean keyword(ByteBuffer text, int start){
+		for(int i = 0; i < PROGRAM.length; ++i){
+			if((text.get(start + i) & 0xDF) != PROGRAM[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 *	Description:
+	 *		A unit to compile, then its 3AC.
+	 */
+	private static class Unit implements Callable<Unit>{
+		
+		/**
+		 * Number of the unit, from 1
+		 */
+		private final int index;
+		
+		/**
+		 * Offset of the unit in the file
+		 */
+		private final long offset;
+		
+		/**
+		 * Source of the unit, null once compiled
+		 */
+		private ByteBuffer source;
+		
+		/**
+		 * 3AC of the unit
+		 */
+		private byte[] tac;
+		
+		/**
+		 * Whether the unit is syntactically correct
+		 */
+		private boolean valid;
+		
+		/**
+		 * Syntax errors of the unit, with their line in the unit
+		 */
+		private List<String> diagnostics;
+		
+		/**Constructor
+		 * @param index
+		 * @param offset
+		 * @param source
+		 */
+		private Unit(int index, long offset, ByteBuffer source){
+			this.index = index;
+			this.offset = offset;
+			this.source = source;
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 * Compiles the unit with the analyzers of the current thread.
+		 */
+		@Override
+		public Unit call(){
+			Worker worker = WORKERS.get();
+			worker.lex.reset(source);
+			worker.lex.symbols().clear();
+			worker.synt.reset();
+			worker.output.reset();
+			valid = worker.synt.analyze();
+			tac = worker.output.toByteArray();
+			List<String> errors = worker.synt.diagnostics();
+			diagnostics = errors.isEmpty() ? Collections.<String>emptyList() : new ArrayList<String>(errors);
+			source = null;
+			return this;
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Analyzers reused by the units compiled on a thread.
+	 */
+	private static class Worker{
+		
+		/**
+		 * Lexical analyzer
+		 */
+		private final LexicalAnalyzer lex = new LexicalAnalyzer(ByteBuffer.allocate(0));
+		
+		/**
+		 * Buffer of the 3AC of a unit
+		 */
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+		
+		/**
+		 * Syntactic analyzer, writing to output
+		 */
+		private final SyntacticAnalyzer synt = new SyntacticAnalyzer(lex, output);
+		
+		/**Constructor
+		 * The analyzer only collects its errors, which the units compiled
+		 * at the same time would otherwise print mixed together.
+		 */
+		private Worker(){
+			synt.setQuiet(true);
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Writer of the 3AC of the units of a file, in order.
+	 */
+	private static class Output{
+		
+		/**
+		 * The source file
+		 */
+		private final Path source;
+		
+		/**
+		 * Whether each unit gets its own output file
+		 */
+		private final boolean split;
+		
+		/**
+		 * The 3AC of every unit, null when split
+		 */
+		private OutputStream tac;
+		
+		/**
+		 * The index, null when split
+		 */
+		private OutputStream index;
+		
+		/**
+		 * Bytes of 3AC written
+		 */
+		private long written;
+		
+		/**Constructor
+		 * @param source	The source file
+		 * @param split		Whether each unit gets its own output file
+		 * @throws IOException
+		 */
+		private Output(Path source, boolean split) throws IOException{
+			this.source = source;
+			this.split = split;
+			if(!split){
+				tac = new BufferedOutputStream(Files.newOutputStream(BatchCompiler.outputFor(source)), TACWriter.DEFAULT_BUFFER_SIZE);
+				index = new BufferedOutputStream(Files.newOutputStream(TACBinaryConverter.withExtension(source, ".idx")));
+			}
+		}
+		
+		/**Method: write(Unit, BatchCompiler.Result)
+		 * Description:
+		 * 		Writes the 3AC of a unit and counts it, printing its syntax
+		 * 		errors if it has any.
+		 * @param unit		A compiled unit
+		 * @param result	Statistics of the file
+		 * @throws IOException
+		 */
+		private void write(Unit unit, BatchCompiler.Result result) throws IOException{
+			if(split){
+				Files.write(TACBinaryConverter.withExtension(source, "." + unit.index + ".tac"), unit.tac);
+			}else{
+				tac.write(unit.tac);
+				String line = unit.index + "\t" + unit.offset + "\t" + written + "\t" + unit.tac.length
+						+ "\t" + (unit.valid ? "valid" : "invalid") + System.lineSeparator();
+				index.write(line.getBytes(StandardCharsets.ISO_8859_1));
+				written += unit.tac.length;
+			}
+			for(String diagnostic : unit.diagnostics){
+				int at = diagnostic.indexOf("[ERROR] ");	//Most messages carry their own tag
+				String message = at < 0 ? diagnostic : diagnostic.substring(0, at) + diagnostic.substring(at + 8);
+				System.err.println("[ERROR] " + source + ": unit " + unit.index + ", " + message);
+			}
+			if(unit.valid){
+				++result.compiled;
+			}else{
+				System.err.println("[ERROR] " + source + ": unit " + unit.index + " is not a valid program.");
+				++result.failed;
+			}
+		}
+		
+		/**Method: close(void)
+		 * @throws IOException
+		 */
+		private void close() throws IOException{
+			if(tac != null){
+				try {
+					tac.close();
+				} finally {
+					index.close();
+				}
+			}
+		}
+	}
+}
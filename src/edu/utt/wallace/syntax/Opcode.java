@@ -0,0 +1,100 @@
+package edu.utt.wallace.syntax;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *	Description:
+ *		Operations of the 3AC, with the layout of their operands in a
+ *		QuadBuffer:
+ *			BINARY	op, arg1, arg2, result		(ADD, SUB, MUL, DVD, DIV, MOD, EXP)
+ *			UNARY	op, arg1, result			(MOV, PLS, NEG)
+ *			TEST	TST, arg1, arg2, comparison, result (label to jump to)
+ *			JUMP	JMP, result (label)
+ *			LABEL	result (label), on its own
+ */
+public enum Opcode {
+	MOV(Opcode.UNARY),		//Move
+	ADD(Opcode.BINARY),		//Add
+	SUB(Opcode.BINARY),		//Subtract
+	MUL(Opcode.BINARY),		//Multiply
+	DVD(Opcode.BINARY),		//Divide
+	DIV(Opcode.BINARY),		//Integer division
+	MOD(Opcode.BINARY),		//Modulus
+	EXP(Opcode.BINARY),		//Exponential
+	PLS(Opcode.UNARY),		//Unary plus
+	NEG(Opcode.UNARY),		//Unary minus
+	TST(Opcode.TEST),		//Compare and jump if true
+	JMP(Opcode.JUMP),		//Jump
+	LBL(Opcode.LABEL)		//Label
+	;
+	
+	/**
+	 * Form of an operation with two operands and a result
+	 */
+	public static final int BINARY = 0;
+	
+	/**
+	 * Form of an operation with one operand and a result
+	 */
+	public static final int UNARY = 1;
+	
+	/**
+	 * Form of TST
+	 */
+	public static final int TEST = 2;
+	
+	/**
+	 * Form of JMP
+	 */
+	public static final int JUMP = 3;
+	
+	/**
+	 * Form of LBL
+	 */
+	public static final int LABEL = 4;
+	
+	/**
+	 * Opcode values, indexed by ordinal.
+	 */
+	private static final Opcode[] VALUES = values();
+	
+	/**
+	 * Layout of the operands
+	 */
+	private final int form;
+	
+	/**
+	 * Mnemonic as ASCII bytes
+	 */
+	private final byte[] mnemonic;
+	
+	/**Constructor
+	 * @param form	Layout of the operands
+	 */
+	private Opcode(int form){
+		this.form = form;
+		this.mnemonic = name().getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	/**Method: form(void)
+	 * @return	Layout of the operands: BINARY, UNARY, TEST, JUMP or LABEL
+	 */
+	public int form(){
+		return form;
+	}
+	
+	/**Method: mnemonic(void)
+	 * @return	Mnemonic as ASCII bytes. Must not be modified.
+	 */
+	byte[] mnemonic(){
+		return mnemonic;
+	}
+	
+	/**Method: valueOf(int)
+	 * @param ordinal
+	 * @return	The opcode of the given ordinal
+	 */
+	public static Opcode valueOf(int ordinal){
+		return VALUES[ordinal];
+	}
+}
@@ -0,0 +1,91 @@
+package edu.utt.wallace.syntax;
+
+/**
+ *	Description:
+ *		Encodes the operands of 3AC instructions as plain ints so that the
+ *		parser can pass them around without creating Strings. The kind of
+ *		the operand is kept in the high bits and its index in the rest:
+ *		the ID of a symbol (a variable or a number literal) in the lexical
+ *		analyzer's SymbolTable, the index of a computed constant in its
+ *		ConstantPool, or the number of a temp or a label. An index takes
+ *		at most 28 bits; make(int, int) rejects larger ones rather than
+ *		let them spill into the kind.
+ */
+public final class Operand {
+	
+	/**
+	 * Missing operand, such as the result of an expression that failed to parse
+	 */
+	public static final int NONE = -1;
+	
+	/**
+	 * Kind of a variable
+	 */
+	public static final int VAR = 0;
+	
+	/**
+	 * Kind of a number literal
+	 */
+	public static final int NUM = 1;
+	
+	/**
+	 * Kind of a temp
+	 */
+	public static final int TEMP = 2;
+	
+	/**
+	 * Kind of a label
+	 */
+	public static final int LABEL = 3;
+	
+	/**
+	 * Kind of a constant computed by the compiler, indexing the SymbolTable's ConstantPool
+	 */
+	public static final int CONST = 4;
+	
+	/**
+	 * Number of low bits holding the index
+	 */
+	private static final int KIND_SHIFT = 28;
+	
+	/**
+	 * Mask of the index
+	 */
+	private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+	
+	/**Constructor
+	 * Not instantiable.
+	 */
+	private Operand(){
+	}
+	
+	/**Method: make(int, int)
+	 * @param kind
+	 * @param index
+	 * @return	The operand of the given kind and index
+	 * @throws IllegalStateException	The index does not fit in the
+	 * 			KIND_SHIFT low bits, as with 2^28 symbols, temps or labels
+	 */
+	public static int make(int kind, int index){
+		if(index >>> KIND_SHIFT != 0){
+			throw new IllegalStateException("Operand index out of range for kind " + kind + ": " + index);
+		}
+		return kind << KIND_SHIFT | index;
+	}
+	
+	/**Method: kind(int)
+	 * @param operand
+	 * @return	Kind of an operand
+	 */
+	public static int kind(int operand){
+		return operand >>> KIND_SHIFT;
+	}
+	
+	/**Method: index(int)
+	 * @param operand
+	 * @return	Symbol ID, temp number or label number of an operand
+	 */
+	public static int index(int operand){
+		return operand & INDEX_MASK;
+	}
+}
@@ -0,0 +1,367 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Peephole optimizer streaming over the 3AC, with a window of a few
+ *		quads that is carried over from one chunk to the next, so output
+ *		still flows statement by statement. Each rule can be turned on or
+ *		off:
+ *			RETARGET	op ..., Tn  followed by  MOV, Tn, x  becomes  op ..., x
+ *			COPIES		PLS, a, Tn is dropped and Tn read as a, unless a
+ *						is (a copy of) a temp; after MOV, a, x the
+ *						following reads of x read a, as long as neither is
+ *						written again
+ *			JUMPS		JMP, Lk is dropped when Lk is among the labels that
+ *						immediately follow it
+ *
+ *		Copies are forgotten at every label, since another path may reach
+ *		it. A PLS reading a temp is kept: the temp may be written again,
+ *		possibly reused by TempAllocation, while Tn is still to be read,
+ *		and Tn would then be read without ever having been written. Like
+ *		the other passes, the peephole relies on the temps being dead once
+ *		the MOV that ends their statement has read them.
+ */
+public class Peephole implements TACSink {
+	
+	/**
+	 * Rule writing the last operation of an assignment straight to the variable
+	 */
+	public static final int RETARGET = 1;
+	
+	/**
+	 * Rule dropping PLS and propagating copies
+	 */
+	public static final int COPIES = 2;
+	
+	/**
+	 * Rule dropping the jumps to a label that immediately follows
+	 */
+	public static final int JUMPS = 4;
+	
+	/**
+	 * Every rule
+	 */
+	public static final int ALL = RETARGET | COPIES | JUMPS;
+	
+	/**
+	 * Sink of the optimized 3AC
+	 */
+	private final TACSink next;
+	
+	/**
+	 * Rules in use
+	 */
+	private final int rules;
+	
+	/**
+	 * Optimized chunk
+	 */
+	private final QuadBuffer out = new QuadBuffer();
+	
+	/**
+	 * Quads held back: an operation whose temp result may be retargeted, or
+	 * a jump followed by the labels seen since
+	 */
+	private final QuadBuffer window = new QuadBuffer(16);
+	
+	/**
+	 * Copies held by temps
+	 */
+	private final Copies temps = new Copies();
+	
+	/**
+	 * Copies held by variables
+	 */
+	private final Copies variables = new Copies();
+	
+	/**
+	 * Current stretch between labels, stamping the copies
+	 */
+	private int generation = 1;
+	
+	/**
+	 * Number of quads removed so far
+	 */
+	private long removed;
+	
+	/**Constructor
+	 * Applies every rule.
+	 * @param next	Sink of the optimized 3AC
+	 */
+	public Peephole(TACSink next){
+		this(next, ALL);
+	}
+	
+	/**Constructor
+	 * @param next	Sink of the optimized 3AC
+	 * @param rules	Rules to apply: RETARGET, COPIES and JUMPS or'ed together
+	 */
+	public Peephole(TACSink next, int rules){
+		this.next = next;
+		this.rules = rules;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Slides the window over the chunk and passes on the quads that leave it.
+	 */
+	@Override
+	public void accept(QuadBuffer quads) throws IOException{
+		int size = quads.size();
+		for(int i = 0; i < size; ++i){
+			Opcode opcode = quads.opcode(i);
+			switch (opcode.form()){
+			case Opcode.LABEL:
+				label(quads.result(i));
+				break;
+			case Opcode.JUMP:
+				release();
+				if((rules & JUMPS) != 0){
+					window.jump(quads.result(i));
+				}else{
+					out.jump(quads.result(i));
+				}
+				break;
+			case Opcode.TEST:
+				release();
+				out.test(read(quads.arg1(i)), read(quads.arg2(i)), quads.comparison(i), quads.result(i));
+				break;
+			default:
+				operation(opcode, read(quads.arg1(i)), read(quads.arg2(i)), quads.result(i));
+				break;
+			}
+		}
+		if(out.size() > 0){
+			next.accept(out);
+			out.clear();
+		}
+	}
+	
+	/**Method: label(int)
+	 * Description:
+	 * 		Handles a LBL, dropping the jump waiting in the window if it
+	 * 		targets this label.
+	 * @param label
+	 */
+	private void label(int label){
+		++generation;
+		if(window.size() > 0 && window.opcode(0) == Opcode.JMP){
+			if(window.result(0) == label){
+				for(int i = 1; i < window.size(); ++i){
+					out.label(window.result(i));
+				}
+				out.label(label);
+				window.clear();
+				++removed;
+			}else{
+				window.label(label);
+			}
+			return;
+		}
+		release();
+		out.label(label);
+	}
+	
+	/**Method: operation(Opcode, int, int, int)
+	 * Description:
+	 * 		Handles an arithmetic quad or a MOV whose operands were already
+	 * 		read through the copies.
+	 * @param opcode
+	 * @param arg1
+	 * @param arg2
+	 * @param result
+	 */
+	private void operation(Opcode opcode, int arg1, int arg2, int result){
+		if(opcode == Opcode.MOV && window.size() > 0 && window.opcode(0) != Opcode.JMP
+				&& window.result(0) == arg1){
+			//op ..., Tn  MOV, Tn, x
+			Opcode held = window.opcode(0);
+			written(result);
+			out.add(held, window.arg1(0), window.arg2(0), result);
+			window.clear();
+			++removed;
+			return;
+		}
+		if(opcode == Opcode.MOV && arg1 == result && (rules & COPIES) != 0){
+			++removed;	//MOV, x, x
+			return;
+		}
+		release();
+		
+		written(result);
+		if(opcode == Opcode.PLS && (rules & COPIES) != 0 && Operand.kind(result) == Operand.TEMP
+				&& Operand.kind(arg1) != Operand.TEMP){
+			copy(result, arg1);
+			++removed;
+			return;
+		}
+		if(opcode == Opcode.MOV && (rules & COPIES) != 0){
+			copy(result, arg1);
+		}
+		if(opcode != Opcode.MOV && (rules & RETARGET) != 0 && Operand.kind(result) == Operand.TEMP){
+			window.add(opcode, arg1, arg2, result);
+		}else{
+			out.add(opcode, arg1, arg2, result);
+		}
+	}
+	
+	/**Method: release(void)
+	 * Description:
+	 * 		Passes on the quads held in the window.
+	 */
+	private void release(){
+		if(window.size() > 0){
+			out.addAll(window);
+			window.clear();
+		}
+	}
+	
+	/**Method: read(int)
+	 * @param operand	Operand read
+	 * @return	The operand it is a copy of, or itself
+	 */
+	private int read(int operand){
+		if(operand == Operand.NONE){
+			return operand;
+		}
+		Copies copies = copies(operand);
+		if(copies == null){
+			return operand;
+		}
+		int index = Operand.index(operand);
+		if(index >= copies.stamps.length || copies.stamps[index] != generation){
+			return operand;
+		}
+		int source = copies.sources[index];
+		Copies sourceCopies = copies(source);
+		if(sourceCopies != null && sourceCopies.writes(Operand.index(source)) != copies.versions[index]){
+			return operand;	//The source was written since
+		}
+		return source;
+	}
+	
+	/**Method: written(int)
+	 * Description:
+	 * 		Records a write to an operand, ending the copies it held or was the source of.
+	 * @param operand
+	 */
+	private void written(int operand){
+		Copies copies = copies(operand);
+		if(copies != null){
+			int index = Operand.index(operand);
+			copies.ensure(index);
+			++copies.writes[index];
+			copies.stamps[index] = 0;
+		}
+	}
+	
+	/**Method: copy(int, int)
+	 * Description:
+	 * 		Records that an operand just written holds a copy of another.
+	 * @param target
+	 * @param source
+	 */
+	private void copy(int target, int source){
+		Copies copies = copies(target);
+		if(copies == null || source == Operand.NONE || source == target){
+			return;
+		}
+		int index = Operand.index(target);
+		copies.ensure(index);
+		copies.sources[index] = source;
+		copies.stamps[index] = generation;
+		Copies sourceCopies = copies(source);
+		copies.versions[index] = sourceCopies == null ? 0 : sourceCopies.writes(Operand.index(source));
+	}
+	
+	/**Method: copies(int)
+	 * @param operand
+	 * @return	The copies of the operand's kind, null if it is never written
+	 */
+	private Copies copies(int operand){
+		switch (Operand.kind(operand)){
+		case Operand.TEMP:
+			return temps;
+		case Operand.VAR:
+			return variables;
+		default:
+			return null;
+		}
+	}
+	
+	/**Method: removed(void)
+	 * @return	Number of quads removed so far
+	 */
+	public long removed(){
+		return removed;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Passes on the window, then flushes the next sink.
+	 */
+	@Override
+	public void flush() throws IOException{
+		release();
+		if(out.size() > 0){
+			next.accept(out);
+			out.clear();
+		}
+		next.flush();
+	}
+	
+	/**
+	 *	Description:
+	 *		Copies held by the operands of one kind, indexed by temp number
+	 *		or symbol ID, with the number of writes to each operand so that
+	 *		a copy is dropped when its source is written.
+	 */
+	private static class Copies {
+		
+		/**
+		 * Operand each one is a copy of
+		 */
+		int[] sources = new int[16];
+		
+		/**
+		 * Generation of the copy, 0 for none
+		 */
+		int[] stamps = new int[16];
+		
+		/**
+		 * Writes to the source when the copy was made
+		 */
+		int[] versions = new int[16];
+		
+		/**
+		 * Number of writes to each operand
+		 */
+		int[] writes = new int[16];
+		
+		/**Method: writes(int)
+		 * @param index
+		 * @return	Number of writes to an operand
+		 */
+		int writes(int index){
+			return index < writes.length ? writes[index] : 0;
+		}
+		
+		/**Method: ensure(int)
+		 * @param index	Index the arrays must hold
+		 */
+		void ensure(int index){
+			if(index >= stamps.length){
+				int capacity = Math.max(index + 1, stamps.length * 2);
+				sources = Arrays.copyOf(sources, capacity);
+				stamps = Arrays.copyOf(stamps, capacity);
+				versions = Arrays.copyOf(versions, capacity);
+				writes = Arrays.copyOf(writes, capacity);
+			}
+		}
+	}
+}
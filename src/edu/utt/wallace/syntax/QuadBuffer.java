@@ -0,0 +1,256 @@
+package edu.utt.wallace.syntax;
+
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		In-memory 3AC: a sequence of instructions stored column by column in
+ *		parallel int arrays. Every instruction has an opcode and three
+ *		operand slots (arg1, arg2, result) holding operands encoded by
+ *		Operand; slots the opcode does not use hold Operand.NONE. The
+ *		comparison code of a TST shares the opcode's column.
+ *
+ *		Variables and number literals are symbol IDs of the lexical
+ *		analyzer's SymbolTable, so a literal keeps its spelling (007 stays
+ *		007); constants computed by the compiler index its ConstantPool;
+ *		temps and labels are numbers.
+ *
+ *		A QuadBuffer is also a TACSink collecting every chunk it is given,
+ *		so a whole program can be compiled into memory.
+ */
+public class QuadBuffer implements TACSink {
+	
+	/**
+	 * Number of bits of the opcode in the opcode column
+	 */
+	private static final int OPCODE_BITS = 8;
+	
+	/**
+	 * Mask of the opcode in the opcode column
+	 */
+	private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+	
+	/**
+	 * Opcode ordinals, plus the comparison code of TSTs in the higher bits
+	 */
+	private int[] opcodes;
+	
+	/**
+	 * First operands
+	 */
+	private int[] args1;
+	
+	/**
+	 * Second operands
+	 */
+	private int[] args2;
+	
+	/**
+	 * Results, or the label of TST, JMP and LBL
+	 */
+	private int[] results;
+	
+	/**
+	 * Number of instructions
+	 */
+	private int size;
+	
+	/**Constructor
+	 */
+	public QuadBuffer(){
+		this(256);
+	}
+	
+	/**Constructor
+	 * @param capacity	Initial number of instructions
+	 */
+	public QuadBuffer(int capacity){
+		capacity = Math.max(capacity, 16);
+		opcodes = new int[capacity];
+		args1 = new int[capacity];
+		args2 = new int[capacity];
+		results = new int[capacity];
+	}
+	
+	/**Method: add(Opcode, int, int, int)
+	 * Description:
+	 * 		Appends a BINARY instruction, or a UNARY one when arg2 is Operand.NONE.
+	 * @param opcode
+	 * @param arg1
+	 * @param arg2
+	 * @param result
+	 */
+	public void add(Opcode opcode, int arg1, int arg2, int result){
+		add(opcode.ordinal(), arg1, arg2, result);
+	}
+	
+	/**Method: add(Opcode, int, int)
+	 * Description:
+	 * 		Appends a UNARY instruction.
+	 * @param opcode
+	 * @param arg
+	 * @param result
+	 */
+	public void add(Opcode opcode, int arg, int result){
+		add(opcode.ordinal(), arg, Operand.NONE, result);
+	}
+	
+	/**Method: test(int, int, int, int)
+	 * Description:
+	 * 		Appends a TST instruction.
+	 * @param arg1
+	 * @param arg2
+	 * @param comparison	Comparison code, 0 to 5
+	 * @param label
+	 */
+	public void test(int arg1, int arg2, int comparison, int label){
+		add(Opcode.TST.ordinal() | comparison << OPCODE_BITS, arg1, arg2, label);
+	}
+	
+	/**Method: jump(int)
+	 * Description:
+	 * 		Appends a JMP instruction.
+	 * @param label
+	 */
+	public void jump(int label){
+		add(Opcode.JMP.ordinal(), Operand.NONE, Operand.NONE, label);
+	}
+	
+	/**Method: label(int)
+	 * Description:
+	 * 		Appends a LBL instruction.
+	 * @param label
+	 */
+	public void label(int label){
+		add(Opcode.LBL.ordinal(), Operand.NONE, Operand.NONE, label);
+	}
+	
+	/**Method: add(QuadBuffer, int)
+	 * Description:
+	 * 		Appends a copy of an instruction of another buffer.
+	 * @param quads
+	 * @param i	Index of the instruction in quads
+	 */
+	public void add(QuadBuffer quads, int i){
+		add(quads.opcodes[i], quads.args1[i], quads.args2[i], quads.results[i]);
+	}
+	
+	/**Method: add(int, int, int, int)
+	 * @param opcode	Opcode column value
+	 * @param arg1
+	 * @param arg2
+	 * @param result
+	 */
+	private void add(int opcode, int arg1, int arg2, int result){
+		if(size == opcodes.length){
+			grow(size + 1);
+		}
+		opcodes[size] = opcode;
+		args1[size] = arg1;
+		args2[size] = arg2;
+		results[size] = result;
+		++size;
+	}
+	
+	/**Method: addAll(QuadBuffer)
+	 * Description:
+	 * 		Appends every instruction of another buffer.
+	 * @param quads
+	 */
+	public void addAll(QuadBuffer quads){
+		int count = quads.size;
+		if(size + count > opcodes.length){
+			grow(size + count);
+		}
+		System.arraycopy(quads.opcodes, 0, opcodes, size, count);
+		System.arraycopy(quads.args1, 0, args1, size, count);
+		System.arraycopy(quads.args2, 0, args2, size, count);
+		System.arraycopy(quads.results, 0, results, size, count);
+		size += count;
+	}
+	
+	/**Method: grow(int)
+	 * @param capacity	Minimum number of instructions to hold
+	 */
+	private void grow(int capacity){
+		capacity = Math.max(capacity, opcodes.length * 2);
+		opcodes = Arrays.copyOf(opcodes, capacity);
+		args1 = Arrays.copyOf(args1, capacity);
+		args2 = Arrays.copyOf(args2, capacity);
+		results = Arrays.copyOf(results, capacity);
+	}
+	
+	/**Method: clear(void)
+	 * Description:
+	 * 		Removes every instruction, keeping the allocated storage.
+	 */
+	public void clear(){
+		size = 0;
+	}
+	
+	/**Method: size(void)
+	 * @return	Number of instructions
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**Method: opcode(int)
+	 * @param i	Index of an instruction
+	 * @return	Its opcode
+	 */
+	public Opcode opcode(int i){
+		return Opcode.valueOf(opcodes[i] & OPCODE_MASK);
+	}
+	
+	/**Method: comparison(int)
+	 * @param i	Index of a TST instruction
+	 * @return	Its comparison code, 0 to 5
+	 */
+	public int comparison(int i){
+		return opcodes[i] >>> OPCODE_BITS;
+	}
+	
+	/**Method: arg1(int)
+	 * @param i	Index of an instruction
+	 * @return	Its first operand
+	 */
+	public int arg1(int i){
+		return args1[i];
+	}
+	
+	/**Method: arg2(int)
+	 * @param i	Index of an instruction
+	 * @return	Its second operand, Operand.NONE if it has none
+	 */
+	public int arg2(int i){
+		return args2[i];
+	}
+	
+	/**Method: result(int)
+	 * @param i	Index of an instruction
+	 * @return	Its result, or its label for TST, JMP and LBL
+	 */
+	public int result(int i){
+		return results[i];
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Collects the chunk.
+	 */
+	@Override
+	public void accept(QuadBuffer quads){
+		addAll(quads);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Nothing to do: the instructions stay in memory.
+	 */
+	@Override
+	public void flush(){
+	}
+}
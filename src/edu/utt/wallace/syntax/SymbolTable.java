@@ -0,0 +1,348 @@
+package edu.utt.wallace.syntax;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Interns the identifiers and number literals of the source, giving
+ *		each distinct spelling a dense int ID. A lexeme is hashed and
+ *		compared straight from the lexical analyzer's line buffer, so a
+ *		spelling that was seen before costs no allocation; its bytes and
+ *		String are created once, when it is first interned.
+ *
+ *		Spellings are hashed case-insensitively but compared exactly, so
+ *		x and X get different IDs and each prints the way it was written.
+ *
+ *		The table also holds the pool of the constants computed by the
+ *		compiler, and gives the value of number literal and constant operands.
+ *
+ *		Keywords are not interned: keyword(ByteBuffer, int, int) recognizes
+ *		them with a perfect hash over their length and first and last
+ *		letters, followed by a single comparison.
+ */
+public class SymbolTable {
+	
+	/**
+	 * Tokens of the keywords, indexed by perfect hash. Null slots are empty.
+	 */
+	private static final Token[] keywordTokens;
+	
+	/**
+	 * Upper-case spellings of the keywords, indexed like keywordTokens.
+	 */
+	private static final byte[][] keywordBytes;
+	
+	/**
+	 * Multiplier of the keyword hash, chosen so that no two keywords collide.
+	 */
+	private static final int keywordSeed;
+	
+	/**
+	 * Mask of the keyword hash: the size of keywordTokens minus one.
+	 */
+	private static final int keywordMask;
+	
+	static {
+		int keywords = 0;
+		for(Token token : Token.values()){
+			if(token.keyword() != null){
+				++keywords;
+			}
+		}
+		
+		//Smallest power-of-two table and first seed without collisions
+		int size = Integer.highestOneBit(Math.max(keywords, 1)) << 1;
+		int seed = 0;
+		byte[][] spellings = null;
+		Token[] slots = null;
+		search:
+		while(true){
+			for(seed = 1; seed < 1 << 12; ++seed){
+				spellings = new byte[size][];
+				slots = new Token[size];
+				boolean collision = false;
+				for(Token token : Token.values()){
+					if(token.keyword() == null){
+						continue;
+					}
+					byte[] spelling = token.keyword().getBytes(StandardCharsets.US_ASCII);
+					int slot = keywordHash(spelling[0], spelling[spelling.length - 1], spelling.length, seed) & (size - 1);
+					if(slots[slot] != null){
+						collision = true;
+						break;
+					}
+					slots[slot] = token;
+					spellings[slot] = spelling;
+				}
+				if(!collision){
+					break search;
+				}
+			}
+			size <<= 1;
+		}
+		keywordTokens = slots;
+		keywordBytes = spellings;
+		keywordSeed = seed;
+		keywordMask = size - 1;
+	}
+	
+	/**
+	 * Open-addressed hash table of symbol IDs plus one; 0 marks an empty slot.
+	 */
+	private int[] slots = new int[1024];
+	
+	/**
+	 * Case-insensitive hash of every symbol
+	 */
+	private int[] hashes = new int[256];
+	
+	/**
+	 * Spelling of every symbol, as bytes. Volatile (like names) so that a
+	 * parser running behind a TokenPipeline sees a complete copy when the
+	 * lexer thread grows the array.
+	 */
+	private volatile byte[][] spellings = new byte[256][];
+	
+	/**
+	 * Spelling of every symbol, as a String. Volatile so that a parser
+	 * running behind a TokenPipeline sees a complete copy when the lexer
+	 * thread grows the array.
+	 */
+	private volatile String[] names = new String[256];
+	
+	/**
+	 * Number of symbols
+	 */
+	private int size;
+	
+	/**
+	 * Constants computed by the compiler
+	 */
+	private final ConstantPool constants = new ConstantPool();
+	
+	/**Method: keywordHash(int, int, int, int)
+	 * Description:
+	 * 		Hashes a keyword from its length and its first and last
+	 * 		characters, ignoring case.
+	 * @param first
+	 * @param last
+	 * @param length
+	 * @param seed
+	 * @return	The unmasked hash
+	 */
+	private static int keywordHash(int first, int last, int length, int seed){
+		int h = ((first & 0xDF) << 16 | (last & 0xDF) << 8 | length) * seed;
+		return h ^ h >>> 15;
+	}
+	
+	/**Method: keyword(ByteBuffer, int, int)
+	 * Description:
+	 * 		Determines whether a lexeme is a keyword. The comparison is
+	 * 		case-insensitive and performed in place.
+	 * @param line		Buffer holding the lexeme
+	 * @param start		Position of the lexeme's first character
+	 * @param length	Length of the lexeme
+	 * @return	The keyword's token if found, null otherwise
+	 */
+	public static Token keyword(ByteBuffer line, int start, int length){
+		int slot = keywordHash(line.get(start), line.get(start + length - 1), length, keywordSeed) & keywordMask;
+		byte[] keyword = keywordBytes[slot];
+		if(keyword == null || keyword.length != length){
+			return null;
+		}
+		for(int i = 0; i < length; ++i){
+			if((line.get(start + i) & 0xDF) != keyword[i]){
+				return null;
+			}
+		}
+		return keywordTokens[slot];
+	}
+	
+	/**Method: intern(ByteBuffer, int, int)
+	 * Description:
+	 * 		Looks up a spelling, adding it if it was never seen.
+	 * @param line		Buffer holding the spelling
+	 * @param start		Position of the spelling's first character
+	 * @param length	Length of the spelling
+	 * @return	ID of the symbol
+	 */
+	public int intern(ByteBuffer line, int start, int length){
+		int h = 0;
+		for(int i = 0; i < length; ++i){
+			h = 31 * h + (line.get(start + i) | 0x20);
+		}
+		h ^= h >>> 16;
+		
+		int mask = slots.length - 1;
+		int slot = h & mask;
+		int entry;
+		while((entry = slots[slot]) != 0){
+			int id = entry - 1;
+			if(hashes[id] == h && matches(id, line, start, length)){
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		int id = add(h, line, start, length);
+		slots[slot] = id + 1;
+		if(size * 2 > slots.length){
+			rehash();
+		}
+		return id;
+	}
+	
+	/**Method: matches(int, ByteBuffer, int, int)
+	 * @param id
+	 * @param line
+	 * @param start
+	 * @param length
+	 * @return	True if the symbol is spelled exactly like the given text
+	 */
+	private boolean matches(int id, ByteBuffer line, int start, int length){
+		byte[] spelling = spellings[id];
+		if(spelling.length != length){
+			return false;
+		}
+		for(int i = 0; i < length; ++i){
+			if(spelling[i] != line.get(start + i)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**Method: add(int, ByteBuffer, int, int)
+	 * Description:
+	 * 		Stores a new symbol's spelling.
+	 * @param h
+	 * @param line
+	 * @param start
+	 * @param length
+	 * @return	ID of the new symbol
+	 */
+	private int add(int h, ByteBuffer line, int start, int length){
+		if(size == hashes.length){
+			hashes = Arrays.copyOf(hashes, size * 2);
+			spellings = Arrays.copyOf(spellings, size * 2);
+			names = Arrays.copyOf(names, size * 2);
+		}
+		byte[] spelling = new byte[length];
+		for(int i = 0; i < length; ++i){
+			spelling[i] = line.get(start + i);
+		}
+		
+		int id = size++;
+		hashes[id] = h;
+		spellings[id] = spelling;
+		names[id] = new String(spelling, StandardCharsets.ISO_8859_1);
+		return id;
+	}
+	
+	/**Method: rehash(void)
+	 * Description:
+	 * 		Doubles the hash table.
+	 */
+	private void rehash(){
+		int[] table = new int[slots.length * 2];
+		int mask = table.length - 1;
+		for(int id = 0; id < size; ++id){
+			int slot = hashes[id] & mask;
+			while(table[slot] != 0){
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
+		slots = table;
+	}
+	
+	/**Method: name(int)
+	 * @param id
+	 * @return	Spelling of a symbol
+	 */
+	public String name(int id){
+		return names[id];
+	}
+	
+	/**Method: spelling(int)
+	 * @param id
+	 * @return	Spelling of a symbol, as bytes. Must not be modified.
+	 */
+	public byte[] spelling(int id){
+		return spellings[id];
+	}
+	
+	/**Method: constants(void)
+	 * @return	Pool of the constants computed by the compiler, such as folded expressions
+	 */
+	public ConstantPool constants(){
+		return constants;
+	}
+	
+	/**Method: hasValue(int)
+	 * @param operand
+	 * @return	True if the operand is a number literal or a computed constant
+	 * 			whose value fits in a long
+	 */
+	public boolean hasValue(int operand){
+		if(operand == Operand.NONE){
+			return false;
+		}
+		switch (Operand.kind(operand)){
+		case Operand.NUM:
+			return parse(spelling(Operand.index(operand))) >= 0;
+		case Operand.CONST:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**Method: value(int)
+	 * @param operand	An operand for which hasValue(int) is true
+	 * @return	The value of the number literal or computed constant
+	 */
+	public long value(int operand){
+		if(Operand.kind(operand) == Operand.CONST){
+			return constants.value(Operand.index(operand));
+		}
+		return parse(spelling(Operand.index(operand)));
+	}
+	
+	/**Method: parse(byte[])
+	 * @param digits	Spelling of a number literal
+	 * @return	Its value, -1 if it does not fit in a long
+	 */
+	private static long parse(byte[] digits){
+		long value = 0;
+		for(int i = 0; i < digits.length; ++i){
+			int digit = digits[i] - '0';
+			if(value > (Long.MAX_VALUE - digit) / 10){
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+	
+	/**Method: size(void)
+	 * @return	Number of symbols
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**Method: clear(void)
+	 * Description:
+	 * 		Forgets every symbol and constant, keeping the allocated storage.
+	 */
+	public void clear(){
+		Arrays.fill(slots, 0);
+		Arrays.fill(spellings, 0, size, null);
+		Arrays.fill(names, 0, size, null);
+		size = 0;
+		constants.clear();
+	}
+}
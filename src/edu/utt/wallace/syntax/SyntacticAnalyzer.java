@@ -1,26 +1,215 @@
 package edu.utt.wallace.syntax;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.List;
 
-public class SyntacticAnalyzer {
+import jdk.jfr.FlightRecorder;
+
+public class SyntacticAnalyzer implements Closeable {
+	
+	/**
+	 * Precedence of + and -
+	 */
+	private static final int PREC_TERMS = 1;
+	
+	/**
+	 * Precedence of *, /, div and mod
+	 */
+	private static final int PREC_FACTORS = 2;
+	
+	/**
+	 * Precedence of ^
+	 */
+	private static final int PREC_POWER = 3;
+	
+	/**
+	 * Largest magnitude up to which every integer is exact as a double (2^53)
+	 */
+	static final long MAX_EXACT = 1L << 53;
+	
+	/**
+	 * Frame of an operand being parsed by precedence climbing
+	 */
+	private static final int CLIMB = 0;
+	
+	/**
+	 * Frame of an open parenthesis
+	 */
+	private static final int PAREN = 1;
+	
+	/**
+	 * Frame of a unary operator waiting for its Value
+	 */
+	private static final int UNARY = 2;
+	
+	/**
+	 * Frame of a unary operator whose Value was invalid, waiting for the Value parsed in its place
+	 */
+	private static final int UNARY_RETRY = 3;
+	
+	/**
+	 * Frame of an if statement waiting for its statement
+	 */
+	private static final int IF_STMT = 4;
+	
+	/**
+	 * Frame of a while statement waiting for its statement
+	 */
+	private static final int WHILE_STMT = 5;
+	
+	/**
+	 * Expression state: parse a Base
+	 */
+	private static final int BASE = 0;
+	
+	/**
+	 * Expression state: parse a Value
+	 */
+	private static final int VALUE = 1;
+	
+	/**
+	 * Expression state: a Value was parsed
+	 */
+	private static final int VALUE_DONE = 2;
+	
+	/**
+	 * Expression state: a binary operator was applied
+	 */
+	private static final int OPERATOR = 3;
+	
+	/**
+	 * Expression state: the top frame's operand is complete
+	 */
+	private static final int CLIMB_DONE = 4;
+	
+	/**
+	 * Token values, indexed by ordinal.
+	 */
+	private static final Token[] TOKENS = Token.values();
+	
+	/**
+	 * Default number of errors after which an analysis gives up
+	 */
+	public static final int DEFAULT_ERROR_LIMIT = 20;
 	
 	private LexicalAnalyzer lex;
 	
 	/**
-	 * Queue of Token-Lexeme pairs. 
+	 * Where the tokens come from: the lexical analyzer itself, or the
+	 * pipeline running it on another thread during a pipelined analysis.
+	 */
+	private TokenSource source;
+	
+	/**
+	 * Whether analyze() runs the lexical analyzer on its own thread.
+	 */
+	private boolean pipelined;
+	
+	/**
+	 * Whether constant subexpressions are computed at compile time.
+	 */
+	private boolean folding;
+	
+	/**
+	 * Tokens of the current line, read through a cursor. 
+	 */
+	private TokenBuffer tokens;
+	
+	/**
+	 * Instructions of the current top-level statement.
+	 */
+	private QuadBuffer quads = new QuadBuffer();
+	
+	/**
+	 * Consumer of the 3AC, handed one chunk of quads per top-level statement.
+	 */
+	private TACSink out;
+	
+	/**
+	 * Output closed along with this analyzer, null if the sink belongs to the caller.
+	 */
+	private Closeable output;
+	
+	/**
+	 * First error raised by the writer during the current analysis, if any.
+	 */
+	private IOException writeError;
+	
+	/**
+	 * Temp and label numbering for this compilation.
+	 */
+	private Memory memory;
+	
+	/**
+	 * Explicit parse stack of the expressions and nested statements.
+	 */
+	private Frames frames = new Frames();
+	
+	/**
+	 * Whether syntax errors are only counted, not printed
+	 */
+	private boolean quiet;
+	
+	/**
+	 * Number of syntax errors reported by the current analysis
+	 */
+	private int errors;
+	
+	/**
+	 * Number of top-level statements parsed by the current analysis
+	 */
+	private int statements;
+	
+	/**
+	 * Errors reported by the current analysis, up to errorLimit, with
+	 * their line
+	 */
+	private List<String> diagnostics = new ArrayList<String>();
+	
+	/**
+	 * Number of errors after which the analysis gives up
 	 */
-	private LinkedList<KeyVal<Token, String>> tokenQueue;
+	private int errorLimit = DEFAULT_ERROR_LIMIT;
 	
 	/**
-	 * Output Stream object for character streams.
+	 * Whether the analysis is skipping to the next statement after an
+	 * error, and no longer emits the 3AC
 	 */
-	private PrintStream out;
+	private boolean recovering;
+	
+	/**
+	 * Whether analyses are measured and recorded to CompilerMetrics
+	 */
+	private boolean metrics = true;
+	
+	/**
+	 * Measurements of the current analysis
+	 */
+	private final CompilationStats stats = new CompilationStats();
+	
+	/**
+	 * Flight Recorder event of the current analysis, null if it is not
+	 * measured or Flight Recorder is not running
+	 */
+	private CompilationEvent event;
+	
+	/**
+	 * Timing of the token batches read from the token source
+	 */
+	private Phase lexing = new Phase();
+	
+	/**
+	 * Timing of the chunks handed to the sink
+	 */
+	private Phase emitting = new Phase();
 	
 	/**Constructor
 	 * @param fileName	Name of the input file to be analyzed.
@@ -28,10 +217,81 @@ public class SyntacticAnalyzer {
 	 * @throws FileNotFoundException	Could not open the file.
 	 */
 	public SyntacticAnalyzer(String fileName, OutputStream outStream) throws FileNotFoundException{
-		lex = new LexicalAnalyzer(fileName);
-		out = new PrintStream(outStream);
-		tokenQueue = new LinkedList<KeyVal<Token, String>>();
-		int a = 0;
+		this(new LexicalAnalyzer(fileName), outStream);
+	}
+	
+	/**Constructor
+	 * @param lex		Lexical analyzer supplying the tokens of the program.
+	 * @param outStream	OutputStream to which the 3AC should be compiled to
+	 */
+	public SyntacticAnalyzer(LexicalAnalyzer lex, OutputStream outStream){
+		this(lex, new TACWriter(lex.symbols(), outStream));
+	}
+	
+	/**Constructor
+	 * @param lex		Lexical analyzer supplying the tokens of the program.
+	 * @param channel	Channel (e.g. a FileChannel) to which the 3AC should be compiled to
+	 */
+	public SyntacticAnalyzer(LexicalAnalyzer lex, WritableByteChannel channel){
+		this(lex, new TACWriter(lex.symbols(), channel));
+	}
+	
+	/**Constructor
+	 * @param lex	Lexical analyzer supplying the tokens of the program.
+	 * @param out	Writer of the 3AC, closed along with this analyzer
+	 */
+	private SyntacticAnalyzer(LexicalAnalyzer lex, TACWriter out){
+		this(lex, (TACSink) out);
+		this.output = out;
+	}
+	
+	/**Constructor
+	 * @param lex	Lexical analyzer supplying the tokens of the program.
+	 * @param out	Writer of the binary 3AC, closed along with this analyzer
+	 */
+	private SyntacticAnalyzer(LexicalAnalyzer lex, TACBinaryWriter out){
+		this(lex, (TACSink) out);
+		this.output = out;
+	}
+	
+	/**Method: binary(LexicalAnalyzer, WritableByteChannel)
+	 * Description:
+	 * 		Creates an analyzer compiling to the binary .tacb format (see
+	 * 		TACBinaryWriter) instead of text.
+	 * @param lex		Lexical analyzer supplying the tokens of the program.
+	 * @param channel	Channel (e.g. a FileChannel) to which the .tacb should be written
+	 * @return	The analyzer
+	 */
+	public static SyntacticAnalyzer binary(LexicalAnalyzer lex, WritableByteChannel channel){
+		return new SyntacticAnalyzer(lex, new TACBinaryWriter(lex.symbols(), channel));
+	}
+	
+	/**Constructor
+	 * @param lex	Lexical analyzer supplying the tokens of the program.
+	 * @param out	Sink receiving the 3AC (e.g. a QuadBuffer to keep it in memory).
+	 * 				Its operands refer to lex.symbols().
+	 */
+	public SyntacticAnalyzer(LexicalAnalyzer lex, TACSink out){
+		this.lex = lex;
+		this.source = lex;
+		this.out = out;
+		tokens = new TokenBuffer();
+		memory = new Memory();
+	}
+	
+	/**Method: reset(void)
+	 * Description:
+	 * 		Discards any state left over from a previous analysis so that
+	 * 		this instance can analyze the next program of its (reset)
+	 * 		lexical analyzer.
+	 */
+	public void reset(){
+		tokens.clear();
+		quads.clear();
+		frames.size = 0;
+		writeError = null;
+		memory.clear();
+		memory.lClear();
 	}
 	
 	/**Method: analyze(void)
@@ -39,32 +299,255 @@ public class SyntacticAnalyzer {
 	 * 		Public interface to for the Analyzer's analysis functionality.
 	 * 		Analyzes the program, then resets the Label numbering from the
 	 * 		Memory class.
+	 * 		In pipelined mode, the Lexical analyzer runs on its own thread
+	 * 		for the duration of the analysis.
 	 */
 	public boolean analyze(){
-		boolean result = Program();
-		Memory.lClear();
+		errors = 0;
+		statements = 0;
+		diagnostics.clear();
+		recovering = false;
+		long start = 0;
+		long allocated = 0;
+		if(metrics){
+			if(FlightRecorder.isInitialized()){
+				event = new CompilationEvent();
+				event.begin();
+			}
+			stats.clear();
+			memory.temps = 0;
+			lexing.clear();
+			emitting.clear();
+			allocated = CompilerMetrics.allocatedBytes();
+			start = System.nanoTime();
+		}
+		TokenPipeline pipeline = null;
+		if(pipelined){
+			pipeline = new TokenPipeline(lex).start();
+			source = pipeline;
+		}
+		boolean result;
+		try {
+			result = Program();
+		} finally {
+			if(pipeline != null){
+				pipeline.close();
+				source = lex;
+			}
+		}
+		int labels = memory.nextLabel + 1;
+		memory.lClear();
+		emitChunk();
+		long flushed = metrics ? System.nanoTime() : 0;
+		try {
+			out.flush();
+		} catch (IOException e) {
+			writeFailed(e);
+		}
+		if(writeError != null){
+			System.err.println("An IO Error occurred. The 3AC could not be written: " + writeError.getMessage());
+			writeError = null;
+			result = false;
+		}
+		if(metrics){
+			long end = System.nanoTime();
+			stats.lexTime = lexing.estimate();
+			stats.emitTime = emitting.estimate() + end - flushed;
+			record(result, end - start, CompilerMetrics.allocatedBytes() - allocated, labels);
+		}
 		return result;
 	}
 	
+	/**Method: record(boolean, long, long, int)
+	 * Description:
+	 * 		Completes the measurements of the analysis, records them to
+	 * 		CompilerMetrics and commits them to Flight Recorder if it is
+	 * 		running and records compilations.
+	 * @param valid		Result of the analysis
+	 * @param nanos		Time the analysis took
+	 * @param allocated	Bytes the analysis allocated
+	 * @param labels	Number of labels allocated
+	 */
+	private void record(boolean valid, long nanos, long allocated, int labels){
+		stats.valid = valid;
+		stats.errors = errors;
+		stats.lexTime = Math.min(stats.lexTime, nanos);	//Estimates may overshoot
+		stats.emitTime = Math.min(stats.emitTime, nanos - stats.lexTime);
+		stats.parseTime = nanos - stats.lexTime - stats.emitTime;
+		stats.lines = lex.lines();
+		stats.temps = memory.temps;
+		stats.labels = labels;
+		stats.allocated = allocated;
+		CompilerMetrics.global().record(stats, nanos);
+		CompilationEvent event = this.event;
+		if(event != null){
+			this.event = null;
+			if(event.shouldCommit()){
+				event.set(stats);
+				event.commit();
+			}
+		}
+	}
+	
+	/**Method: setPipelined(boolean)
+	 * Description:
+	 * 		Opts in to (or out of) pipelined analysis, in which the lexical
+	 * 		analyzer runs on its own thread and hands its tokens over through
+	 * 		a TokenPipeline. Worth it for large programs, when a thread is
+	 * 		available for the lexer.
+	 * @param pipelined
+	 */
+	public void setPipelined(boolean pipelined){
+		this.pipelined = pipelined;
+	}
+	
+	/**Method: setFolding(boolean)
+	 * Description:
+	 * 		Turns constant folding on or off. When on, arithmetic on number
+	 * 		literals (and on results already folded) is computed at compile
+	 * 		time instead of being emitted, whenever the result is exact; see
+	 * 		fold(Opcode, int, int). Off by default, which keeps the 3AC
+	 * 		exactly as written in the source.
+	 * @param folding
+	 */
+	public void setFolding(boolean folding){
+		this.folding = folding;
+	}
+	
+	/**Method: setMetrics(boolean)
+	 * Description:
+	 * 		Stops (or resumes) measuring the analyses. When on, the default,
+	 * 		each analysis is recorded to CompilerMetrics, and to Flight
+	 * 		Recorder as a CompilationEvent when it is running.
+	 * @param metrics
+	 */
+	public void setMetrics(boolean metrics){
+		this.metrics = metrics;
+	}
+	
+	/**Method: setQuiet(boolean)
+	 * Description:
+	 * 		Stops (or resumes) printing syntax errors; they are still counted
+	 * 		by errors(). Used to try a piece of a program without reporting
+	 * 		the errors it has out of context.
+	 * @param quiet
+	 */
+	void setQuiet(boolean quiet){
+		this.quiet = quiet;
+	}
+	
+	/**Method: setErrorLimit(int)
+	 * Description:
+	 * 		Sets the number of syntax errors after which an analysis stops
+	 * 		looking for more; errors past the limit are neither printed nor
+	 * 		collected.
+	 * @param errorLimit	At least 1, DEFAULT_ERROR_LIMIT by default
+	 */
+	public void setErrorLimit(int errorLimit){
+		this.errorLimit = Math.max(errorLimit, 1);
+	}
+	
+	/**Method: diagnostics(void)
+	 * @return	The syntax errors of the last analysis, up to the error
+	 * 			limit, each prefixed with its line
+	 */
+	public List<String> diagnostics(){
+		return Collections.unmodifiableList(diagnostics);
+	}
+	
+	/**Method: errors(void)
+	 * @return	Number of syntax errors reported by the last analysis
+	 */
+	int errors(){
+		return errors;
+	}
+	
+	/**Method: statements(void)
+	 * @return	Number of top-level statements the last analysis parsed
+	 */
+	int statements(){
+		return statements;
+	}
+	
+	/**Method: close(void)
+	 * Description:
+	 * 		Releases the source file and flushes and closes the output stream,
+	 * 		unless the output is a sink supplied by the caller.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException{
+		lex.close();
+		if(output != null){
+			output.close();
+		}
+	}
+	
 	
 	/**Method: Program(void)
 	 * Description:
 	 * 		Checks to see if the inputted program is a valid program.
 	 * 		Follows the grammar rule:
 	 * 			Program -> program Stmt_list end .
+	 * 		When the statement list stops short of END, the error is
+	 * 		reported and the analysis recovers in panic mode: it skips to
+	 * 		the next ; or END and goes on with the statements after it, so
+	 * 		that one analysis reports the errors of every statement, up to
+	 * 		the error limit. The 3AC stops at the first such error.
 	 * @return	True if the program is syntactically correct, false otherwise.
 	 */
 	private boolean Program(){
-		if(nextToken().key() == Token.PROGRAM){
-			tokenQueue.pop();
-			if(Stmt_list()){
-				if(nextToken().key() == Token.END){
-					tokenQueue.pop();
-					if(nextToken().key() == Token.PERIOD){
-						tokenQueue.pop();
-						return true;
-					}else { System.err.println("[ERROR] Expected Period"); }
-				}else {System.err.println("[ERROR] Expected END");}
+		if(nextToken() != Token.PROGRAM){
+			error("[ERROR] Expected PROGRAM");
+			return false;
+		}
+		tokens.advance();
+		int reported = errors;
+		while(Stmt_list()){
+			if(nextToken() == Token.END){
+				tokens.advance();
+				if(nextToken() == Token.PERIOD){
+					tokens.advance();
+					return errors == 0;
+				}else { error("[ERROR] Expected Period"); }
+				break;
+			}else if(!recovering || errors == reported){
+				error("[ERROR] Expected END");	//Not after the error of a skipped statement
+			}
+			if(!recover()){
+				break;
+			}
+			reported = errors;
+		}
+		return false;
+	}
+	
+	/**Method: recover(void)
+	 * Description:
+	 * 		Skips the tokens of a bad statement, up to and including the next
+	 * 		; or up to the next END. Emits what the statement left behind,
+	 * 		then no more 3AC.
+	 * @return	True if the analysis can go on, false at the end of the file
+	 * 			or once the error limit is reached.
+	 */
+	private boolean recover(){
+		if(!recovering){
+			emitChunk();
+			recovering = true;
+		}
+		frames.size = 0;
+		memory.clear();
+		while(errors < errorLimit){
+			Token next = nextToken();
+			if(next == Token.EOF){
+				return false;
+			}
+			if(next == Token.END){
+				return true;
+			}
+			tokens.advance();
+			if(next == Token.SEMICOLON){
+				return true;
 			}
 		}
 		return false;
@@ -77,14 +560,18 @@ public class SyntacticAnalyzer {
 	 * 		Follows the Grammar rules:
 	 * 			Stmt_list -> Stmt ; Stmt_list
 	 * 			|	epsilon
+	 * 		The tail recursion is performed as a loop, so the length of
+	 * 		the list does not use up the Java stack.
 	 * @return	true if Stmt_list false otherwise
 	 */
 	private boolean Stmt_list(){
-		if(Stmt()){
-			if(nextToken().key() == Token.SEMICOLON){
-				tokenQueue.pop();
-				return Stmt_list();
+		while(Stmt()){
+			++statements;
+			emitChunk();
+			if(nextToken() != Token.SEMICOLON){
+				break;
 			}
+			tokens.advance();
 		}
 		return true;	//Epsilon transition
 	}
@@ -97,94 +584,113 @@ public class SyntacticAnalyzer {
 	 * 			if Expr[p] compare[c] Expr[q] {TST}[p, q, c, l] {JMP}[L] then {LBL}[L] Stmt {LBL}[L]	|
 	 * 			while {LBL}[L] Expr[p] compare[c] Expr[q] {TST}[p, q, c, l] {JMP}[L] {LBL}[L]
 	 * 			(L = lalloc)
+	 * 		Nested statements are parsed iteratively: the header of each
+	 * 		enclosing if/while is pushed on the frame stack together with the
+	 * 		labels it still has to emit, and popped once the innermost
+	 * 		statement is done.
 	 * 
 	 * @return	true if statement, false otherwise.
 	 */
 	private boolean Stmt(){
-		Token nextTok = nextToken().key();
+		int base = frames.size;
+		boolean result = false;
 		
-		//id[p] = Expr[q] {MOV}[q,p]
-		if(nextTok == Token.IDENT){
-			KeyVal<Token, String> stmtIdent = tokenQueue.pop();
+		while(true){
+			Token nextTok = nextToken();
 			
-			if(nextToken().key() == Token.EQUAL){
-				tokenQueue.pop();
-				String q = Expr();
-				if(q != null){
-					makeQuad("MOV", q, stmtIdent.value());
-					Memory.clear();
-					return true;
+			//id[p] = Expr[q] {MOV}[q,p]
+			if(nextTok == Token.IDENT){
+				int stmtIdent = Operand.make(Operand.VAR, tokens.symbol());
+				tokens.advance();
+				
+				if(nextToken() == Token.EQUAL){
+					tokens.advance();
+					int q = Expr();
+					if(q != Operand.NONE){
+						makeQuad(Opcode.MOV, q, stmtIdent);
+						result = true;
+					}
 				}
 			}
-		}
-		
-		//if Expr[p] compare[c] Expr[q] {TST}[p, q, c, l] {JMP}[L] then {LBL}[L] Stmt {LBL}[L]
-		else if(nextTok == Token.IF){
-			tokenQueue.pop();
-			String p = Expr();
-			if(p != null){
-				nextTok = nextToken().key();
-				
-				String c = compare();
-				if(c != null){
-					tokenQueue.pop();
-					String q = Expr();
-					if(q != null){
-						String trueLbl = Memory.lalloc();
-						String falseLbl = Memory.lalloc();
-						TST(p, q, c, trueLbl);
-						JMP(falseLbl);
-						if(nextToken().key() == Token.THEN){
-							tokenQueue.pop();
-							LBL(trueLbl);
-							if(Stmt()){
-								LBL(falseLbl);
-								Memory.clear();
-								return true;
-							}
-						}else{ System.err.println("Error in If statement: \"Then\" expected...");}
+			
+			//if Expr[p] compare[c] Expr[q] {TST}[p, q, c, l] {JMP}[L] then {LBL}[L] Stmt {LBL}[L]
+			else if(nextTok == Token.IF){
+				tokens.advance();
+				int p = Expr();
+				if(p != Operand.NONE){
+					nextTok = nextToken();
+					
+					int c = compare();
+					if(c >= 0){
+						tokens.advance();
+						int q = Expr();
+						if(q != Operand.NONE){
+							int trueLbl = memory.lalloc();
+							int falseLbl = memory.lalloc();
+							TST(p, q, c, trueLbl);
+							JMP(falseLbl);
+							if(nextToken() == Token.THEN){
+								tokens.advance();
+								LBL(trueLbl);
+								frames.push(IF_STMT, 0);
+								frames.op[frames.size - 1] = falseLbl;
+								continue;	//Stmt
+							}else{ error("Error in If statement: \"Then\" expected...");}
+						}
+					}else{
+						error("Error in If statement: comparison operator expected.");
 					}
-				}else{
-					System.err.println("Error in If statement: comparison operator expected.");
 				}
+				
 			}
 			
+			//while {LBL}[L] Expr[p] compare[c] Expr[q] {TST}[p, q, c, l] {JMP}[L] {LBL}[L]
+			else if(nextTok == Token.WHILE){
+				tokens.advance();
+				int whileLBL = memory.lalloc();
+				LBL(whileLBL);
+				
+				int p = Expr();
+				if(p != Operand.NONE){
+					int c = compare();
+					if(c >= 0){
+						tokens.advance();
+						int q = Expr();
+						if(q != Operand.NONE){
+							int trueLBL = memory.lalloc();
+							int falseLbl = memory.lalloc();
+							
+							TST(p, q, c, trueLBL);
+							JMP(falseLbl);
+							LBL(trueLBL);
+							if(nextToken() == Token.DO){
+								tokens.advance();
+								frames.push(WHILE_STMT, 0);
+								frames.op[frames.size - 1] = falseLbl;
+								frames.lhs[frames.size - 1] = whileLBL;
+								continue;	//Stmt
+							}else{ error("Error in While loop: \"Do\" expected.");}
+						}
+					}else { error("Error in While loop: comparison operator expected."); }
+				}
+			}
+			break;
 		}
+		memory.clear();
 		
-		//while {LBL}[L] Expr[p] compare[c] Expr[q] {TST}[p, q, c, l] {JMP}[L] {LBL}[L]
-		else if(nextTok == Token.WHILE){
-			tokenQueue.pop();
-			String whileLBL = Memory.lalloc();
-			LBL(whileLBL);
-			
-			String p = Expr();
-			if(p != null){
-				String c = compare();
-				if(c != null){
-					tokenQueue.pop();
-					String q = Expr();
-					if(q != null){
-						String trueLBL = Memory.lalloc();
-						String falseLbl = Memory.lalloc();
-						
-						TST(p, q, c, trueLBL);
-						JMP(falseLbl);
-						LBL(trueLBL);
-						if(nextToken().key() == Token.DO){
-							tokenQueue.pop();
-							if(Stmt()){
-								JMP(whileLBL);
-								LBL(falseLbl);
-								Memory.clear();
-								return true;
-							}
-						}else{ System.err.println("Error in While loop: \"Do\" expected.");}
-					}
-				}else { System.err.println("Error in While loop: comparison operator expected."); }
+		//Finish the enclosing statements, innermost first
+		while(frames.size > base){
+			int top = frames.size - 1;
+			if(result){
+				if(frames.kind[top] == WHILE_STMT){
+					JMP(frames.lhs[top]);
+				}
+				LBL(frames.op[top]);
 			}
+			frames.pop();
+			memory.clear();
 		}
-		Memory.clear();
-		return false;
+		return result;
 	}
 	
 	/**Method: Expr(void)
@@ -193,224 +699,375 @@ public class SyntacticAnalyzer {
 	 * 		an expression.
 	 * 		Follows the grammar rules:
 	 * 			Expr -> Term MoreTerms
-	 * @return	String containing the next synthesized attribute if Expr() suceeds, null otherwise 
-	 */
-	private String Expr(){
-		String q;
-		if((q = Term()) != null){
-			return moreTerms(q);
-		}
-		return null;
-	}
-	
-	/**Method Term(void)
-	 * Description:
-	 * 		Determines whether the queue of tokens obeys the grammar rule for Term
-	 * 		Grammar rule: 
+	 * 			MoreTerms -> + Term MoreTerms | - Term MoreTerms | epsilon
 	 * 			Term -> Factor MoreFactors
-	 * @return	String containing the synthesized attribute if the grammar rule is satisfied, null otherwise
+	 * 			MoreFactors -> * Factor MoreFactors | / Factor MoreFactors |
+	 * 							div Factor | mod Factor | epsilon
+	 * 			Factor -> Base ^ Factor | Base
+	 * 			Base -> # Value | ~ Value | Value
+	 * 			Value -> ( Expr ) | id | num
+	 * 
+	 * 		The rules are parsed by precedence climbing (see climb()) over an
+	 * 		explicit stack of frames instead of the Java stack, so neither long
+	 * 		operator chains nor deeply parenthesized expressions can overflow it.
+	 * 		A frame is pushed for every operand being parsed at a given minimum
+	 * 		precedence, for every open parenthesis and for every unary operator.
+	 * 
+	 * 		Note that div and mod end their Term: the quad is emitted but the
+	 * 		Term's value stays the left operand.
+	 * @return	Operand holding the next synthesized attribute if Expr() suceeds, Operand.NONE otherwise 
 	 */
-	private String Term(){
-		String q = Factor();
-		if (q != null){
-			return MoreFactors(q);
+	private int Expr(){
+		int base = frames.size;
+		int result = Operand.NONE;
+		int state = BASE;
+		frames.push(CLIMB, PREC_TERMS);
+		
+		while(true){
+			switch(state){
+			
+			//Base -> # Value | ~ Value | Value
+			case BASE:
+				Token unary = nextToken();
+				if(unary == Token.UPLUS || unary == Token.UMINUS){
+					tokens.advance();
+					frames.push(UNARY, 0);
+					frames.op[frames.size - 1] = unary.ordinal();
+				}
+				state = VALUE;
+				break;
+				
+			//Value -> ( Expr ) | id | num
+			case VALUE:
+				Token nextTok = nextToken();
+				if(nextTok == Token.OPARENTH){
+					tokens.advance();
+					frames.push(PAREN, 0);
+					frames.push(CLIMB, PREC_TERMS);
+					state = BASE;
+				}else{
+					if(nextTok == Token.IDENT || nextTok == Token.NUMBER){
+						result = Operand.make(nextTok == Token.IDENT ? Operand.VAR : Operand.NUM, tokens.symbol());
+						tokens.advance();
+					}else{
+						error("Error in Value(): Expected Open Parenthesis, Identifier, or Constant");
+						result = Operand.NONE;
+					}
+					state = VALUE_DONE;
+				}
+				break;
+				
+			//A Value was parsed: apply the pending unary operator, if any
+			case VALUE_DONE:
+				int top = frames.size - 1;
+				if(frames.kind[top] == UNARY_RETRY){
+					frames.pop();
+				}else if(frames.kind[top] == UNARY){
+					if(result != Operand.NONE){
+						result = emit(frames.op[top] == Token.UPLUS.ordinal() ? Opcode.PLS : Opcode.NEG, result, Operand.NONE);
+						frames.pop();
+					}else{
+						//An invalid operand of a unary operator is parsed again as a plain Value
+						frames.kind[top] = UNARY_RETRY;
+						state = VALUE;
+						break;
+					}
+				}
+				state = climb(frames.size - 1, result);
+				break;
+				
+			//Try to extend the operand of the top frame with a binary operator
+			case OPERATOR:
+				state = climb(frames.size - 1, Operand.NONE);
+				break;
+				
+			//The top frame is complete
+			case CLIMB_DONE:
+				result = frames.lhs[frames.size - 1];
+				frames.pop();
+				if(frames.size == base){
+					return result;
+				}
+				top = frames.size - 1;
+				if(frames.kind[top] == PAREN){
+					frames.pop();
+					if(nextToken() == Token.CPARENTH){
+						tokens.advance();
+					}else{
+						result = Operand.NONE;
+					}
+					state = VALUE_DONE;
+				}else{
+					applyOperator(top, result);
+					state = OPERATOR;
+				}
+				break;
+			}
 		}
-		else {return null;}
 	}
 	
-	/**Method: moreTerms(String)
+	/**Method: climb(int, int)
 	 * Description:
-	 * 		Determines whether the queue of tokens obeys the grammar rules for MoreTerms
-	 * 		Grammar rules:
-	 * 			MoreTerms ->	+ Term MoreTerms	|
-	 * 							- Term MoreTerms	|
-	 * 							epsilon
-	 * @param p		Inherited value
-	 * @return		String containing the next synthesized attribute if moreTerms succeeds, null otherwise
-	 */
-	private String moreTerms(String p){
-		Token nextTok = nextToken().key();
-		
-		//+ Term MoreTerms	
-		if(nextTok == Token.ADD){
-			tokenQueue.pop();
-			String t = Term();
-			String r = Memory.talloc();
-			makeQuad("ADD", p, t, r);
-			return moreTerms(r);
+	 * 		One step of precedence climbing on a frame. When given the frame's
+	 * 		first operand (a Base), records it; then, if the next token is a
+	 * 		binary operator the frame may take, consumes it and pushes a frame
+	 * 		for its right operand. A frame only takes operators of at least its
+	 * 		minimum precedence and at most its ceiling, which drops as operators
+	 * 		are applied so that each level of the grammar gets the operators
+	 * 		it would get from the recursive rules.
+	 * @param top		Index of the frame
+	 * @param operand	First operand of the frame, Operand.NONE if it already has one
+	 * @return	The next state: BASE if a frame was pushed, CLIMB_DONE otherwise
+	 */
+	private int climb(int top, int operand){
+		Token nextTok = nextToken();
+		if(frames.lhs[top] == Operand.NONE){
+			if(operand == Operand.NONE){
+				return CLIMB_DONE;
+			}
+			frames.lhs[top] = operand;
 		}
 		
-		//- Term MoreTerms	
-		else if(nextTok == Token.SUB){
-			tokenQueue.pop();
-			String t = Term();
-			String r = Memory.talloc();
-			makeQuad("SUB", p, t, r);
-			return moreTerms(r);
+		int prec = precedence(nextTok);
+		if(prec < frames.min[top] || prec > frames.ceiling[top]){
+			return CLIMB_DONE;
 		}
-		return p;
+		tokens.advance();
+		frames.op[top] = nextTok.ordinal();
+		frames.push(CLIMB, prec == PREC_POWER ? prec : prec + 1);	//^ is right associative
+		return BASE;
 	}
 	
-	/**Method: MoreFactors(String)
+	/**Method: applyOperator(int, int)
 	 * Description:
-	 * 		Determines whether the queue of tokens follows the
-	 * 		grammar rules for MoreFactors
-	 * 		The Grammar Rules:
-	 * 			MoreFactors -> 	* Factor MoreFactors	|
-	 * 							/ Factor MoreFactors	|
-	 * 							div Factor MoreFactors	|
-	 * 							mod Factor MoreFactors	|
-	 * 							epsilon
-	 * @param p	Inherited attribute
-	 * @return	String containing synthesized attribute, 
-	 * 			null if the queue fails the grammar check
-	 */
-	private String MoreFactors(String p){
-		Token nextTok = nextToken().key();
-		
-		// * Factor MoreFactors
-		if(nextTok == Token.MULT){
-			tokenQueue.pop();
-			String t = Factor();
-			if(t != null){
-				String r = Memory.talloc();
-				makeQuad("MUL", p, t, r);
-				return MoreFactors(r);
+	 * 		Emits the quad of a frame's pending binary operator once its
+	 * 		right operand is parsed, and lowers the frame's ceiling.
+	 * 		An operator whose right operand is invalid is still emitted at
+	 * 		the + and ^ levels, but ends the Term at the * level.
+	 * @param top	Index of the frame
+	 * @param t		Right operand
+	 */
+	private void applyOperator(int top, int t){
+		Token op = TOKENS[frames.op[top]];
+		int p = frames.lhs[top];
+		switch(op){
+		case ADD:
+		case SUB:
+			frames.lhs[top] = emit(op == Token.ADD ? Opcode.ADD : Opcode.SUB, p, t);
+			frames.ceiling[top] = PREC_TERMS;
+			break;
+		case MULT:
+		case DIV:
+			if(t != Operand.NONE){
+				frames.lhs[top] = emit(op == Token.MULT ? Opcode.MUL : Opcode.DVD, p, t);
+				frames.ceiling[top] = PREC_FACTORS;
 			}else{
-				System.err.println("Error in MoreFactors: " + tokenQueue.toString());
-			}
-		}
-		// / Factor MoreFactors
-		else if(nextTok == Token.DIV){
-			tokenQueue.pop();
-			String t = Factor();
-			if(t != null){
-				String r = Memory.talloc();
-				makeQuad("DVD", p, t, r);
-				return MoreFactors(r);
-			}
-		}
-		// div Factor MoreFactors
-		else if(nextTok == Token.INTDIV){
-			tokenQueue.pop();
-			String t = Factor();
-			if(t != null){
-				String r = Memory.talloc();
-				makeQuad("DIV", p, t, r);
+				if(op == Token.MULT){
+					error("Error in MoreFactors: " + tokens.toString(lex));
+				}
+				frames.ceiling[top] = PREC_TERMS;
 			}
-		}
-		// mod Factor MoreFactors
-		else if(nextTok == Token.MOD){
-			tokenQueue.pop();
-			String t = Factor();
-			if(t != null){
-				String r = Memory.talloc();
-				makeQuad("MOD", p, t, r);
+			break;
+		case INTDIV:
+		case MOD:
+			if(t != Operand.NONE){
+				emit(op == Token.INTDIV ? Opcode.DIV : Opcode.MOD, p, t);	//Result unused
 			}
+			frames.ceiling[top] = PREC_TERMS;
+			break;
+		default:	//EXPON
+			frames.lhs[top] = emit(Opcode.EXP, p, t);
+			frames.ceiling[top] = PREC_FACTORS;
+			break;
 		}
-		//epsilon
-		return p;
 	}
 	
-	/**Method: Factor(void)
+	/**Method: emit(Opcode, int, int)
 	 * Description:
-	 * 		
-	 * @return
-	 */
-	private String Factor(){
-		String p = Base();
-		Token nextTok = nextToken().key();
-		if(p != null){
-			if(nextTok == Token.EXPON){
-				tokenQueue.pop();
-				String t = Factor();
-				String r = Memory.talloc();
-				makeQuad("EXP", p, t, r);
-				
-				return r;
+	 * 		Emits an arithmetic quad into a new temp, unless folding is
+	 * 		on and the operation can be computed at compile time.
+	 * @param operation
+	 * @param p		First operand
+	 * @param t		Second operand, Operand.NONE for PLS and NEG
+	 * @return	The temp holding the result, or the folded constant
+	 */
+	private int emit(Opcode operation, int p, int t){
+		int r = folding ? fold(operation, p, t) : Operand.NONE;
+		if(r == Operand.NONE){
+			r = memory.talloc();
+			if(operation.form() == Opcode.UNARY){
+				makeQuad(operation, p, r);
 			}else{
-				return p;
+				makeQuad(operation, p, t, r);
 			}
 		}
-		return null;
+		return r;
 	}
 	
-	/**Method: Base(void)
+	/**Method: fold(Opcode, int, int)
 	 * Description:
-	 * 		Determines if the token queue contains a positive or negative number
-	 * @return	String containing the synthetic attribute
-	 */
-	private String Base(){
-		Token nextTok = nextToken().key();
-		String p = null;
-		//Check for unary plus
-		if(nextTok == Token.UPLUS){
-			tokenQueue.pop();
-			p = Value();
-			if(p != null){
-				String r = Memory.talloc();
-				makeQuad("PLS", p, r);
-				return r;
-			}
+	 * 		Computes an arithmetic operation on constant operands (number
+	 * 		literals or folded constants). Nothing is folded unless the
+	 * 		result is exact whatever the target's semantics, integer or
+	 * 		floating-point:
+	 * 			- if an operand or the result is beyond 2^53 (where doubles
+	 * 			  stop being exact), or overflows a long
+	 * 			- if the result is a zero that floating-point would make
+	 * 			  negative, such as ~0 or -2*0
+	 * 			- for /, unless the division has no remainder
+	 * 			- for div and mod, unless both operands are non-negative and
+	 * 			  the divisor is not zero
+	 * 			- for ^, if the exponent is negative or both operands are zero
+	 * @param operation
+	 * @param p		First operand
+	 * @param t		Second operand, Operand.NONE for PLS and NEG
+	 * @return	The constant result, Operand.NONE if the operation is not folded
+	 */
+	private int fold(Opcode operation, int p, int t){
+		SymbolTable symbols = lex.symbols();
+		if(!symbols.hasValue(p)){
+			return Operand.NONE;
 		}
-		//Check for unary minus
-		else if(nextTok == Token.UMINUS){
-			tokenQueue.pop();
-			p = Value();
-			if(p != null){
-				String r = Memory.talloc();
-				makeQuad("NEG", p, r);
-				return r;
-			}
+		long a = symbols.value(p);
+		if(Math.abs(a) > MAX_EXACT){
+			return Operand.NONE;
+		}
+		if(operation == Opcode.PLS){
+			return p;
 		}
-		return Value();
 		
+		long result;
+		try {
+			if(operation == Opcode.NEG){
+				if(a == 0){
+					return Operand.NONE;	//-0.0
+				}
+				result = -a;
+			}else{
+				if(!symbols.hasValue(t)){
+					return Operand.NONE;
+				}
+				long b = symbols.value(t);
+				if(Math.abs(b) > MAX_EXACT){
+					return Operand.NONE;
+				}
+				switch (operation){
+				case ADD:
+					result = Math.addExact(a, b);
+					break;
+				case SUB:
+					result = Math.subtractExact(a, b);
+					break;
+				case MUL:
+				case DVD:
+					if(operation == Opcode.MUL){
+						result = Math.multiplyExact(a, b);
+					}else if(b != 0 && a % b == 0){
+						result = a / b;
+					}else{
+						return Operand.NONE;
+					}
+					if(result == 0 && (a < 0 || b < 0)){
+						return Operand.NONE;	//-0.0
+					}
+					break;
+				case DIV:
+				case MOD:
+					if(a < 0 || b <= 0){
+						return Operand.NONE;
+					}
+					result = operation == Opcode.DIV ? a / b : a % b;
+					break;
+				default:	//EXP
+					if(b < 0 || (a == 0 && b == 0)){
+						return Operand.NONE;
+					}
+					result = power(a, b);
+					break;
+				}
+			}
+		} catch (ArithmeticException e) {
+			return Operand.NONE;	//Overflow
+		}
+		if(Math.abs(result) > MAX_EXACT){
+			return Operand.NONE;
+		}
+		return Operand.make(Operand.CONST, symbols.constants().add(result));
 	}
 	
-	/**Method: Value(void)
+	/**Method: power(long, long)
 	 * Description:
-	 * 		Determines if the token queue contains either
-	 * 		an expression enclosed in parentheses, an identifier,
-	 * 		or a constant number.
-	 * @return	String containing the synthesized attribute. This attribute is the current lexeme.
-	 */
-	private String Value(){
-		KeyVal<Token, String> nextTok = nextToken();
-		String p = null;
-		if(nextTok.key() == Token.OPARENTH){
-			tokenQueue.pop();
-			p = Expr();
-			if(nextToken().key() == Token.CPARENTH){
-				tokenQueue.pop();
-				return p;
+	 * 		Raises a base to a non-negative exponent by squaring.
+	 * @param base
+	 * @param exponent
+	 * @return	base ^ exponent
+	 * @throws ArithmeticException	The result overflows a long
+	 */
+	private static long power(long base, long exponent){
+		long result = 1;
+		while(exponent > 0){
+			if((exponent & 1) != 0){
+				result = Math.multiplyExact(result, base);
+			}
+			exponent >>= 1;
+			if(exponent > 0){
+				base = Math.multiplyExact(base, base);
 			}
-		}else if(nextTok.key() == Token.IDENT || nextTok.key() == Token.NUMBER){
-			tokenQueue.pop();
-			return nextTok.value();
-		}else { System.err.println("Error in Value(): Expected Open Parenthesis, Identifier, or Constant"); }
-		return null;
+		}
+		return result;
+	}
+	
+	/**Method: precedence(Token)
+	 * @param token
+	 * @return	Precedence of a binary operator, 0 if the token is not one
+	 */
+	private static int precedence(Token token){
+		switch(token){
+		case ADD:
+		case SUB:
+			return PREC_TERMS;
+		case MULT:
+		case DIV:
+		case INTDIV:
+		case MOD:
+			return PREC_FACTORS;
+		case EXPON:
+			return PREC_POWER;
+		default:
+			return 0;
+		}
 	}
 	
 	/**Method: nextToken(void)
 	 * Description:
-	 * 		Returns the next line of tokens in the queue,
-	 * 		if the queue is empty, it will request a new queue
-	 * 		from the Lexical Analyzer. This is in order to possibly
-	 * 		facilitate running the Lexical analyzer on a separate thread
-	 * 		in future endeavors.
-	 * @return	KeyVal pair of the Token + lexeme of the next token set in the queue.
-	 */
-	private KeyVal<Token, String> nextToken(){
-		while(tokenQueue == null || tokenQueue.isEmpty()){
+	 * 		Returns the token under the cursor of the token buffer,
+	 * 		if every token was consumed, it will request the next batch
+	 * 		of tokens from the token source: a line from the Lexical Analyzer,
+	 * 		or everything the Lexical analyzer's thread has produced so far
+	 * 		in a pipelined analysis.
+	 * @return	The next token.
+	 */
+	private Token nextToken(){
+		while(!tokens.hasNext()){
+			boolean more;
+			long start = metrics ? lexing.start() : 0;
 			try {
-				tokenQueue = lex.nextLine();
+				tokens.clear();
+				more = source.nextLine(tokens);
 			} catch (IOException e) {
-				System.err.println("An IO Error occurred. The lexical analyzer failed to tokenize properly.");
-				e.printStackTrace();
-				System.exit(-1);
+				error("An IO Error occurred. The lexical analyzer failed to tokenize properly: " + e.getMessage());
+				tokens.clear();
+				more = false;
+			}
+			if(metrics){
+				lexing.end(start);
+				stats.tokens += tokens.size();
+			}
+			if(!more && !tokens.hasNext()){
+				tokens.add(Token.EOF, -1, 0, 0, 0);
 			}
 		}
-		return tokenQueue.peek();
+		return tokens.peek();
 	}
 	
 	/**Method: compare(void)
@@ -418,62 +1075,62 @@ public class SyntacticAnalyzer {
 	 * 		Determines if the next token is a comparison operator,
 	 * 		if it is it returns the associated integer associated
 	 * 		with the operator.
-	 * @return	String of the operator code if the token is a comparison operator,
-	 * 			null otherwise
+	 * @return	Operator code if the token is a comparison operator,
+	 * 			-1 otherwise
 	 */
-	private String compare(){
-		Token nextTok = nextToken().key();
+	private int compare(){
+		Token nextTok = nextToken();
 		
 		switch (nextTok){
 		case EQUAL:
-			return "0";
+			return 0;
 		case LT:
-			return "1";
+			return 1;
 		case LE:
-			return "2";
+			return 2;
 		case GT:
-			return "3";
+			return 3;
 		case GE:
-			return "4";
+			return 4;
 		case NE:
-			return "5";
+			return 5;
 		}
-		return null;
+		return -1;
 	}
 	
-	/**Method: TST(String, String, String, String)
+	/**Method: TST(int, int, int, int)
 	 * Description:
-	 * 		Writes the 3AC Test instruction to the output stream.
+	 * 		Emits the 3AC Test instruction.
 	 * 
 	 * @param lOperand
 	 * @param rOperand
 	 * @param comparator
 	 * @param jmp
 	 */
-	private void TST(String lOperand, String rOperand, String comparator, String jmp){
-		out.printf("%s, %s, %s, %s, %s\n", "TST", lOperand, rOperand, comparator, jmp);
+	private void TST(int lOperand, int rOperand, int comparator, int jmp){
+		quads.test(lOperand, rOperand, comparator, jmp);
 	}
 	
-	/**Method: JMP(String)
+	/**Method: JMP(int)
 	 * Description:
-	 * 		Writes a 3AC jump instruction to the output stream.
+	 * 		Emits a 3AC jump instruction.
 	 * @param lbl
 	 */
-	private void JMP(String lbl){
-		out.printf("JMP, %s\n", lbl);
+	private void JMP(int lbl){
+		quads.jump(lbl);
 	}
 	
-	/**Method: LBL(String)
+	/**Method: LBL(int)
 	 * Description:
-	 * 		Writes a 3AC label to the output stream.
+	 * 		Emits a 3AC label.
 	 * 
 	 * @param lbl
 	 */
-	private void LBL(String lbl){
-		out.println(lbl);
+	private void LBL(int lbl){
+		quads.label(lbl);
 	}
 	
-	/**Method: makeQuad(String, String, String, String)
+	/**Method: makeQuad(Opcode, int, int, int)
 	 * Description:
 	 * 		Creates a 3AC Quadruple for four inputs.
 	 * 
@@ -482,52 +1139,267 @@ public class SyntacticAnalyzer {
 	 * @param rOperand
 	 * @param result
 	 */
-	private void makeQuad(String operation, String lOperand, String rOperand, String result){
-		out.printf("%s, %s, %s, %s\n", operation, lOperand, rOperand, result);
+	private void makeQuad(Opcode operation, int lOperand, int rOperand, int result){
+		quads.add(operation, lOperand, rOperand, result);
 	}
 	
-	/**Method: makeQuad(String, String, String)
+	/**Method: makeQuad(Opcode, int, int)
 	 * Description:
 	 * 		Creates a 3AC Quadruple for three inputs.
 	 * @param operation
 	 * @param operand
 	 * @param result
 	 */
-	private void makeQuad(String operation, String operand, String result){
-		out.printf("%s, %s, %s\n", operation, operand, result);
+	private void makeQuad(Opcode operation, int operand, int result){
+		quads.add(operation, operand, result);
 	}
+	
+	/**Method: emitChunk(void)
+	 * Description:
+	 * 		Hands the instructions emitted since the last chunk over to the sink.
+	 */
+	private void emitChunk(){
+		if(recovering){
+			quads.clear();
+		}else if(quads.size() > 0){
+			long start = metrics ? emitting.start() : 0;
+			try {
+				out.accept(quads);
+			} catch (IOException e) {
+				writeFailed(e);
+			}
+			if(metrics){
+				emitting.end(start);
+				stats.quads += quads.size();
+			}
+			quads.clear();
+		}
+	}
+	
+	/**Method: error(String)
+	 * Description:
+	 * 		Reports a syntax error: counts it and, up to the error limit,
+	 * 		collects it with its line and prints it unless the analyzer is
+	 * 		quiet.
+	 * @param message
+	 */
+	private void error(String message){
+		if(++errors > errorLimit){
+			return;
+		}
+		int line = tokens.hasNext() ? tokens.line() : 0;
+		diagnostics.add((line > 0 ? "Line " + line : "End of file") + ": " + message);
+		if(!quiet){
+			System.err.println(message);
+		}
+	}
+	
+	/**Method: writeFailed(IOException)
+	 * Description:
+	 * 		Records an output error. Like a PrintStream, the analysis goes on,
+	 * 		but analyze() reports the program as not compiled.
+	 * @param e
+	 */
+	private void writeFailed(IOException e){
+		if(writeError == null){
+			writeError = e;
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Stack of parse frames, stored column by column. The meaning of
+	 *		the columns depends on the kind of frame:
+	 *			CLIMB		min/ceiling precedence, operand so far, pending operator
+	 *			UNARY		operator
+	 *			IF_STMT		false label (op)
+	 *			WHILE_STMT	false label (op), loop label (lhs)
+	 */
+	private static class Frames{
+		
+		/**
+		 * Number of frames on the stack
+		 */
+		private int size;
+		
+		/**
+		 * Kind of every frame
+		 */
+		private int[] kind = new int[64];
+		
+		/**
+		 * Lowest precedence of the operators a frame may take
+		 */
+		private int[] min = new int[64];
+		
+		/**
+		 * Highest precedence of the operators a frame may still take
+		 */
+		private int[] ceiling = new int[64];
+		
+		/**
+		 * Operand parsed so far
+		 */
+		private int[] lhs = new int[64];
+		
+		/**
+		 * Pending operator (ordinal) or label
+		 */
+		private int[] op = new int[64];
+		
+		/**Method: push(int, int)
+		 * Description:
+		 * 		Pushes a frame that may take every operator of at least
+		 * 		the given precedence and has no operand yet.
+		 * @param frameKind
+		 * @param minPrec
+		 */
+		private void push(int frameKind, int minPrec){
+			if(size == kind.length){
+				kind = Arrays.copyOf(kind, size * 2);
+				min = Arrays.copyOf(min, size * 2);
+				ceiling = Arrays.copyOf(ceiling, size * 2);
+				lhs = Arrays.copyOf(lhs, size * 2);
+				op = Arrays.copyOf(op, size * 2);
+			}
+			kind[size] = frameKind;
+			min[size] = minPrec;
+			ceiling[size] = PREC_POWER;
+			lhs[size] = Operand.NONE;
+			op[size] = 0;
+			++size;
+		}
 		
+		/**Method: pop(void)
+		 * Description:
+		 * 		Removes the top frame.
+		 */
+		private void pop(){
+			--size;
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Times the calls of one phase of an analysis by sampling: the first
+	 *		SAMPLING calls, then one call in SAMPLING, are timed and the time
+	 *		of the others is estimated from them, which keeps the clock out
+	 *		of most lines and statements of large programs. The first calls
+	 *		are counted as timed and left out of the estimate, since they
+	 *		pay for warming up (class loading, the first output buffers).
+	 */
+	private static class Phase{
+		
+		/**
+		 * Calls timed before sampling, then one call in SAMPLING is timed; a power of 2
+		 */
+		private static final int SAMPLING = 8;
+		
+		/**
+		 * Calls so far
+		 */
+		private long calls;
+		
+		/**
+		 * Calls sampled after the first SAMPLING
+		 */
+		private long samples;
+		
+		/**
+		 * Time of the first SAMPLING calls
+		 */
+		private long warmup;
+		
+		/**
+		 * Time of the calls sampled after them
+		 */
+		private long nanos;
+		
+		/**Method: start(void)
+		 * Description:
+		 * 		Counts a call and starts timing it if it is sampled.
+		 * @return	Start time of the call, 0 if it is not timed
+		 */
+		private long start(){
+			long call = calls++;
+			return call < SAMPLING || (call & SAMPLING - 1) == 0 ? System.nanoTime() : 0;
+		}
+		
+		/**Method: end(long)
+		 * @param start	What start() returned for the call
+		 */
+		private void end(long start){
+			if(start != 0){
+				long time = System.nanoTime() - start;
+				if(calls <= SAMPLING){
+					warmup += time;
+				}else{
+					nanos += time;
+					++samples;
+				}
+			}
+		}
+		
+		/**Method: estimate(void)
+		 * @return	Time of the first SAMPLING calls plus the estimated time
+		 * 			of the others
+		 */
+		private long estimate(){
+			long tail = calls - Math.min(calls, SAMPLING);
+			return warmup + (samples == 0 ? 0 : (long) ((double) nanos * tail / samples));
+		}
+		
+		/**Method: clear(void)
+		 * Description:
+		 * 		Forgets the calls, for a new analysis.
+		 */
+		private void clear(){
+			calls = 0;
+			samples = 0;
+			warmup = 0;
+			nanos = 0;
+		}
+	}
+	
 	/**
 	 * @author Glen
 	 *	Description:
-	 *		Contains some static helper functions for 3AC memory management.
+	 *		Contains some helper functions for 3AC memory management.
+	 *		Each analyzer owns its own instance so that several programs
+	 *		can be compiled concurrently without sharing temp/label numbering.
 	 */
 	private static class Memory{
 		
 		/**
 		 * Integer of the next temp variable
 		 */
-		private static int nextTemp = -1;
+		private int nextTemp = -1;
 		
 		/**
 		 *	Integer of the next lable variable 
 		 */
-		private static int nextLabel = -1;
+		private int nextLabel = -1;
+		
+		/**
+		 * Number of temps allocated since the last analysis began
+		 */
+		private long temps;
 		
 		/**Method: talloc(void)
 		 * Description:
 		 * 		Performs memory allocation for a temporary variable.
 		 * @return
 		 */
-		private static String talloc(){
-			return String.format("T%d", ++nextTemp);
+		private int talloc(){
+			++temps;
+			return Operand.make(Operand.TEMP, ++nextTemp);
 		}
 		
 		/**Method: clear(void)
 		 * Description:
 		 * 		Resets the nextTemp variable.
 		 */
-		private static void clear(){
+		private void clear(){
 			nextTemp = -1;
 		}
 		
@@ -536,7 +1408,7 @@ public class SyntacticAnalyzer {
 		 * 		Resets the nextLabel variable.
 		 * 
 		 */
-		private static void lClear(){
+		private void lClear(){
 			nextLabel = -1;
 		}
 		
@@ -545,8 +1417,8 @@ public class SyntacticAnalyzer {
 		 * 		Performs memory allocation for a new label.
 		 * @return
 		 */
-		private static String lalloc(){
-			return String.format("L%d", ++nextLabel);
+		private int lalloc(){
+			return Operand.make(Operand.LABEL, ++nextLabel);
 		}
 	}
 }
@@ -0,0 +1,317 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *	Description:
+ *		Converts 3AC between the text written by TACWriter and the .tacb
+ *		format of TACBinaryWriter, for artifacts compiled before .tacb
+ *		existed and for tools that want text back.
+ *
+ *		Usage:
+ *			TACBinaryConverter [-text] file...
+ *
+ *		Each X.tac is converted to X.tacb next to it, or with -text each
+ *		X.tacb to X.tac.
+ *
+ *		The text is ambiguous in places, so reading it assumes what
+ *		TACWriter writes: a name T followed by digits is a temp, a number
+ *		is a number literal (a positive computed constant prints the same
+ *		and comes back as a literal) and a negative number is a computed
+ *		constant. Converting to .tacb and back gives the same text.
+ */
+public class TACBinaryConverter {
+	
+	/**
+	 * Number of quads handed to a sink at a time, at most
+	 */
+	private static final int CHUNK = 4096;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		boolean text = args.length > 0 && args[0].equals("-text");
+		int first = text ? 1 : 0;
+		if(first == args.length){
+			System.err.println("Usage: TACBinaryConverter [-text] file...");
+			System.exit(-1);
+		}
+		int failed = 0;
+		for(int i = first; i < args.length; ++i){
+			Path source = Paths.get(args[i]);
+			try {
+				if(text){
+					toText(source, withExtension(source, ".tac"));
+				}else{
+					toBinary(source, withExtension(source, ".tacb"));
+				}
+			} catch (IOException e) {
+				System.err.println("[ERROR] " + source + ": " + e.getMessage());
+				++failed;
+			}
+		}
+		if(failed > 0){
+			System.exit(1);
+		}
+	}
+	
+	/**Method: withExtension(Path, String)
+	 * @param file
+	 * @param extension
+	 * @return	The path with its extension replaced
+	 */
+	static Path withExtension(Path file, String extension){
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if(dot > 0){
+			name = name.substring(0, dot);
+		}
+		return file.resolveSibling(name + extension);
+	}
+	
+	/**Method: toBinary(Path, Path)
+	 * Description:
+	 * 		Converts a 3AC text file to a .tacb file, reading it memory-mapped.
+	 * @param text
+	 * @param binary
+	 * @throws IOException
+	 */
+	public static void toBinary(Path text, Path binary) throws IOException{
+		ByteBuffer source;
+		FileChannel in = FileChannel.open(text, StandardOpenOption.READ);
+		try {
+			source = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+		} finally {
+			in.close();
+		}
+		SymbolTable symbols = new SymbolTable();
+		TACBinaryWriter writer = new TACBinaryWriter(symbols, FileChannel.open(binary,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+		try {
+			parse(source, symbols, writer);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**Method: toText(Path, Path)
+	 * Description:
+	 * 		Converts a .tacb file to 3AC text.
+	 * @param binary
+	 * @param text
+	 * @throws IOException
+	 */
+	public static void toText(Path binary, Path text) throws IOException{
+		TACBinaryReader reader = TACBinaryReader.map(binary);
+		TACWriter writer = new TACWriter(reader.symbolTable(), FileChannel.open(text,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+		try {
+			reader.read(writer);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**Method: parse(ByteBuffer, SymbolTable, TACSink)
+	 * Description:
+	 * 		Parses 3AC text in place, from the buffer's position to its limit,
+	 * 		handing the quads to a sink in chunks cut after a MOV, TST, JMP or
+	 * 		LBL, then flushes the sink.
+	 * @param text
+	 * @param symbols	Symbol table receiving the variables, numbers and constants
+	 * @param sink
+	 * @throws IOException	The text is not 3AC, or the sink failed
+	 */
+	public static void parse(ByteBuffer text, SymbolTable symbols, TACSink sink) throws IOException{
+		QuadBuffer chunk = new QuadBuffer(CHUNK + 16);
+		int[] fields = new int[10];	//Start and end of each field
+		int position = text.position();
+		int limit = text.limit();
+		int line = 0;
+		while(position < limit){
+			++line;
+			int end = position;
+			while(end < limit && text.get(end) != '\n'){
+				++end;
+			}
+			int next = end + 1;
+			if(end > position && text.get(end - 1) == '\r'){
+				--end;
+			}
+			
+			//Split on commas, dropping the spaces that follow them
+			int count = 0;
+			int start = position;
+			for(int i = position; i <= end; ++i){
+				if(i == end || text.get(i) == ','){
+					if(count == fields.length / 2){
+						throw new IOException("Line " + line + ": too many fields");
+					}
+					fields[2 * count] = start;
+					fields[2 * count + 1] = i;
+					++count;
+					start = i + 1;
+					while(start < end && text.get(start) == ' '){
+						++start;
+					}
+					i = start - 1;
+				}
+			}
+			position = next;
+			if(count == 1 && fields[1] == fields[0]){
+				continue;	//Empty line
+			}
+			
+			Opcode opcode = count == 1 ? Opcode.LBL : opcode(text, fields[0], fields[1], line);
+			int expected;
+			switch (opcode.form()){
+			case Opcode.BINARY:
+				expected = 4;
+				break;
+			case Opcode.UNARY:
+				expected = 3;
+				break;
+			case Opcode.TEST:
+				expected = 5;
+				break;
+			case Opcode.JUMP:
+				expected = 2;
+				break;
+			default:
+				expected = 1;
+				break;
+			}
+			if(count != expected){
+				throw new IOException("Line " + line + ": " + opcode + " takes " + (expected - 1) + " operands");
+			}
+			switch (opcode.form()){
+			case Opcode.BINARY:
+				chunk.add(opcode, operand(text, fields[2], fields[3], symbols), operand(text, fields[4], fields[5], symbols),
+						operand(text, fields[6], fields[7], symbols));
+				break;
+			case Opcode.UNARY:
+				chunk.add(opcode, operand(text, fields[2], fields[3], symbols), operand(text, fields[4], fields[5], symbols));
+				break;
+			case Opcode.TEST:
+				if(fields[7] - fields[6] != 1 || text.get(fields[6]) < '0' || text.get(fields[6]) > '5'){
+					throw new IOException("Line " + line + ": bad comparison code");
+				}
+				chunk.test(operand(text, fields[2], fields[3], symbols), operand(text, fields[4], fields[5], symbols),
+						text.get(fields[6]) - '0', label(text, fields[8], fields[9], line));
+				break;
+			case Opcode.JUMP:
+				chunk.jump(label(text, fields[2], fields[3], line));
+				break;
+			default:
+				chunk.label(label(text, fields[0], fields[1], line));
+				break;
+			}
+			if(chunk.size() >= CHUNK && (opcode == Opcode.MOV || opcode.form() > Opcode.UNARY)){
+				sink.accept(chunk);
+				chunk.clear();
+			}
+		}
+		if(chunk.size() > 0){
+			sink.accept(chunk);
+		}
+		sink.flush();
+	}
+	
+	/**Method: opcode(ByteBuffer, int, int, int)
+	 * @param text
+	 * @param start	Start of the mnemonic
+	 * @param end	End of the mnemonic
+	 * @param line	Line number, for errors
+	 * @return	The opcode spelled
+	 * @throws IOException	The mnemonic is unknown
+	 */
+	private static Opcode opcode(ByteBuffer text, int start, int end, int line) throws IOException{
+		for(int ordinal = 0; ordinal < Opcode.LBL.ordinal(); ++ordinal){
+			Opcode opcode = Opcode.valueOf(ordinal);
+			byte[] mnemonic = opcode.mnemonic();
+			if(mnemonic.length == end - start && matches(text, start, mnemonic)){
+				return opcode;
+			}
+		}
+		throw new IOException("Line " + line + ": unknown operation");
+	}
+	
+	/**Method: operand(ByteBuffer, int, int, SymbolTable)
+	 * @param text
+	 * @param start		Start of the operand's name
+	 * @param end		End of the operand's name
+	 * @param symbols	Symbol table receiving the symbols and constants
+	 * @return	The operand named
+	 */
+	private static int operand(ByteBuffer text, int start, int end, SymbolTable symbols){
+		int length = end - start;
+		if(length == 0 || length == 4 && matches(text, start, TACWriter.NULL)){
+			return Operand.NONE;
+		}
+		byte first = text.get(start);
+		if(first == 'T' && length > 1 && digits(text, start + 1, end) >= 0){
+			return Operand.make(Operand.TEMP, (int) digits(text, start + 1, end));
+		}
+		if(first == '-' && length > 1 && digits(text, start + 1, end) >= 0){
+			return Operand.make(Operand.CONST, symbols.constants().add(-digits(text, start + 1, end)));
+		}
+		int kind = first >= '0' && first <= '9' ? Operand.NUM : Operand.VAR;
+		return Operand.make(kind, symbols.intern(text, start, length));
+	}
+	
+	/**Method: label(ByteBuffer, int, int, int)
+	 * @param text
+	 * @param start	Start of the label's name
+	 * @param end	End of the label's name
+	 * @param line	Line number, for errors
+	 * @return	The label named
+	 * @throws IOException	The name is not a label's
+	 */
+	private static int label(ByteBuffer text, int start, int end, int line) throws IOException{
+		long number = end - start > 1 && text.get(start) == 'L' ? digits(text, start + 1, end) : -1;
+		if(number < 0 || number > Integer.MAX_VALUE){
+			throw new IOException("Line " + line + ": bad label");
+		}
+		return Operand.make(Operand.LABEL, (int) number);
+	}
+	
+	/**Method: digits(ByteBuffer, int, int)
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return	Value of the decimal digits between start and end, -1 if
+	 * 			there are other characters or the value overflows a long
+	 */
+	private static long digits(ByteBuffer text, int start, int end){
+		long value = 0;
+		for(int i = start; i < end; ++i){
+			int digit = text.get(i) - '0';
+			if(digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10){
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+	
+	/**Method: matches(ByteBuffer, int, byte[])
+	 * @param text
+	 * @param start
+	 * @param bytes
+	 * @return	True if the text at start begins with the bytes
+	 */
+	private static boolean matches(ByteBuffer text, int start, byte[] bytes){
+		for(int i = 0; i < bytes.length; ++i){
+			if(text.get(start + i) != bytes[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,306 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *	Description:
+ *		Reads a .tacb file (see TACBinaryWriter) in place, typically from a
+ *		memory-mapped file. Opening it only checks the header and reads the
+ *		trailer; the tables are read where they lie, by offset, and the
+ *		records are decoded straight from the buffer into the QuadBuffers
+ *		handed to a sink, without copying the file.
+ *
+ *		A reader only reads its buffer, so it can be shared between threads.
+ */
+public class TACBinaryReader {
+	
+	/**
+	 * Number of quads handed to a sink at a time, at most
+	 */
+	private static final int CHUNK = 4096;
+	
+	/**
+	 * The file
+	 */
+	private final ByteBuffer data;
+	
+	/**
+	 * Number of quads
+	 */
+	private final int quads;
+	
+	/**
+	 * Number of symbols
+	 */
+	private final int symbols;
+	
+	/**
+	 * Offset of the offsets of the spellings
+	 */
+	private final int spellingOffsets;
+	
+	/**
+	 * Offset of the spellings
+	 */
+	private final int spellings;
+	
+	/**
+	 * Number of computed constants
+	 */
+	private final int constants;
+	
+	/**
+	 * Offset of the values of the constants
+	 */
+	private final int values;
+	
+	/**
+	 * Number of labels
+	 */
+	private final int labels;
+	
+	/**
+	 * Offset of the label index entries
+	 */
+	private final int labelIndex;
+	
+	/**
+	 * Offset after the last record
+	 */
+	private final int codeEnd;
+	
+	/**Constructor
+	 * @param data	A .tacb file, from its position to its limit
+	 * @throws IOException	The data is not a .tacb file of a known version
+	 */
+	public TACBinaryReader(ByteBuffer data) throws IOException{
+		this.data = data.slice().order(ByteOrder.BIG_ENDIAN);
+		int size = this.data.limit();
+		if(size < TACBinaryWriter.HEADER_SIZE + TACBinaryWriter.TRAILER_SIZE
+				|| this.data.getInt(0) != TACBinaryWriter.MAGIC
+				|| this.data.getInt(size - 4) != TACBinaryWriter.MAGIC){
+			throw new IOException("Not a .tacb file");
+		}
+		if((this.data.get(4) & 0xff) != TACBinaryWriter.VERSION){
+			throw new IOException("Unsupported .tacb version " + (this.data.get(4) & 0xff));
+		}
+		int trailer = size - TACBinaryWriter.TRAILER_SIZE;
+		quads = this.data.getInt(trailer);
+		codeEnd = this.data.getInt(trailer + 4);
+		int constantsOffset = this.data.getInt(trailer + 8);
+		int labelsOffset = this.data.getInt(trailer + 12);
+		if(quads < 0 || codeEnd < TACBinaryWriter.HEADER_SIZE || constantsOffset < codeEnd
+				|| labelsOffset < constantsOffset || labelsOffset > trailer - 4){
+			throw new IOException("Corrupt .tacb trailer");
+		}
+		symbols = this.data.getInt(codeEnd);
+		spellingOffsets = codeEnd + 4;
+		spellings = spellingOffsets + 4 * (symbols + 1);
+		constants = this.data.getInt(constantsOffset);
+		values = constantsOffset + 4;
+		labels = this.data.getInt(labelsOffset);
+		labelIndex = labelsOffset + 4;
+		if(symbols < 0 || spellings > constantsOffset || constants < 0
+				|| values + 8L * constants > labelsOffset
+				|| labels < 0 || labelIndex + 4L * labels > trailer){
+			throw new IOException("Corrupt .tacb tables");
+		}
+	}
+	
+	/**Method: map(Path)
+	 * Description:
+	 * 		Maps a .tacb file into memory, read-only.
+	 * @param file
+	 * @return	A reader of the mapped file
+	 * @throws IOException	The file cannot be mapped or is not a .tacb file
+	 */
+	public static TACBinaryReader map(Path file) throws IOException{
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new TACBinaryReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			channel.close();	//The mapping stays valid
+		}
+	}
+	
+	/**Method: quads(void)
+	 * @return	Number of quads
+	 */
+	public int quads(){
+		return quads;
+	}
+	
+	/**Method: symbols(void)
+	 * @return	Number of symbols
+	 */
+	public int symbols(){
+		return symbols;
+	}
+	
+	/**Method: name(int)
+	 * @param id	Symbol ID
+	 * @return	Spelling of the symbol
+	 */
+	public String name(int id){
+		int start = data.getInt(spellingOffsets + 4 * id);
+		int end = data.getInt(spellingOffsets + 4 * id + 4);
+		byte[] spelling = new byte[end - start];
+		for(int i = 0; i < spelling.length; ++i){
+			spelling[i] = data.get(spellings + start + i);
+		}
+		return new String(spelling, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**Method: constants(void)
+	 * @return	Number of computed constants
+	 */
+	public int constants(){
+		return constants;
+	}
+	
+	/**Method: constant(int)
+	 * @param index	Index of a computed constant
+	 * @return	Its value
+	 */
+	public long constant(int index){
+		return data.getLong(values + 8 * index);
+	}
+	
+	/**Method: labels(void)
+	 * @return	Number of labels
+	 */
+	public int labels(){
+		return labels;
+	}
+	
+	/**Method: labelQuad(int)
+	 * @param label	Label number
+	 * @return	Index of the quad placing the label, -1 if it is never placed
+	 */
+	public int labelQuad(int label){
+		return label < labels ? data.getInt(labelIndex + 4 * label) : -1;
+	}
+	
+	/**Method: symbolTable(void)
+	 * Description:
+	 * 		Builds a symbol table holding the symbols and constants of the
+	 * 		file under the same IDs and indexes, so that TACWriter,
+	 * 		TACMachine or the optimization passes can use the quads read.
+	 * @return	A new symbol table
+	 * @throws IOException	The file has a symbol twice
+	 */
+	public SymbolTable symbolTable() throws IOException{
+		SymbolTable table = new SymbolTable();
+		for(int id = 0; id < symbols; ++id){
+			int start = data.getInt(spellingOffsets + 4 * id);
+			int end = data.getInt(spellingOffsets + 4 * id + 4);
+			if(table.intern(data, spellings + start, end - start) != id){
+				throw new IOException("Duplicate symbol in .tacb file: " + name(id));
+			}
+		}
+		ConstantPool pool = table.constants();
+		for(int index = 0; index < constants; ++index){
+			if(pool.add(constant(index)) != index){
+				throw new IOException("Duplicate constant in .tacb file: " + constant(index));
+			}
+		}
+		return table;
+	}
+	
+	/**Method: read(TACSink)
+	 * Description:
+	 * 		Decodes the quads and hands them to a sink in chunks, cut after a
+	 * 		MOV, TST, JMP or LBL so that no temp lives across two chunks,
+	 * 		then flushes the sink.
+	 * @param sink	Sink of the quads, whose operands refer to symbolTable()
+	 * @throws IOException	The sink failed or a record is corrupt
+	 */
+	public void read(TACSink sink) throws IOException{
+		QuadBuffer chunk = new QuadBuffer(CHUNK + 16);
+		int position = TACBinaryWriter.HEADER_SIZE;
+		int[] cursor = new int[1];
+		try {
+			for(int i = 0; i < quads; ++i){
+				int first = data.get(position++) & 0xff;
+				cursor[0] = position;
+				int code = first & 0x0f;
+				if(code > Opcode.LBL.ordinal()){
+					throw new IOException("Corrupt .tacb record " + i);
+				}
+				Opcode opcode = Opcode.valueOf(code);
+				switch (opcode.form()){
+				case Opcode.LABEL:
+					chunk.label(Operand.make(Operand.LABEL, varint(cursor)));
+					break;
+				case Opcode.JUMP:
+					chunk.jump(Operand.make(Operand.LABEL, varint(cursor)));
+					break;
+				case Opcode.TEST:
+					int arg1 = operand(varint(cursor));
+					int arg2 = operand(varint(cursor));
+					chunk.test(arg1, arg2, first >>> 4, Operand.make(Operand.LABEL, varint(cursor)));
+					break;
+				case Opcode.UNARY:
+					int arg = operand(varint(cursor));
+					chunk.add(opcode, arg, operand(varint(cursor)));
+					break;
+				default:
+					int left = operand(varint(cursor));
+					int right = operand(varint(cursor));
+					chunk.add(opcode, left, right, operand(varint(cursor)));
+					break;
+				}
+				position = cursor[0];
+				if(chunk.size() >= CHUNK && (opcode == Opcode.MOV || opcode.form() > Opcode.UNARY)){
+					sink.accept(chunk);
+					chunk.clear();
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt .tacb code", e);
+		}
+		if(position != codeEnd){
+			throw new IOException("Corrupt .tacb code");
+		}
+		if(chunk.size() > 0){
+			sink.accept(chunk);
+		}
+		sink.flush();
+	}
+	
+	/**Method: varint(int[])
+	 * @param cursor	Position of the varint, moved past it
+	 * @return	The unsigned varint
+	 */
+	private int varint(int[] cursor){
+		int position = cursor[0];
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = data.get(position++);
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while(b < 0);
+		cursor[0] = position;
+		return value;
+	}
+	
+	/**Method: operand(int)
+	 * @param encoded	Operand as written in a record
+	 * @return	The operand
+	 */
+	private static int operand(int encoded){
+		if(encoded == 0){
+			return Operand.NONE;
+		}
+		--encoded;
+		return Operand.make(encoded & (1 << TACBinaryWriter.KIND_BITS) - 1, encoded >>> TACBinaryWriter.KIND_BITS);
+	}
+}
@@ -0,0 +1,397 @@
+package edu.utt.wallace.syntax;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Serializes 3AC instructions in the compact binary .tacb format,
+ *		which TACBinaryReader loads straight from a memory-mapped file.
+ *		Like TACWriter, records are buffered and written out in large
+ *		blocks as the chunks arrive; the tables follow when the program
+ *		ends, so a stream is enough and the code never has to be held.
+ *
+ *		Layout (integers are big-endian, offsets are from the start of the
+ *		file, so a file is at most 2GB):
+ *			header		"TACB", version byte, 3 bytes of 0
+ *			code		one record per quad, see below
+ *			symbols		u4 count, u4 offset of each spelling relative to the
+ *						end of the offsets and one past the last, the spellings
+ *			constants	u4 count, i8 value of each computed constant
+ *			labels		u4 count, then the u4 index of the LBL quad of each
+ *						label, -1 if it is never placed
+ *			trailer		u4 quads, u4 offsets of the symbols, constants and
+ *						labels, "TACB"
+ *
+ *		A record is the opcode's ordinal in one byte (with the comparison
+ *		code of a TST in bits 4 to 6) followed by its operands as unsigned
+ *		varints, 7 bits per byte, low bits first:
+ *			BINARY	arg1, arg2, result
+ *			UNARY	arg1, result
+ *			TEST	arg1, arg2, label number
+ *			JUMP	label number
+ *			LABEL	label number
+ *		An operand is written as (index << 3 | kind) + 1, and 0 when it is
+ *		missing. Symbol IDs index the symbols table and CONST operands the
+ *		constants table.
+ *
+ *		A writer is not thread-safe.
+ */
+public class TACBinaryWriter implements TACSink, Flushable, Closeable {
+	
+	/**
+	 * First and last four bytes of a .tacb file, "TACB"
+	 */
+	static final int MAGIC = 0x54414342;
+	
+	/**
+	 * Version of the format
+	 */
+	static final int VERSION = 1;
+	
+	/**
+	 * Size of the header
+	 */
+	static final int HEADER_SIZE = 8;
+	
+	/**
+	 * Size of the trailer
+	 */
+	static final int TRAILER_SIZE = 20;
+	
+	/**
+	 * Bits of an operand holding its kind
+	 */
+	static final int KIND_BITS = 3;
+	
+	/**
+	 * Symbol table of the variables and numbers
+	 */
+	private SymbolTable symbols;
+	
+	/**
+	 * Output stream, null when writing to a channel
+	 */
+	private OutputStream stream;
+	
+	/**
+	 * Output channel, null when writing to a stream
+	 */
+	private WritableByteChannel channel;
+	
+	/**
+	 * Buffered output
+	 */
+	private final byte[] buffer = new byte[TACWriter.DEFAULT_BUFFER_SIZE];
+	
+	/**
+	 * Buffer view of buffer, for channels
+	 */
+	private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+	
+	/**
+	 * Number of bytes in buffer
+	 */
+	private int position;
+	
+	/**
+	 * Bytes of the current file written out of the buffer
+	 */
+	private long written;
+	
+	/**
+	 * Whether the header of the current file was written
+	 */
+	private boolean started;
+	
+	/**
+	 * Number of quads written
+	 */
+	private int quads;
+	
+	/**
+	 * Index of the LBL quad of each label, -1 if not placed
+	 */
+	private int[] labelQuads = new int[16];
+	
+	/**
+	 * Number of labels seen, placed or jumped to
+	 */
+	private int labels;
+	
+	/**Constructor
+	 * @param symbols	Symbol table of the operands
+	 * @param stream	Stream to write the .tacb to
+	 */
+	public TACBinaryWriter(SymbolTable symbols, OutputStream stream){
+		this.symbols = symbols;
+		this.stream = stream;
+	}
+	
+	/**Constructor
+	 * @param symbols	Symbol table of the operands
+	 * @param channel	Channel to write the .tacb to
+	 */
+	public TACBinaryWriter(SymbolTable symbols, WritableByteChannel channel){
+		this.symbols = symbols;
+		this.channel = channel;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Encodes the chunk into the buffer.
+	 */
+	@Override
+	public void accept(QuadBuffer quads) throws IOException{
+		start();
+		int size = quads.size();
+		for(int i = 0; i < size; ++i){
+			instruction(quads, i);
+		}
+	}
+	
+	/**Method: instruction(QuadBuffer, int)
+	 * Description:
+	 * 		Encodes one instruction.
+	 * @param quads
+	 * @param i		Index of the instruction
+	 * @throws IOException
+	 */
+	private void instruction(QuadBuffer quads, int i) throws IOException{
+		ensure(1 + 3 * 5);
+		Opcode opcode = quads.opcode(i);
+		switch (opcode.form()){
+		case Opcode.LABEL:
+			int label = label(quads.result(i));
+			labelQuads[label] = this.quads;
+			buffer[position++] = (byte) opcode.ordinal();
+			varint(label);
+			break;
+		case Opcode.JUMP:
+			buffer[position++] = (byte) opcode.ordinal();
+			varint(label(quads.result(i)));
+			break;
+		case Opcode.TEST:
+			buffer[position++] = (byte) (opcode.ordinal() | quads.comparison(i) << 4);
+			varint(operand(quads.arg1(i)));
+			varint(operand(quads.arg2(i)));
+			varint(label(quads.result(i)));
+			break;
+		case Opcode.UNARY:
+			buffer[position++] = (byte) opcode.ordinal();
+			varint(operand(quads.arg1(i)));
+			varint(operand(quads.result(i)));
+			break;
+		default:
+			buffer[position++] = (byte) opcode.ordinal();
+			varint(operand(quads.arg1(i)));
+			varint(operand(quads.arg2(i)));
+			varint(operand(quads.result(i)));
+			break;
+		}
+		++this.quads;
+	}
+	
+	/**Method: operand(int)
+	 * @param operand
+	 * @return	Encoding of the operand
+	 */
+	private static int operand(int operand){
+		if(operand == Operand.NONE){
+			return 0;
+		}
+		return (Operand.index(operand) << KIND_BITS | Operand.kind(operand)) + 1;
+	}
+	
+	/**Method: label(int)
+	 * Description:
+	 * 		Makes room for a label in the label index.
+	 * @param operand	The label
+	 * @return	Its number
+	 */
+	private int label(int operand){
+		int label = Operand.index(operand);
+		if(label >= labelQuads.length){
+			labelQuads = Arrays.copyOf(labelQuads, Math.max(label + 1, labelQuads.length * 2));
+		}
+		while(labels <= label){
+			labelQuads[labels++] = -1;
+		}
+		return label;
+	}
+	
+	/**Method: varint(int)
+	 * Description:
+	 * 		Appends an unsigned varint; the caller made room for 5 bytes.
+	 * @param value
+	 */
+	private void varint(int value){
+		while((value & ~0x7f) != 0){
+			buffer[position++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+	
+	/**Method: u4(int)
+	 * @param value	Int to append
+	 * @throws IOException
+	 */
+	private void u4(int value) throws IOException{
+		ensure(4);
+		buffer[position++] = (byte) (value >>> 24);
+		buffer[position++] = (byte) (value >>> 16);
+		buffer[position++] = (byte) (value >>> 8);
+		buffer[position++] = (byte) value;
+	}
+	
+	/**Method: start(void)
+	 * Description:
+	 * 		Writes the header if the file was not started yet.
+	 * @throws IOException
+	 */
+	private void start() throws IOException{
+		if(!started){
+			started = true;
+			u4(MAGIC);
+			u4(VERSION << 24);
+		}
+	}
+	
+	/**Method: offset(void)
+	 * @return	Offset in the file of the next byte
+	 * @throws IOException	The file would exceed 2GB
+	 */
+	private int offset() throws IOException{
+		long offset = written + position;
+		if(offset > Integer.MAX_VALUE){
+			throw new IOException("The .tacb file would exceed 2GB");
+		}
+		return (int) offset;
+	}
+	
+	/**Method: ensure(int)
+	 * Description:
+	 * 		Makes room for the given number of bytes, writing the buffer out if needed.
+	 * @param length	At most the size of the buffer
+	 * @throws IOException
+	 */
+	private void ensure(int length) throws IOException{
+		if(position + length > buffer.length){
+			flushBuffer();
+		}
+	}
+	
+	/**Method: write(byte[])
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void write(byte[] bytes) throws IOException{
+		for(int i = 0; i < bytes.length; ){
+			ensure(1);
+			int length = Math.min(bytes.length - i, buffer.length - position);
+			System.arraycopy(bytes, i, buffer, position, length);
+			position += length;
+			i += length;
+		}
+	}
+	
+	/**Method: flushBuffer(void)
+	 * Description:
+	 * 		Writes the buffered bytes out, without flushing the stream.
+	 * @throws IOException
+	 */
+	private void flushBuffer() throws IOException{
+		if(position > 0){
+			if(channel != null){
+				wrapper.clear().limit(position);
+				while(wrapper.hasRemaining()){
+					channel.write(wrapper);
+				}
+			}else{
+				stream.write(buffer, 0, position);
+			}
+			written += position;
+			position = 0;
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Ends the file with its tables and trailer, writes it out and
+	 * flushes the stream. Quads accepted afterwards start a new file.
+	 */
+	@Override
+	public void flush() throws IOException{
+		start();
+		
+		int symbolsOffset = offset();
+		int count = symbols.size();
+		u4(count);
+		int end = 0;
+		u4(end);
+		for(int id = 0; id < count; ++id){
+			end += symbols.spelling(id).length;
+			u4(end);
+		}
+		for(int id = 0; id < count; ++id){
+			write(symbols.spelling(id));
+		}
+		
+		int constantsOffset = offset();
+		ConstantPool constants = symbols.constants();
+		u4(constants.size());
+		for(int index = 0; index < constants.size(); ++index){
+			long value = constants.value(index);
+			u4((int) (value >>> 32));
+			u4((int) value);
+		}
+		
+		int labelsOffset = offset();
+		u4(labels);
+		for(int label = 0; label < labels; ++label){
+			u4(labelQuads[label]);
+		}
+		
+		u4(quads);
+		u4(symbolsOffset);
+		u4(constantsOffset);
+		u4(labelsOffset);
+		u4(MAGIC);
+		offset();
+		
+		flushBuffer();
+		if(stream != null){
+			stream.flush();
+		}
+		started = false;
+		written = 0;
+		quads = 0;
+		labels = 0;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 * Writes out what is buffered, then closes the stream or channel.
+	 */
+	@Override
+	public void close() throws IOException{
+		try {
+			flushBuffer();
+		} finally {
+			if(channel != null){
+				channel.close();
+			}else{
+				stream.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,696 @@
+package edu.utt.wallace.syntax;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *	Description:
+ *		Compiles a program's 3AC into a JVM class implementing TACProgram,
+ *		which is then loaded as a hidden class so that HotSpot compiles it
+ *		like any other method. Its run(long[]) method copies the variables
+ *		into long locals, gives a local to every temp, branches natively for
+ *		TST and JMP, calls TACRuntime.pow for EXP and writes the variables
+ *		back when the program ends. Number literals and computed constants
+ *		are inlined.
+ *
+ *		The class file is written by hand, with only the constant pool
+ *		entries and the StackMapTable frames the method needs: since every
+ *		local is initialized on entry, all the frames are the same.
+ *
+ *		A method's bytecode is limited to 64KB and its branches to 32KB, so
+ *		only programs of a few thousand quads can be compiled. HotSpot also
+ *		leaves methods over 8000 bytes interpreted by default
+ *		(-XX:-DontCompileHugeMethods lifts this); TACMachine is the better
+ *		choice for such programs.
+ */
+public class TACClassWriter {
+	
+	/*
+	 * JVM opcodes used by the generated code
+	 */
+	private static final int LCONST_0 = 0x09;
+	private static final int LCONST_1 = 0x0a;
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC2_W = 0x14;
+	private static final int LLOAD = 0x16;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int LALOAD = 0x2f;
+	private static final int LSTORE = 0x37;
+	private static final int LASTORE = 0x50;
+	private static final int LADD = 0x61;
+	private static final int LSUB = 0x65;
+	private static final int LMUL = 0x69;
+	private static final int LDIV = 0x6d;
+	private static final int LREM = 0x71;
+	private static final int LNEG = 0x75;
+	private static final int LCMP = 0x94;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IFLT = 0x9b;
+	private static final int IFGE = 0x9c;
+	private static final int IFGT = 0x9d;
+	private static final int IFLE = 0x9e;
+	private static final int GOTO = 0xa7;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int WIDE = 0xc4;
+	
+	/**
+	 * Branch taken by each TST, by comparison code
+	 */
+	private static final int[] BRANCHES = {IFEQ, IFLT, IFLE, IFGT, IFGE, IFNE};
+	
+	/**
+	 * Name of the generated class, which must be in this package
+	 */
+	private static final String CLASS_NAME = "edu/utt/wallace/syntax/CompiledTAC";
+	
+	/**
+	 * Class file version, Java 17
+	 */
+	private static final int VERSION = 61;
+	
+	/**
+	 * Bytes of the class file
+	 */
+	private final byte[] bytes;
+	
+	/**
+	 * Names of the variables, indexed by slot
+	 */
+	private final String[] names;
+	
+	/**
+	 * Slots of the variables, by name
+	 */
+	private final Map<String, Integer> slots;
+	
+	/**Constructor
+	 * Compiles a program to a class file.
+	 * @param quads		3AC of the whole program
+	 * @param symbols	Symbol table of its operands
+	 * @throws IllegalArgumentException	An operand is missing (the program
+	 * 			has syntax errors), a number does not fit a long or the
+	 * 			program is too large for a method
+	 */
+	public TACClassWriter(QuadBuffer quads, SymbolTable symbols){
+		int size = quads.size();
+		
+		//Slots: variables first, then temps
+		TACMachine.Slots layout = new TACMachine.Slots();
+		for(int i = 0; i < size; ++i){
+			if(quads.opcode(i).form() != Opcode.JUMP && quads.opcode(i).form() != Opcode.LABEL){
+				layout.variable(quads.arg1(i));
+				layout.variable(quads.arg2(i));
+				layout.variable(quads.result(i));
+			}
+		}
+		int variables = layout.count;
+		names = new String[variables];
+		slots = new HashMap<String, Integer>();
+		for(int id = 0; id < layout.symbols.length; ++id){
+			int slot = layout.symbols[id] - 1;
+			if(slot >= 0 && slot < variables){
+				names[slot] = symbols.name(id);
+				slots.put(names[slot], slot);
+			}
+		}
+		for(int i = 0; i < size; ++i){
+			int form = quads.opcode(i).form();
+			if(form != Opcode.JUMP && form != Opcode.LABEL){
+				reserve(quads.arg1(i), layout, symbols, i);
+				if(form != Opcode.UNARY){
+					reserve(quads.arg2(i), layout, symbols, i);
+				}
+				if(form != Opcode.TEST){
+					reserve(quads.result(i), layout, symbols, i);
+				}
+			}
+		}
+		if(2 + 2 * layout.count > 0xffff){
+			throw new IllegalArgumentException("Too many variables and temps for a method");
+		}
+		
+		ClassFile file = new ClassFile();
+		Bytes code = file.code;
+		
+		//Prologue: load the variables, clear the temps
+		for(int slot = 0; slot < layout.count; ++slot){
+			if(slot < variables){
+				code.u1(ALOAD_1);
+				pushInt(code, slot);
+				code.u1(LALOAD);
+			}else{
+				code.u1(LCONST_0);
+			}
+			local(code, LSTORE, slot);
+		}
+		
+		//Body
+		int[] labels = new int[16];			//Offset plus one of each label, 0 if unplaced
+		int[] branches = new int[16];		//Offset of each branch
+		int[] targets = new int[16];		//Label of each branch
+		int branchCount = 0;
+		int[] frames = new int[16];			//Offsets needing a frame
+		int frameCount = 0;
+		for(int i = 0; i < size; ++i){
+			Opcode opcode = quads.opcode(i);
+			int label = Operand.index(quads.result(i));
+			switch (opcode){
+			case LBL:
+				labels = TACMachine.Slots.ensure(labels, label);
+				labels[label] = code.size() + 1;
+				frames = add(frames, frameCount++, code.size());
+				continue;
+			case JMP:
+			case TST:
+				if(opcode == Opcode.TST){
+					load(file, quads.arg1(i), layout, symbols, i);
+					load(file, quads.arg2(i), layout, symbols, i);
+					code.u1(LCMP);
+				}
+				branches = add(branches, branchCount, code.size());
+				targets = add(targets, branchCount++, label);
+				code.u1(opcode == Opcode.JMP ? GOTO : BRANCHES[quads.comparison(i)]);
+				code.u2(0);
+				if(opcode == Opcode.JMP){
+					frames = add(frames, frameCount++, code.size());
+				}
+				continue;
+			default:
+				break;
+			}
+			load(file, quads.arg1(i), layout, symbols, i);
+			if(opcode.form() != Opcode.UNARY){
+				load(file, quads.arg2(i), layout, symbols, i);
+			}
+			switch (opcode){
+			case ADD:
+				code.u1(LADD);
+				break;
+			case SUB:
+				code.u1(LSUB);
+				break;
+			case MUL:
+				code.u1(LMUL);
+				break;
+			case DVD:
+			case DIV:
+				code.u1(LDIV);
+				break;
+			case MOD:
+				code.u1(LREM);
+				break;
+			case EXP:
+				code.u1(INVOKESTATIC);
+				code.u2(file.method("edu/utt/wallace/syntax/TACRuntime", "pow", "(JJ)J"));
+				break;
+			case NEG:
+				code.u1(LNEG);
+				break;
+			default:	//MOV, PLS
+				break;
+			}
+			local(code, LSTORE, layout.slot(quads.result(i), symbols, i));
+		}
+		
+		//Epilogue: store the variables
+		int exit = code.size();
+		frames = add(frames, frameCount++, exit);
+		for(int slot = 0; slot < variables; ++slot){
+			code.u1(ALOAD_1);
+			pushInt(code, slot);
+			local(code, LLOAD, slot);
+			code.u1(LASTORE);
+		}
+		code.u1(RETURN);
+		if(code.size() > 0xffff){
+			throw new IllegalArgumentException("Program too large for a method: " + code.size() + " bytes");
+		}
+		for(int b = 0; b < branchCount; ++b){
+			int label = targets[b];
+			int target = label < labels.length && labels[label] > 0 ? labels[label] - 1 : exit;
+			int offset = target - branches[b];
+			if(offset != (short) offset){
+				throw new IllegalArgumentException("Program too large for a method: branch of " + offset + " bytes");
+			}
+			code.set2(branches[b] + 1, offset);
+		}
+		
+		bytes = file.write(layout.count, frames, frameCount);
+	}
+	
+	/**Method: reserve(int, TACMachine.Slots, SymbolTable, int)
+	 * Description:
+	 * 		Checks an operand and gives it a slot if it is a temp, so that
+	 * 		every local is known before the code is written.
+	 * @param operand
+	 * @param layout	Slots of the variables and temps
+	 * @param symbols
+	 * @param i		Index of the instruction, for errors
+	 */
+	private static void reserve(int operand, TACMachine.Slots layout, SymbolTable symbols, int i){
+		check(operand, symbols, i);
+		if(Operand.kind(operand) == Operand.TEMP){
+			layout.slot(operand, symbols, i);
+		}
+	}
+	
+	/**Method: check(int, SymbolTable, int)
+	 * Description:
+	 * 		Checks that an operand is present and fits a long.
+	 * @param operand
+	 * @param symbols
+	 * @param i		Index of the instruction, for errors
+	 * @throws IllegalArgumentException	The operand is missing or does not fit a long
+	 */
+	private static void check(int operand, SymbolTable symbols, int i){
+		if(operand == Operand.NONE){
+			throw new IllegalArgumentException("Missing operand in instruction " + i);
+		}
+		if(Operand.kind(operand) == Operand.NUM && !symbols.hasValue(operand)){
+			throw new IllegalArgumentException("Number too large in instruction " + i + ": "
+					+ symbols.name(Operand.index(operand)));
+		}
+	}
+	
+	/**Method: load(ClassFile, int, TACMachine.Slots, SymbolTable, int)
+	 * Description:
+	 * 		Pushes the value of an operand.
+	 * @param file		Class being written
+	 * @param operand
+	 * @param layout	Slots of the variables and temps
+	 * @param symbols
+	 * @param i		Index of the instruction, for errors
+	 */
+	private static void load(ClassFile file, int operand, TACMachine.Slots layout, SymbolTable symbols, int i){
+		Bytes code = file.code;
+		check(operand, symbols, i);
+		switch (Operand.kind(operand)){
+		case Operand.NUM:
+		case Operand.CONST:
+			long value = symbols.value(operand);
+			if(value == 0 || value == 1){
+				code.u1(value == 0 ? LCONST_0 : LCONST_1);
+			}else{
+				code.u1(LDC2_W);
+				code.u2(file.constant(value));
+			}
+			break;
+		default:
+			local(code, LLOAD, layout.slot(operand, symbols, i));
+			break;
+		}
+	}
+	
+	/**Method: local(Bytes, int, int)
+	 * Description:
+	 * 		Loads or stores the local of a slot. Local 0 is this, local 1 the
+	 * 		array of variables, and each slot takes two locals from 2 up.
+	 * @param code
+	 * @param opcode	LLOAD or LSTORE
+	 * @param slot
+	 */
+	private static void local(Bytes code, int opcode, int slot){
+		int local = 2 + 2 * slot;
+		if(local <= 0xff){
+			code.u1(opcode);
+			code.u1(local);
+		}else{
+			code.u1(WIDE);
+			code.u1(opcode);
+			code.u2(local);
+		}
+	}
+	
+	/**Method: pushInt(Bytes, int)
+	 * @param code
+	 * @param value	An int from 0 to 32767
+	 */
+	private static void pushInt(Bytes code, int value){
+		if(value <= 5){
+			code.u1(ICONST_0 + value);
+		}else if(value <= Byte.MAX_VALUE){
+			code.u1(BIPUSH);
+			code.u1(value);
+		}else{
+			code.u1(SIPUSH);
+			code.u2(value);
+		}
+	}
+	
+	/**Method: add(int[], int, int)
+	 * @param array
+	 * @param count	Number of values in the array
+	 * @param value	Value to append
+	 * @return	The array, grown if needed, with the value at count
+	 */
+	private static int[] add(int[] array, int count, int value){
+		if(count == array.length){
+			array = Arrays.copyOf(array, count * 2);
+		}
+		array[count] = value;
+		return array;
+	}
+	
+	/**Method: variables(void)
+	 * @return	Number of variables, the length of the arrays run by the program
+	 */
+	public int variables(){
+		return names.length;
+	}
+	
+	/**Method: name(int)
+	 * @param slot	Slot of a variable
+	 * @return	Its name
+	 */
+	public String name(int slot){
+		return names[slot];
+	}
+	
+	/**Method: slot(String)
+	 * @param variable
+	 * @return	Slot of the variable, -1 if the program does not use it
+	 */
+	public int slot(String variable){
+		Integer slot = slots.get(variable);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**Method: toByteArray(void)
+	 * @return	A copy of the class file
+	 */
+	public byte[] toByteArray(){
+		return bytes.clone();
+	}
+	
+	/**Method: load(void)
+	 * Description:
+	 * 		Defines the class as a hidden class of this package, which is
+	 * 		unloaded once the program is no longer referenced.
+	 * @return	A new instance of the program
+	 */
+	public TACProgram load(){
+		try{
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			return (TACProgram) lookup.lookupClass().getConstructor().newInstance();
+		}catch(ReflectiveOperationException e){
+			throw new IllegalStateException("Cannot load the compiled program", e);
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Growable byte array written big-endian, as in class files.
+	 */
+	private static class Bytes {
+		
+		/**
+		 * Bytes written
+		 */
+		byte[] data = new byte[256];
+		
+		/**
+		 * Number of bytes written
+		 */
+		int size;
+		
+		/**Method: u1(int)
+		 * @param value	Byte to append
+		 */
+		void u1(int value){
+			if(size == data.length){
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = (byte) value;
+		}
+		
+		/**Method: u2(int)
+		 * @param value	Short to append
+		 */
+		void u2(int value){
+			u1(value >>> 8);
+			u1(value);
+		}
+		
+		/**Method: u4(int)
+		 * @param value	Int to append
+		 */
+		void u4(int value){
+			u2(value >>> 16);
+			u2(value);
+		}
+		
+		/**Method: set2(int, int)
+		 * @param position	Where to write
+		 * @param value		Short to write over the bytes there
+		 */
+		void set2(int position, int value){
+			data[position] = (byte) (value >>> 8);
+			data[position + 1] = (byte) value;
+		}
+		
+		/**Method: append(Bytes)
+		 * @param bytes	Bytes to append
+		 */
+		void append(Bytes bytes){
+			for(int i = 0; i < bytes.size; ++i){
+				u1(bytes.data[i]);
+			}
+		}
+		
+		/**Method: size(void)
+		 * @return	Number of bytes written
+		 */
+		int size(){
+			return size;
+		}
+	}
+	
+	/**
+	 *	Description:
+	 *		Constant pool of the generated class, and the writing of the
+	 *		class around the code of run(long[]).
+	 */
+	private static class ClassFile {
+		
+		/**
+		 * Entries of the constant pool
+		 */
+		final Bytes pool = new Bytes();
+		
+		/**
+		 * Code of run(long[])
+		 */
+		final Bytes code = new Bytes();
+		
+		/**
+		 * Index of the next entry
+		 */
+		int next = 1;
+		
+		/**
+		 * Indexes of the entries already written, by kind and contents
+		 */
+		final Map<String, Integer> entries = new HashMap<String, Integer>();
+		
+		/**Method: utf8(String)
+		 * @param text	ASCII text
+		 * @return	Index of a CONSTANT_Utf8 entry
+		 */
+		int utf8(String text){
+			Integer index = entries.get("U" + text);
+			if(index == null){
+				pool.u1(1);
+				pool.u2(text.length());
+				for(int i = 0; i < text.length(); ++i){
+					pool.u1(text.charAt(i));
+				}
+				index = entry("U" + text, 1);
+			}
+			return index;
+		}
+		
+		/**Method: type(String)
+		 * @param name	Internal name of a class
+		 * @return	Index of a CONSTANT_Class entry
+		 */
+		int type(String name){
+			Integer index = entries.get("C" + name);
+			if(index == null){
+				int utf8 = utf8(name);
+				pool.u1(7);
+				pool.u2(utf8);
+				index = entry("C" + name, 1);
+			}
+			return index;
+		}
+		
+		/**Method: method(String, String, String)
+		 * @param owner			Internal name of the class
+		 * @param name			Name of the method
+		 * @param descriptor	Descriptor of the method
+		 * @return	Index of a CONSTANT_Methodref entry
+		 */
+		int method(String owner, String name, String descriptor){
+			String key = "M" + owner + "." + name + descriptor;
+			Integer index = entries.get(key);
+			if(index == null){
+				int type = type(owner);
+				int nameIndex = utf8(name);
+				int descriptorIndex = utf8(descriptor);
+				pool.u1(12);	//CONSTANT_NameAndType
+				pool.u2(nameIndex);
+				pool.u2(descriptorIndex);
+				int nameAndType = entry("N" + name + descriptor, 1);
+				pool.u1(10);
+				pool.u2(type);
+				pool.u2(nameAndType);
+				index = entry(key, 1);
+			}
+			return index;
+		}
+		
+		/**Method: constant(long)
+		 * @param value
+		 * @return	Index of a CONSTANT_Long entry
+		 */
+		int constant(long value){
+			String key = "J" + value;
+			Integer index = entries.get(key);
+			if(index == null){
+				pool.u1(5);
+				pool.u4((int) (value >>> 32));
+				pool.u4((int) value);
+				index = entry(key, 2);	//A long takes two entries
+			}
+			return index;
+		}
+		
+		/**Method: entry(String, int)
+		 * @param key	Kind and contents of the entry just written
+		 * @param width	Number of indexes it takes
+		 * @return	Its index
+		 */
+		int entry(String key, int width){
+			int index = next;
+			next += width;
+			entries.put(key, index);
+			return index;
+		}
+		
+		/**Method: write(int, int[], int)
+		 * @param slots		Number of variables and temps
+		 * @param frames	Offsets needing a stack map frame, in order
+		 * @param count		Number of offsets
+		 * @return	The class file
+		 */
+		byte[] write(int slots, int[] frames, int count){
+			int thisClass = type(CLASS_NAME);
+			int superClass = type("java/lang/Object");
+			int program = type("edu/utt/wallace/syntax/TACProgram");
+			int array = type("[J");
+			int objectInit = method("java/lang/Object", "<init>", "()V");
+			int init = utf8("<init>");
+			int initDescriptor = utf8("()V");
+			int run = utf8("run");
+			int runDescriptor = utf8("([J)V");
+			int codeName = utf8("Code");
+			int stackMapTable = utf8("StackMapTable");
+			
+			//Every frame has the same locals and an empty stack: the first
+			//is a full frame, the others same frames
+			Bytes table = new Bytes();
+			int written = 0;
+			int last = -1;
+			for(int f = 0; f < count; ++f){
+				if(frames[f] == last){
+					continue;
+				}
+				int delta = last < 0 ? frames[f] : frames[f] - last - 1;
+				if(last < 0){
+					table.u1(255);	//full_frame
+					table.u2(delta);
+					table.u2(2 + slots);
+					table.u1(7);		//Object_variable_info
+					table.u2(thisClass);
+					table.u1(7);
+					table.u2(array);
+					for(int slot = 0; slot < slots; ++slot){
+						table.u1(4);	//Long_variable_info
+					}
+					table.u2(0);
+				}else if(delta < 64){
+					table.u1(delta);	//same_frame
+				}else{
+					table.u1(251);	//same_frame_extended
+					table.u2(delta);
+				}
+				last = frames[f];
+				++written;
+			}
+			
+			Bytes file = new Bytes();
+			file.u4(0xcafebabe);
+			file.u2(0);
+			file.u2(VERSION);
+			file.u2(next);
+			file.append(pool);
+			file.u2(0x0011);	//ACC_PUBLIC | ACC_FINAL
+			file.u2(thisClass);
+			file.u2(superClass);
+			file.u2(1);
+			file.u2(program);
+			file.u2(0);			//Fields
+			file.u2(2);			//Methods
+			
+			//public <init>()
+			file.u2(0x0001);
+			file.u2(init);
+			file.u2(initDescriptor);
+			file.u2(1);
+			file.u2(codeName);
+			file.u4(17);
+			file.u2(1);			//Max stack
+			file.u2(1);			//Max locals
+			file.u4(5);
+			file.u1(ALOAD_0);
+			file.u1(INVOKESPECIAL);
+			file.u2(objectInit);
+			file.u1(RETURN);
+			file.u2(0);			//Exception table
+			file.u2(0);			//Attributes
+			
+			//public void run(long[])
+			file.u2(0x0001);
+			file.u2(run);
+			file.u2(runDescriptor);
+			file.u2(1);
+			file.u2(codeName);
+			file.u4(12 + code.size() + (written > 0 ? 8 + table.size() : 0));
+			file.u2(4);			//Max stack: two longs
+			file.u2(2 + 2 * slots);
+			file.u4(code.size());
+			file.append(code);
+			file.u2(0);			//Exception table
+			if(written > 0){
+				file.u2(1);
+				file.u2(stackMapTable);
+				file.u4(2 + table.size());
+				file.u2(written);
+				file.append(table);
+			}else{
+				file.u2(0);
+			}
+			
+			file.u2(0);			//Class attributes
+			return Arrays.copyOf(file.data, file.size);
+		}
+	}
+}
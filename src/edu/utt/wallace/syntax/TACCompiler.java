@@ -0,0 +1,149 @@
+package edu.utt.wallace.syntax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *	Description:
+ *		In-memory entry point to the compiler. Compiles sources held in a
+ *		CharSequence or a byte array straight to 3AC without any disk I/O.
+ *
+ *		An instance keeps its analyzers and output buffer between calls, so
+ *		repeated compilations reuse them instead of rebuilding everything.
+ *		The symbols are kept from one compilation to the next, so names
+ *		seen before cost nothing to intern again, but they are forgotten
+ *		once the table holds SYMBOL_LIMIT symbols or constants, so a
+ *		long-lived instance does not grow with every name it has seen.
+ *		Instances are not thread-safe; give each thread its own.
+ */
+public class TACCompiler {
+	
+	/**
+	 * Number of symbols, or of constants, past which the symbol table is
+	 * cleared before a compilation
+	 */
+	public static final int SYMBOL_LIMIT = 1 << 16;
+	
+	/**
+	 * Reusable lexical analyzer
+	 */
+	private LexicalAnalyzer lex;
+	
+	/**
+	 * Reusable syntactic analyzer, writing to output
+	 */
+	private SyntacticAnalyzer synt;
+	
+	/**
+	 * Reusable buffer holding the 3AC of the last compilation
+	 */
+	private ByteArrayOutputStream output;
+	
+	/**
+	 * Result of the last compilation
+	 */
+	private boolean valid;
+	
+	/**Constructor
+	 */
+	public TACCompiler(){
+		lex = new LexicalAnalyzer((CharSequence) "");
+		output = new ByteArrayOutputStream(4096);
+		synt = new SyntacticAnalyzer(lex, output);
+	}
+	
+	/**Method: compile(CharSequence)
+	 * Description:
+	 * 		Compiles an in-memory source.
+	 * @param source
+	 * @return	The 3AC of the program, null if it is not syntactically correct
+	 */
+	public String compile(CharSequence source){
+		lex.reset(source);
+		run();
+		return valid ? output.toString(StandardCharsets.ISO_8859_1) : null;
+	}
+	
+	/**Method: compile(byte[])
+	 * Description:
+	 * 		Compiles a source held in a byte array. Each byte is one character
+	 * 		and the array is scanned in place.
+	 * @param source
+	 * @return	The 3AC of the program, null if it is not syntactically correct
+	 */
+	public byte[] compile(byte[] source){
+		lex.reset(ByteBuffer.wrap(source));
+		run();
+		return valid ? output.toByteArray() : null;
+	}
+	
+	/**Method: compile(CharSequence, OutputStream)
+	 * Description:
+	 * 		Compiles an in-memory source and writes its 3AC to a stream.
+	 * 		The 3AC is written even if the program is not syntactically correct.
+	 * @param source
+	 * @param out
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	public boolean compile(CharSequence source, OutputStream out) throws IOException{
+		lex.reset(source);
+		run();
+		output.writeTo(out);
+		return valid;
+	}
+	
+	/**Method: compile(ByteBuffer, OutputStream)
+	 * Description:
+	 * 		Compiles a source held in a byte buffer (such as a memory-mapped
+	 * 		file) and writes its 3AC to a stream. The buffer is scanned in place
+	 * 		from its position to its limit. The 3AC is written even if the
+	 * 		program is not syntactically correct.
+	 * @param source
+	 * @param out
+	 * @return	True if the program is syntactically correct, false otherwise.
+	 * @throws IOException
+	 */
+	public boolean compile(ByteBuffer source, OutputStream out) throws IOException{
+		lex.reset(source);
+		run();
+		output.writeTo(out);
+		return valid;
+	}
+	
+	/**Method: setFolding(boolean)
+	 * Description:
+	 * 		Turns constant folding on or off for the following compilations
+	 * 		(see SyntacticAnalyzer.setFolding(boolean)). Off by default.
+	 * @param folding
+	 */
+	public void setFolding(boolean folding){
+		synt.setFolding(folding);
+	}
+	
+	/**Method: isValid(void)
+	 * @return	True if the last compiled program was syntactically correct
+	 */
+	public boolean isValid(){
+		return valid;
+	}
+	
+	/**Method: run(void)
+	 * Description:
+	 * 		Resets the syntactic analyzer and the output buffer, and the
+	 * 		symbol table if it outgrew SYMBOL_LIMIT, then compiles the source
+	 * 		the lexical analyzer was reset to.
+	 */
+	private void run(){
+		SymbolTable symbols = lex.symbols();
+		if(symbols.size() >= SYMBOL_LIMIT || symbols.constants().size() >= SYMBOL_LIMIT){
+			symbols.clear();
+		}
+		output.reset();
+		synt.reset();
+		valid = synt.analyze();
+	}
+}
@@ -0,0 +1,449 @@
+package edu.utt.wallace.syntax;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *	Description:
+ *		Virtual machine running compiled 3AC. Loading resolves everything
+ *		up front: every variable, temp and constant gets a slot of a long[]
+ *		store (variables first, in order of appearance), labels become
+ *		instruction offsets and disappear, PLS becomes MOV and each TST
+ *		comparison gets an opcode of its own. Running is then a single
+ *		switch loop over an int[] of instructions, without allocation or
+ *		lookups.
+ *
+ *		Arithmetic follows TACRuntime. A jump to a label that is never
+ *		placed ends the program. A machine is immutable once loaded and can
+ *		run any number of stores, from any number of threads.
+ */
+public class TACMachine {
+	
+	/*
+	 * Opcodes of the machine. The jumps come last, the TSTs in the order
+	 * of their comparison codes.
+	 */
+	private static final int MOV = 0;		//Move, also PLS
+	private static final int ADD = 1;		//Add
+	private static final int SUB = 2;		//Subtract
+	private static final int MUL = 3;		//Multiply
+	private static final int DIV = 4;		//Divide, DVD and DIV
+	private static final int MOD = 5;		//Modulus
+	private static final int EXP = 6;		//Exponential
+	private static final int NEG = 7;		//Unary minus
+	private static final int JMP = 8;		//Jump
+	private static final int JEQ = 9;		//Jump if =
+	private static final int JLT = 10;		//Jump if <
+	private static final int JLE = 11;		//Jump if <=
+	private static final int JGT = 12;		//Jump if >
+	private static final int JGE = 13;		//Jump if >=
+	private static final int JNE = 14;		//Jump if <>
+	
+	/**
+	 * Ints per instruction: opcode, arg1 slot, arg2 slot, result slot or target offset
+	 */
+	private static final int WIDTH = 4;
+	
+	/**
+	 * Instructions
+	 */
+	private final int[] code;
+	
+	/**
+	 * Store holding the constants, copied for each run
+	 */
+	private final long[] initial;
+	
+	/**
+	 * Names of the variables, indexed by slot
+	 */
+	private final String[] names;
+	
+	/**
+	 * Slots of the variables, by name
+	 */
+	private final Map<String, Integer> slots;
+	
+	/**Constructor
+	 * Loads a program.
+	 * @param quads		3AC of the whole program
+	 * @param symbols	Symbol table of its operands
+	 * @throws IllegalArgumentException	An operand is missing (the program
+	 * 			has syntax errors) or a number does not fit a long
+	 */
+	public TACMachine(QuadBuffer quads, SymbolTable symbols){
+		int size = quads.size();
+		
+		//Offsets of the labels
+		int[] targets = new int[16];
+		int count = 0;
+		for(int i = 0; i < size; ++i){
+			if(quads.opcode(i) == Opcode.LBL){
+				int label = Operand.index(quads.result(i));
+				if(label >= targets.length){
+					targets = Arrays.copyOf(targets, Math.max(label + 1, targets.length * 2));
+				}
+				targets[label] = count * WIDTH + 1;	//Plus one, 0 is unplaced
+			}else{
+				++count;
+			}
+		}
+		
+		//Slots: variables first, then constants and temps
+		Slots layout = new Slots();
+		for(int i = 0; i < size; ++i){
+			if(quads.opcode(i).form() != Opcode.JUMP && quads.opcode(i).form() != Opcode.LABEL){
+				layout.variable(quads.arg1(i));
+				layout.variable(quads.arg2(i));
+				layout.variable(quads.result(i));
+			}
+		}
+		int variables = layout.count;
+		names = new String[variables];
+		slots = new HashMap<String, Integer>();
+		for(int id = 0; id < layout.symbols.length; ++id){
+			int slot = layout.symbols[id] - 1;
+			if(slot >= 0 && slot < variables){
+				names[slot] = symbols.name(id);
+				slots.put(names[slot], slot);
+			}
+		}
+		
+		code = new int[count * WIDTH];
+		int pc = 0;
+		for(int i = 0; i < size; ++i){
+			Opcode opcode = quads.opcode(i);
+			int op;
+			switch (opcode){
+			case LBL:
+				continue;
+			case JMP:
+				op = JMP;
+				break;
+			case TST:
+				op = JEQ + quads.comparison(i);
+				break;
+			case MOV:
+			case PLS:
+				op = MOV;
+				break;
+			case ADD:
+				op = ADD;
+				break;
+			case SUB:
+				op = SUB;
+				break;
+			case MUL:
+				op = MUL;
+				break;
+			case DVD:
+			case DIV:
+				op = DIV;
+				break;
+			case MOD:
+				op = MOD;
+				break;
+			case EXP:
+				op = EXP;
+				break;
+			default:	//NEG
+				op = NEG;
+				break;
+			}
+			code[pc] = op;
+			if(op >= JMP){
+				int label = Operand.index(quads.result(i));
+				int target = label < targets.length ? targets[label] - 1 : -1;
+				code[pc + 3] = target < 0 ? count * WIDTH : target;
+			}else{
+				code[pc + 3] = layout.slot(quads.result(i), symbols, i);
+			}
+			if(op != JMP){
+				code[pc + 1] = layout.slot(quads.arg1(i), symbols, i);
+				if(opcode.form() != Opcode.UNARY){
+					code[pc + 2] = layout.slot(quads.arg2(i), symbols, i);
+				}
+			}
+			pc += WIDTH;
+		}
+		initial = Arrays.copyOf(layout.values, layout.count);
+	}
+	
+	/**Method: variables(void)
+	 * @return	Number of variables, which take slots 0 to variables() - 1
+	 */
+	public int variables(){
+		return names.length;
+	}
+	
+	/**Method: name(int)
+	 * @param slot	Slot of a variable
+	 * @return	Its name
+	 */
+	public String name(int slot){
+		return names[slot];
+	}
+	
+	/**Method: slot(String)
+	 * @param variable
+	 * @return	Slot of the variable, -1 if the program does not use it
+	 */
+	public int slot(String variable){
+		Integer slot = slots.get(variable);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**Method: newStore(void)
+	 * @return	A store for one run: the variables are 0
+	 */
+	public long[] newStore(){
+		return initial.clone();
+	}
+	
+	/**Method: run(Map<String, Long>)
+	 * Description:
+	 * 		Runs the program from the given variable values. Variables
+	 * 		without a value start at 0; values of variables the program does
+	 * 		not use are ignored.
+	 * @param bindings	Initial values of variables
+	 * @return	Final value of every variable of the program, in slot order
+	 * @throws ArithmeticException	Division by zero
+	 */
+	public Map<String, Long> run(Map<String, Long> bindings){
+		long[] store = newStore();
+		for(Map.Entry<String, Long> binding : bindings.entrySet()){
+			int slot = slot(binding.getKey());
+			if(slot >= 0){
+				store[slot] = binding.getValue();
+			}
+		}
+		execute(store);
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for(int slot = 0; slot < names.length; ++slot){
+			result.put(names[slot], store[slot]);
+		}
+		return result;
+	}
+	
+	/**Method: execute(long[])
+	 * Description:
+	 * 		Runs the program on a store until it ends.
+	 * @param store	Store from newStore(), with the variables set
+	 * @throws ArithmeticException	Division by zero
+	 */
+	public void execute(long[] store){
+		execute(store, Long.MAX_VALUE);
+	}
+	
+	/**Method: execute(long[], long)
+	 * Description:
+	 * 		Runs the program on a store, giving up after a number of taken
+	 * 		jumps so that a program looping forever can be stopped.
+	 * @param store	Store from newStore(), with the variables set
+	 * @param jumps	Most jumps to take
+	 * @throws ArithmeticException	Division by zero
+	 * @throws IllegalStateException	The jumps ran out
+	 */
+	public void execute(long[] store, long jumps){
+		final int[] code = this.code;
+		final int end = code.length;
+		int pc = 0;
+		while(pc < end){
+			int r = code[pc + 3];
+			switch (code[pc]){
+			case MOV:
+				store[r] = store[code[pc + 1]];
+				break;
+			case ADD:
+				store[r] = store[code[pc + 1]] + store[code[pc + 2]];
+				break;
+			case SUB:
+				store[r] = store[code[pc + 1]] - store[code[pc + 2]];
+				break;
+			case MUL:
+				store[r] = store[code[pc + 1]] * store[code[pc + 2]];
+				break;
+			case DIV:
+				store[r] = store[code[pc + 1]] / store[code[pc + 2]];
+				break;
+			case MOD:
+				store[r] = store[code[pc + 1]] % store[code[pc + 2]];
+				break;
+			case EXP:
+				store[r] = TACRuntime.pow(store[code[pc + 1]], store[code[pc + 2]]);
+				break;
+			case NEG:
+				store[r] = -store[code[pc + 1]];
+				break;
+			case JMP:
+				pc = jump(r, --jumps);
+				continue;
+			case JEQ:
+				if(store[code[pc + 1]] == store[code[pc + 2]]){
+					pc = jump(r, --jumps);
+					continue;
+				}
+				break;
+			case JLT:
+				if(store[code[pc + 1]] < store[code[pc + 2]]){
+					pc = jump(r, --jumps);
+					continue;
+				}
+				break;
+			case JLE:
+				if(store[code[pc + 1]] <= store[code[pc + 2]]){
+					pc = jump(r, --jumps);
+					continue;
+				}
+				break;
+			case JGT:
+				if(store[code[pc + 1]] > store[code[pc + 2]]){
+					pc = jump(r, --jumps);
+					continue;
+				}
+				break;
+			case JGE:
+				if(store[code[pc + 1]] >= store[code[pc + 2]]){
+					pc = jump(r, --jumps);
+					continue;
+				}
+				break;
+			default:	//JNE
+				if(store[code[pc + 1]] != store[code[pc + 2]]){
+					pc = jump(r, --jumps);
+					continue;
+				}
+				break;
+			}
+			pc += WIDTH;
+		}
+	}
+	
+	/**Method: jump(int, long)
+	 * @param target	Offset to jump to
+	 * @param jumps		Jumps left
+	 * @return	The target
+	 * @throws IllegalStateException	No jumps are left
+	 */
+	private static int jump(int target, long jumps){
+		if(jumps < 0){
+			throw new IllegalStateException("Jump limit reached");
+		}
+		return target;
+	}
+	
+	/**
+	 *	Description:
+	 *		Slot assignment while loading, shared with TACClassWriter so that
+	 *		both lay out the variables the same way.
+	 */
+	static class Slots {
+		
+		/**
+		 * Slot plus one of each variable and number literal, by symbol ID
+		 */
+		int[] symbols = new int[64];
+		
+		/**
+		 * Slot plus one of each computed constant, by constant index
+		 */
+		int[] constants = new int[16];
+		
+		/**
+		 * Slot plus one of each temp, by temp number
+		 */
+		int[] temps = new int[16];
+		
+		/**
+		 * Initial value of each slot
+		 */
+		long[] values = new long[64];
+		
+		/**
+		 * Number of slots
+		 */
+		int count;
+		
+		/**Method: variable(int)
+		 * Description:
+		 * 		Gives a slot to an operand if it is a variable without one.
+		 * @param operand
+		 */
+		void variable(int operand){
+			if(operand != Operand.NONE && Operand.kind(operand) == Operand.VAR){
+				int id = Operand.index(operand);
+				symbols = ensure(symbols, id);
+				if(symbols[id] == 0){
+					symbols[id] = add(0);
+				}
+			}
+		}
+		
+		/**Method: slot(int, SymbolTable, int)
+		 * Description:
+		 * 		Gives the slot of an operand, creating it if needed.
+		 * @param operand
+		 * @param table	Symbol table, for the values of constants
+		 * @param i		Index of the instruction, for errors
+		 * @return	The slot
+		 * @throws IllegalArgumentException	The operand is missing or does not fit a long
+		 */
+		int slot(int operand, SymbolTable table, int i){
+			if(operand == Operand.NONE){
+				throw new IllegalArgumentException("Missing operand in instruction " + i);
+			}
+			int index = Operand.index(operand);
+			switch (Operand.kind(operand)){
+			case Operand.TEMP:
+				temps = ensure(temps, index);
+				if(temps[index] == 0){
+					temps[index] = add(0);
+				}
+				return temps[index] - 1;
+			case Operand.CONST:
+				constants = ensure(constants, index);
+				if(constants[index] == 0){
+					constants[index] = add(table.value(operand));
+				}
+				return constants[index] - 1;
+			case Operand.NUM:
+				symbols = ensure(symbols, index);
+				if(symbols[index] == 0){
+					if(!table.hasValue(operand)){
+						throw new IllegalArgumentException("Number too large in instruction " + i + ": " + table.name(index));
+					}
+					symbols[index] = add(table.value(operand));
+				}
+				return symbols[index] - 1;
+			default:
+				return symbols[index] - 1;	//Variables were given slots first
+			}
+		}
+		
+		/**Method: add(long)
+		 * @param value	Initial value
+		 * @return	A new slot plus one
+		 */
+		int add(long value){
+			if(count == values.length){
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count] = value;
+			return ++count;
+		}
+		
+		/**Method: ensure(int[], int)
+		 * @param array
+		 * @param index
+		 * @return	The array, grown to hold index if needed
+		 */
+		static int[] ensure(int[] array, int index){
+			if(index >= array.length){
+				array = Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+			}
+			return array;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package edu.utt.wallace.syntax;
+
+/**
+ *	Description:
+ *		A program compiled to a JVM class by TACClassWriter. The variables
+ *		are passed in an array, in the slot order of the TACClassWriter
+ *		(the same as TACMachine's), which receives their final values when
+ *		the program ends.
+ */
+public interface TACProgram {
+	
+	/**Method: run(long[])
+	 * Description:
+	 * 		Runs the program. The variables live in locals while it runs and
+	 * 		are written back only when it ends, so the array is left as it
+	 * 		was if an exception is thrown.
+	 * @param variables	Initial values of the variables, at least
+	 * 			TACClassWriter.variables() of them
+	 * @throws ArithmeticException	Division by zero
+	 */
+	void run(long[] variables);
+}
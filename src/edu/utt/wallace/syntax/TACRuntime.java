@@ -0,0 +1,51 @@
+package edu.utt.wallace.syntax;
+
+/**
+ *	Description:
+ *		Arithmetic of compiled programs on long values, shared by every way
+ *		of running the 3AC so that they all compute the same results:
+ *			ADD, SUB, MUL, NEG	two's complement, wrapping on overflow
+ *			DVD, DIV			division truncated toward zero
+ *			MOD					remainder of DIV, with the sign of the dividend
+ *			EXP					see pow(long, long)
+ *		A division or a modulus by zero throws an ArithmeticException.
+ */
+public final class TACRuntime {
+	
+	/**Constructor
+	 * Not instantiable.
+	 */
+	private TACRuntime(){
+	}
+	
+	/**Method: pow(long, long)
+	 * Description:
+	 * 		Raises a base to a power by squaring, wrapping on overflow. A
+	 * 		negative exponent gives 1 / base^-exponent truncated toward zero:
+	 * 		1 or -1 for a base of 1 or -1, 0 for any other base.
+	 * @param base
+	 * @param exponent
+	 * @return	base ^ exponent
+	 * @throws ArithmeticException	The base is 0 and the exponent negative
+	 */
+	public static long pow(long base, long exponent){
+		if(exponent < 0){
+			if(base == 0){
+				throw new ArithmeticException("/ by zero");
+			}
+			if(base == 1 || base == -1){
+				return (exponent & 1) == 0 ? 1 : base;
+			}
+			return 0;
+		}
+		long result = 1;
+		while(exponent != 0){
+			if((exponent & 1) != 0){
+				result *= base;
+			}
+			exponent >>>= 1;
+			base *= base;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,31 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+
+/**
+ *	Description:
+ *		Consumer of the 3AC produced by the parser. The parser hands the
+ *		instructions over in chunks, one per top-level statement, then
+ *		flushes the sink at the end of the program. A sink may transform
+ *		the instructions and pass them on to another sink, write them out
+ *		(TACWriter) or collect them (QuadBuffer).
+ */
+public interface TACSink {
+	
+	/**Method: accept(QuadBuffer)
+	 * Description:
+	 * 		Consumes a chunk of instructions. The chunk is reused by the
+	 * 		caller afterwards, so a sink must copy anything it keeps.
+	 * @param quads
+	 * @throws IOException
+	 */
+	void accept(QuadBuffer quads) throws IOException;
+	
+	/**Method: flush(void)
+	 * Description:
+	 * 		Ends the program: passes on anything still held back and
+	 * 		flushes the final output.
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+}
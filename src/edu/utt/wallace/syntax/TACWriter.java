@@ -0,0 +1,326 @@
+package edu.utt.wallace.syntax;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Serializes 3AC instructions as text, the same bytes that
+ *		PrintStream.printf/println produced, without formatting: opcodes and
+ *		operands are copied straight into a reusable byte buffer that is
+ *		written to the underlying stream or channel in large blocks.
+ *
+ *		Operands are resolved from their int encoding (see Operand): symbols
+ *		through the SymbolTable's cached spellings, temps and labels through
+ *		names created once per number. Labels end with the platform line
+ *		separator, like println; every other instruction ends with '\n'.
+ *
+ *		A writer is not thread-safe.
+ */
+public class TACWriter implements TACSink, Flushable, Closeable {
+	
+	/**
+	 * Default size of the buffer
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Separator between the fields of an instruction
+	 */
+	private static final byte[] SEPARATOR = {',', ' '};
+	
+	/**
+	 * Name written for a missing operand
+	 */
+	static final byte[] NULL = {'n', 'u', 'l', 'l'};
+	
+	/**
+	 * Line terminator of labels
+	 */
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+	
+	/**
+	 * Symbol table of the variables and numbers
+	 */
+	private SymbolTable symbols;
+	
+	/**
+	 * Output stream, null when writing to a channel
+	 */
+	private OutputStream stream;
+	
+	/**
+	 * Output channel, null when writing to a stream
+	 */
+	private WritableByteChannel channel;
+	
+	/**
+	 * Buffered output
+	 */
+	private final byte[] buffer;
+	
+	/**
+	 * Buffer view of buffer, for channels
+	 */
+	private final ByteBuffer wrapper;
+	
+	/**
+	 * Number of bytes in buffer
+	 */
+	private int position;
+	
+	/**
+	 * Cached names of the temps, indexed by number
+	 */
+	private byte[][] tempNames = new byte[16][];
+	
+	/**
+	 * Cached names of the labels, indexed by number
+	 */
+	private byte[][] labelNames = new byte[16][];
+	
+	/**Constructor
+	 * @param symbols	Symbol table of the operands
+	 * @param stream	Stream to write the 3AC to
+	 */
+	public TACWriter(SymbolTable symbols, OutputStream stream){
+		this(symbols, DEFAULT_BUFFER_SIZE);
+		this.stream = stream;
+	}
+	
+	/**Constructor
+	 * @param symbols	Symbol table of the operands
+	 * @param channel	Channel to write the 3AC to
+	 */
+	public TACWriter(SymbolTable symbols, WritableByteChannel channel){
+		this(symbols, DEFAULT_BUFFER_SIZE);
+		this.channel = channel;
+	}
+	
+	/**Constructor
+	 * @param symbols
+	 * @param bufferSize
+	 */
+	private TACWriter(SymbolTable symbols, int bufferSize){
+		this.symbols = symbols;
+		this.buffer = new byte[bufferSize];
+		this.wrapper = ByteBuffer.wrap(buffer);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Serializes the chunk into the buffer.
+	 */
+	@Override
+	public void accept(QuadBuffer quads) throws IOException{
+		int size = quads.size();
+		for(int i = 0; i < size; ++i){
+			instruction(quads, i);
+		}
+	}
+	
+	/**Method: instruction(QuadBuffer, int)
+	 * Description:
+	 * 		Writes one instruction:
+	 * 			op, arg1, arg2, result			(binary)
+	 * 			op, arg1, result				(unary)
+	 * 			TST, arg1, arg2, comparison, label
+	 * 			JMP, label
+	 * 			label							(ended by the platform line separator)
+	 * @param quads
+	 * @param i		Index of the instruction
+	 * @throws IOException
+	 */
+	public void instruction(QuadBuffer quads, int i) throws IOException{
+		Opcode opcode = quads.opcode(i);
+		switch (opcode.form()){
+		case Opcode.LABEL:
+			operand(quads.result(i));
+			write(LINE_SEPARATOR);
+			return;
+		case Opcode.JUMP:
+			write(opcode.mnemonic());
+			break;
+		case Opcode.UNARY:
+			write(opcode.mnemonic());
+			write(SEPARATOR);
+			operand(quads.arg1(i));
+			break;
+		case Opcode.TEST:
+			write(opcode.mnemonic());
+			write(SEPARATOR);
+			operand(quads.arg1(i));
+			write(SEPARATOR);
+			operand(quads.arg2(i));
+			write(SEPARATOR);
+			ensure(1);
+			buffer[position++] = (byte) ('0' + quads.comparison(i));
+			break;
+		default:
+			write(opcode.mnemonic());
+			write(SEPARATOR);
+			operand(quads.arg1(i));
+			write(SEPARATOR);
+			operand(quads.arg2(i));
+			break;
+		}
+		write(SEPARATOR);
+		operand(quads.result(i));
+		ensure(1);
+		buffer[position++] = '\n';
+	}
+	
+	/**Method: operand(int)
+	 * Description:
+	 * 		Writes the name of an operand.
+	 * @param operand
+	 * @throws IOException
+	 */
+	private void operand(int operand) throws IOException{
+		if(operand == Operand.NONE){
+			write(NULL);
+			return;
+		}
+		int index = Operand.index(operand);
+		switch (Operand.kind(operand)){
+		case Operand.TEMP:
+			write(tempName(index));
+			break;
+		case Operand.LABEL:
+			write(labelName(index));
+			break;
+		case Operand.CONST:
+			write(symbols.constants().spelling(index));
+			break;
+		default:
+			write(symbols.spelling(index));
+			break;
+		}
+	}
+	
+	/**Method: tempName(int)
+	 * @param temp
+	 * @return	Name of a temp, created once per number
+	 */
+	private byte[] tempName(int temp){
+		if(temp >= tempNames.length){
+			tempNames = Arrays.copyOf(tempNames, Math.max(temp + 1, tempNames.length * 2));
+		}
+		byte[] name = tempNames[temp];
+		if(name == null){
+			name = tempNames[temp] = ("T" + temp).getBytes(StandardCharsets.ISO_8859_1);
+		}
+		return name;
+	}
+	
+	/**Method: labelName(int)
+	 * @param label
+	 * @return	Name of a label, created once per number
+	 */
+	private byte[] labelName(int label){
+		if(label >= labelNames.length){
+			labelNames = Arrays.copyOf(labelNames, Math.max(label + 1, labelNames.length * 2));
+		}
+		byte[] name = labelNames[label];
+		if(name == null){
+			name = labelNames[label] = ("L" + label).getBytes(StandardCharsets.ISO_8859_1);
+		}
+		return name;
+	}
+	
+	/**Method: write(byte[])
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void write(byte[] bytes) throws IOException{
+		if(bytes.length > buffer.length){
+			flushBuffer();
+			writeOut(ByteBuffer.wrap(bytes), bytes, bytes.length);
+			return;
+		}
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+	
+	/**Method: ensure(int)
+	 * Description:
+	 * 		Makes room for the given number of bytes, writing the buffer out if needed.
+	 * @param length	At most the size of the buffer
+	 * @throws IOException
+	 */
+	private void ensure(int length) throws IOException{
+		if(position + length > buffer.length){
+			flushBuffer();
+		}
+	}
+	
+	/**Method: flushBuffer(void)
+	 * Description:
+	 * 		Writes the buffered bytes out, without flushing the stream.
+	 * @throws IOException
+	 */
+	private void flushBuffer() throws IOException{
+		if(position > 0){
+			wrapper.clear().limit(position);
+			writeOut(wrapper, buffer, position);
+			position = 0;
+		}
+	}
+	
+	/**Method: writeOut(ByteBuffer, byte[], int)
+	 * Description:
+	 * 		Writes bytes to the stream or channel.
+	 * @param view		The bytes as a buffer, for channels
+	 * @param bytes		The bytes as an array, for streams
+	 * @param length	Number of bytes to write
+	 * @throws IOException
+	 */
+	private void writeOut(ByteBuffer view, byte[] bytes, int length) throws IOException{
+		if(channel != null){
+			while(view.hasRemaining()){
+				channel.write(view);
+			}
+		}else{
+			stream.write(bytes, 0, length);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Writes the buffered bytes out and flushes the stream.
+	 */
+	@Override
+	public void flush() throws IOException{
+		flushBuffer();
+		if(stream != null){
+			stream.flush();
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 * Flushes, then closes the stream or channel.
+	 */
+	@Override
+	public void close() throws IOException{
+		try {
+			flushBuffer();
+		} finally {
+			if(channel != null){
+				channel.close();
+			}else{
+				stream.close();
+			}
+		}
+	}
+}
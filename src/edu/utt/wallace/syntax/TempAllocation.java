@@ -0,0 +1,320 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Temp allocation pass: renumbers the temps of every statement so
+ *		that a temp is reused as soon as its value is dead, instead of
+ *		every intermediate result getting a temp of its own. A long
+ *		expression then needs about as many temps as its deepest operand
+ *		nesting, like a Sethi-Ullman numbering of its tree, rather than
+ *		one per operator.
+ *
+ *		Live ranges are computed over each chunk (one top-level statement)
+ *		by a backward scan: the last read of a temp frees its number, which
+ *		the result of the same quad may take, and the lowest free number is
+ *		always chosen. Temps never live across statements or labels in the
+ *		parser's 3AC (nor after ValueNumbering), so no control flow analysis
+ *		is needed.
+ *
+ *		The pass records the largest number of temps a statement used
+ *		before and after renumbering.
+ */
+public class TempAllocation implements TACSink {
+	
+	/**
+	 * Sink of the renumbered 3AC
+	 */
+	private final TACSink next;
+	
+	/**
+	 * Renumbered chunk
+	 */
+	private final QuadBuffer out = new QuadBuffer();
+	
+	/**
+	 * Whether each operand slot of the chunk (3 per quad) is the last read of a temp
+	 */
+	private boolean[] lastReads = new boolean[48];
+	
+	/**
+	 * Whether each original temp is read later in the chunk, during the backward scan
+	 */
+	private boolean[] live = new boolean[16];
+	
+	/**
+	 * New number of each original temp, indexed by original number
+	 */
+	private int[] numbers = new int[16];
+	
+	/**
+	 * Chunk of numbers, indexed by original number
+	 */
+	private int[] stamps = new int[16];
+	
+	/**
+	 * New temp numbers in use, as a bit set
+	 */
+	private long[] used = new long[1];
+	
+	/**
+	 * Current chunk, stamping numbers
+	 */
+	private int chunk;
+	
+	/**
+	 * Number of statements seen
+	 */
+	private long statements;
+	
+	/**
+	 * Largest number of temps of a statement, before renumbering
+	 */
+	private int maxBefore;
+	
+	/**
+	 * Largest number of temps of a statement, after renumbering
+	 */
+	private int maxAfter;
+	
+	/**Constructor
+	 * @param next	Sink of the renumbered 3AC
+	 */
+	public TempAllocation(TACSink next){
+		this.next = next;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Renumbers the temps of the chunk and passes it on.
+	 */
+	@Override
+	public void accept(QuadBuffer quads) throws IOException{
+		int size = quads.size();
+		if(size == 0){
+			return;
+		}
+		scan(quads);
+		
+		++chunk;
+		Arrays.fill(used, 0);
+		int before = 0;
+		int after = 0;
+		for(int i = 0; i < size; ++i){
+			Opcode opcode = quads.opcode(i);
+			int arg1 = read(quads.arg1(i), 3 * i);
+			int arg2 = read(quads.arg2(i), 3 * i + 1);
+			int result = quads.result(i);
+			if(writes(opcode) && Operand.kind(result) == Operand.TEMP){
+				before = Math.max(before, Operand.index(result) + 1);
+				result = write(result, 3 * i + 2);
+				after = Math.max(after, Operand.index(result) + 1);
+			}
+			
+			switch (opcode.form()){
+			case Opcode.LABEL:
+				out.label(result);
+				break;
+			case Opcode.JUMP:
+				out.jump(result);
+				break;
+			case Opcode.TEST:
+				out.test(arg1, arg2, quads.comparison(i), result);
+				break;
+			default:
+				out.add(opcode, arg1, arg2, result);
+				break;
+			}
+		}
+		
+		++statements;
+		maxBefore = Math.max(maxBefore, before);
+		maxAfter = Math.max(maxAfter, after);
+		next.accept(out);
+		out.clear();
+	}
+	
+	/**Method: scan(QuadBuffer)
+	 * Description:
+	 * 		Finds the last read of every temp value of the chunk, walking it
+	 * 		backwards. A write kills the temp, so each value written to a
+	 * 		reused temp number gets its own last read.
+	 * @param quads
+	 */
+	private void scan(QuadBuffer quads){
+		int size = quads.size();
+		if(lastReads.length < 3 * size){
+			lastReads = new boolean[Math.max(3 * size, lastReads.length * 2)];
+		}
+		Arrays.fill(live, false);
+		for(int i = size - 1; i >= 0; --i){
+			if(writes(quads.opcode(i))){
+				int result = quads.result(i);
+				lastReads[3 * i + 2] = false;
+				if(Operand.kind(result) == Operand.TEMP){
+					int temp = Operand.index(result);
+					lastReads[3 * i + 2] = temp >= live.length || !live[temp];	//Never read
+					setLive(temp, false);
+				}
+			}
+			lastReads[3 * i + 1] = readLive(quads.arg2(i));
+			lastReads[3 * i] = readLive(quads.arg1(i));
+		}
+	}
+	
+	/**Method: writes(Opcode)
+	 * @param opcode
+	 * @return	True if the result of the opcode is an operand it writes,
+	 * 			rather than a label
+	 */
+	private static boolean writes(Opcode opcode){
+		return opcode.form() == Opcode.BINARY || opcode.form() == Opcode.UNARY;
+	}
+	
+	/**Method: readLive(int)
+	 * @param operand	Operand read
+	 * @return	True if it is a temp that is not read again afterwards
+	 */
+	private boolean readLive(int operand){
+		if(Operand.kind(operand) != Operand.TEMP){
+			return false;
+		}
+		int temp = Operand.index(operand);
+		boolean last = temp >= live.length || !live[temp];
+		setLive(temp, true);
+		return last;
+	}
+	
+	/**Method: setLive(int, boolean)
+	 * @param temp
+	 * @param state
+	 */
+	private void setLive(int temp, boolean state){
+		if(temp >= live.length){
+			live = Arrays.copyOf(live, Math.max(temp + 1, live.length * 2));
+		}
+		live[temp] = state;
+	}
+	
+	/**Method: read(int, int)
+	 * Description:
+	 * 		Renames an operand that is read, freeing its temp number if this
+	 * 		is its last read.
+	 * @param operand
+	 * @param slot	Operand slot in lastReads
+	 * @return	The renamed operand
+	 */
+	private int read(int operand, int slot){
+		if(Operand.kind(operand) != Operand.TEMP){
+			return operand;
+		}
+		int number = number(Operand.index(operand));
+		if(lastReads[slot]){
+			release(number);
+		}
+		return Operand.make(Operand.TEMP, number);
+	}
+	
+	/**Method: write(int, int)
+	 * Description:
+	 * 		Gives the temp written by a quad the lowest free number. A value
+	 * 		that is never read frees it again right away.
+	 * @param operand	Temp written
+	 * @param slot	Operand slot in lastReads
+	 * @return	The renamed operand
+	 */
+	private int write(int operand, int slot){
+		int number = rename(Operand.index(operand));
+		if(lastReads[slot]){
+			release(number);
+		}
+		return Operand.make(Operand.TEMP, number);
+	}
+	
+	/**Method: number(int)
+	 * @param temp	Original temp number
+	 * @return	Its new number. A temp read before being written in the
+	 * 			chunk, which the parser never does, gets a number of its own.
+	 */
+	private int number(int temp){
+		if(temp < stamps.length && stamps[temp] == chunk){
+			return numbers[temp];
+		}
+		return rename(temp);
+	}
+	
+	/**Method: rename(int)
+	 * Description:
+	 * 		Gives a temp the lowest free number.
+	 * @param temp	Original temp number
+	 * @return	Its new number
+	 */
+	private int rename(int temp){
+		int number = allocate();
+		if(temp >= stamps.length){
+			int capacity = Math.max(temp + 1, stamps.length * 2);
+			numbers = Arrays.copyOf(numbers, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
+		}
+		numbers[temp] = number;
+		stamps[temp] = chunk;
+		return number;
+	}
+	
+	/**Method: allocate(void)
+	 * @return	The lowest free temp number, now in use
+	 */
+	private int allocate(){
+		int word = 0;
+		while(word < used.length && used[word] == -1L){
+			++word;
+		}
+		if(word == used.length){
+			used = Arrays.copyOf(used, used.length * 2);
+		}
+		int bit = Long.numberOfTrailingZeros(~used[word]);
+		used[word] |= 1L << bit;
+		return word * 64 + bit;
+	}
+	
+	/**Method: release(int)
+	 * @param number	Temp number no longer in use
+	 */
+	private void release(int number){
+		used[number >>> 6] &= ~(1L << number);
+	}
+	
+	/**Method: statements(void)
+	 * @return	Number of statements renumbered so far
+	 */
+	public long statements(){
+		return statements;
+	}
+	
+	/**Method: maxTempsBefore(void)
+	 * @return	Largest number of temps used by a statement, as generated
+	 */
+	public int maxTempsBefore(){
+		return maxBefore;
+	}
+	
+	/**Method: maxTempsAfter(void)
+	 * @return	Largest number of temps used by a statement, once renumbered
+	 */
+	public int maxTempsAfter(){
+		return maxAfter;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Flushes the next sink.
+	 */
+	@Override
+	public void flush() throws IOException{
+		next.flush();
+	}
+}
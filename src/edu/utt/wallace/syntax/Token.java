@@ -1,32 +1,76 @@
 package edu.utt.wallace.syntax;
 
+/**
+ *	Description:
+ *		Tokens of the language. A token with a pattern is recognized by the
+ *		lexical analyzer's generated DFA (see TokenSpec); a token with a
+ *		keyword is an identifier spelled that way. Patterns are listed in
+ *		priority order: when two patterns match the same longest lexeme,
+ *		the one declared first wins.
+ */
 public enum Token {
-	IDENT, 			//Identifier
-	NUMBER, 		//Integer number
-	OPARENTH, 		//Open parenthesis
-	CPARENTH, 		//Close parenthesis
-	UPLUS, 			//Unary plus
-	UMINUS, 		//Unary minus
-	ADD, 			//Add
-	SUB, 			//Subtract
-	MULT, 			//Multiply
-	DIV, 			//Divide
-	EQUAL,			//Equal
-	INTDIV, 		//Integer division
-	MOD, 			//Modulus
-	EXPON, 			//Exponential
-	SEMICOLON,		//Semi-colon
-	PERIOD,			//Period token
-	PROGRAM,		//Program token
-	END,			//End token
-	LT,				//Less than
-	LE,				//Less than/equal to
-	GT,				//Greater than
-	GE,				//Greather than/equal to
-	NE,				//Not equal to
-	IF,
-	THEN,
-	WHILE,
-	DO,
-	ERROR			//Broad-spectrum lexical error detector
+	IDENT("[A-Z][A-Z0-9]*", null), 			//Identifier
+	NUMBER("[0-9]+", null), 		//Integer number
+	OPARENTH("\\(", null), 		//Open parenthesis
+	CPARENTH("\\)", null), 		//Close parenthesis
+	UPLUS("#", null), 			//Unary plus
+	UMINUS("~", null), 			//Unary minus
+	ADD("\\+", null), 			//Add
+	SUB("-", null), 			//Subtract
+	MULT("\\*", null), 			//Multiply
+	DIV("/", null), 			//Divide
+	EQUAL("=", null),			//Equal
+	INTDIV(null, "DIV"), 		//Integer division
+	MOD(null, "MOD"), 			//Modulus
+	EXPON("\\^", null), 			//Exponential
+	SEMICOLON(";", null),		//Semi-colon
+	PERIOD("\\.", null),			//Period token
+	PROGRAM(null, "PROGRAM"),		//Program token
+	END(null, "END"),			//End token
+	LT("<", null),				//Less than
+	LE("<=", null),				//Less than/equal to
+	GT(">", null),				//Greater than
+	GE(">=", null),				//Greather than/equal to
+	NE("<>", null),				//Not equal to
+	IF(null, "IF"),
+	THEN(null, "THEN"),
+	WHILE(null, "WHILE"),
+	DO(null, "DO"),
+	ERROR("\\}", null),			//Broad-spectrum lexical error detector
+	EOF(null, null)				//End of file, supplied by the parser once the source is exhausted
+	;
+
+	/**
+	 * Pattern recognized as this token, null if the token is not
+	 * recognized by the DFA.
+	 */
+	private final String pattern;
+
+	/**
+	 * Keyword spelled by this token, null if the token is not a keyword.
+	 */
+	private final String keyword;
+
+	/**Constructor
+	 * @param pattern	Pattern recognized as this token
+	 * @param keyword	Keyword spelled by this token
+	 */
+	private Token(String pattern, String keyword){
+		this.pattern = pattern;
+		this.keyword = keyword;
+	}
+
+	/**Method: pattern(void)
+	 * @return	Pattern recognized as this token, null if the token is not recognized by the DFA
+	 */
+	public String pattern(){
+		return pattern;
+	}
+
+	/**Method: keyword(void)
+	 * @return	Keyword spelled by this token, null if the token is not a keyword
+	 */
+	public String keyword(){
+		return keyword;
+	}
 }
@@ -0,0 +1,229 @@
+package edu.utt.wallace.syntax;
+
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Stream of tokens stored column by column in parallel primitive arrays:
+ *		the token's ordinal, the ID of its identifier or number in the
+ *		lexical analyzer's SymbolTable, the offset and length of its lexeme
+ *		in the lexical analyzer's line buffer, and its (1-based) source line.
+ *
+ *		The columns grow one fixed-size chunk at a time, so adding a token
+ *		never copies the tokens already stored, and clear() keeps the chunks
+ *		for reuse. The parser walks the tokens with a cursor instead of
+ *		popping objects off a queue.
+ */
+public class TokenBuffer {
+	
+	/**
+	 * Number of tokens per chunk, as a power of two.
+	 */
+	private static final int CHUNK_BITS = 10;
+	
+	/**
+	 * Number of tokens per chunk.
+	 */
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	
+	/**
+	 * Mask of a token's index inside its chunk.
+	 */
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	/**
+	 * Token values, indexed by ordinal.
+	 */
+	private static final Token[] TOKENS = Token.values();
+	
+	/**
+	 * Token ordinals
+	 */
+	private int[][] tokens = new int[0][];
+	
+	/**
+	 * Symbol IDs, -1 for tokens other than identifiers and numbers
+	 */
+	private int[][] symbols = new int[0][];
+	
+	/**
+	 * Offsets of the lexemes
+	 */
+	private int[][] starts = new int[0][];
+	
+	/**
+	 * Lengths of the lexemes
+	 */
+	private int[][] lengths = new int[0][];
+	
+	/**
+	 * Source lines of the tokens
+	 */
+	private int[][] lines = new int[0][];
+	
+	/**
+	 * Number of tokens in the buffer
+	 */
+	private int size;
+	
+	/**
+	 * Index of the current token
+	 */
+	private int cursor;
+	
+	/**Method: add(Token, int, int, int, int)
+	 * Description:
+	 * 		Appends a token to the end of the buffer.
+	 * @param token
+	 * @param symbol	Symbol ID of the lexeme, -1 if it is not interned
+	 * @param start		Offset of the lexeme
+	 * @param length	Length of the lexeme
+	 * @param line		Source line of the token
+	 */
+	public void add(Token token, int symbol, int start, int length, int line){
+		int chunk = size >>> CHUNK_BITS;
+		if(chunk == tokens.length){
+			grow();
+		}
+		int i = size & CHUNK_MASK;
+		tokens[chunk][i] = token.ordinal();
+		symbols[chunk][i] = symbol;
+		starts[chunk][i] = start;
+		lengths[chunk][i] = length;
+		lines[chunk][i] = line;
+		++size;
+	}
+	
+	/**Method: grow(void)
+	 * Description:
+	 * 		Adds one chunk to every column.
+	 */
+	private void grow(){
+		int chunks = tokens.length;
+		tokens = Arrays.copyOf(tokens, chunks + 1);
+		symbols = Arrays.copyOf(symbols, chunks + 1);
+		starts = Arrays.copyOf(starts, chunks + 1);
+		lengths = Arrays.copyOf(lengths, chunks + 1);
+		lines = Arrays.copyOf(lines, chunks + 1);
+		tokens[chunks] = new int[CHUNK_SIZE];
+		symbols[chunks] = new int[CHUNK_SIZE];
+		starts[chunks] = new int[CHUNK_SIZE];
+		lengths[chunks] = new int[CHUNK_SIZE];
+		lines[chunks] = new int[CHUNK_SIZE];
+	}
+	
+	/**Method: clear(void)
+	 * Description:
+	 * 		Removes every token, keeping the allocated chunks.
+	 */
+	public void clear(){
+		size = 0;
+		cursor = 0;
+	}
+	
+	/**Method: size(void)
+	 * @return	Number of tokens in the buffer
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**Method: hasNext(void)
+	 * @return	True if the cursor is on a token, false if every token was consumed
+	 */
+	public boolean hasNext(){
+		return cursor < size;
+	}
+	
+	/**Method: advance(void)
+	 * Description:
+	 * 		Moves the cursor to the next token.
+	 */
+	public void advance(){
+		++cursor;
+	}
+	
+	/**Method: peek(void)
+	 * @return	The token under the cursor
+	 */
+	public Token peek(){
+		return TOKENS[tokens[cursor >>> CHUNK_BITS][cursor & CHUNK_MASK]];
+	}
+	
+	/**Method: symbol(void)
+	 * @return	Symbol ID of the token under the cursor, -1 if it is not interned
+	 */
+	public int symbol(){
+		return symbols[cursor >>> CHUNK_BITS][cursor & CHUNK_MASK];
+	}
+	
+	/**Method: start(void)
+	 * @return	Offset of the lexeme of the token under the cursor
+	 */
+	public int start(){
+		return starts[cursor >>> CHUNK_BITS][cursor & CHUNK_MASK];
+	}
+	
+	/**Method: length(void)
+	 * @return	Length of the lexeme of the token under the cursor
+	 */
+	public int length(){
+		return lengths[cursor >>> CHUNK_BITS][cursor & CHUNK_MASK];
+	}
+	
+	/**Method: line(void)
+	 * @return	Source line of the token under the cursor
+	 */
+	public int line(){
+		return lines[cursor >>> CHUNK_BITS][cursor & CHUNK_MASK];
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 * Lists the tokens that have not been consumed yet, without the
+	 * spellings of identifiers and numbers.
+	 */
+	@Override
+	public String toString() {
+		return toString(null);
+	}
+	
+	/**Method: toString(LexicalAnalyzer)
+	 * Description:
+	 * 		Lists the tokens that have not been consumed yet the way the
+	 * 		parser's queue of KeyVals used to print them:
+	 * 			[KeyVal [key=SEMICOLON, value=;], ...]
+	 * 		The value is the lexeme as written while the tokens are those of
+	 * 		the analyzer's current line. Tokens without lexeme offsets (from
+	 * 		a TokenPipeline) show the spelling of their symbol, keyword or
+	 * 		punctuation instead.
+	 * @param lex	Lexical analyzer that produced the tokens, null if unknown
+	 * @return	The tokens left
+	 */
+	public String toString(LexicalAnalyzer lex) {
+		StringBuilder builder = new StringBuilder("[");
+		for(int i = cursor; i < size; ++i){
+			if(i > cursor){
+				builder.append(", ");
+			}
+			int chunk = i >>> CHUNK_BITS;
+			int j = i & CHUNK_MASK;
+			Token token = TOKENS[tokens[chunk][j]];
+			String value;
+			if(lex != null && lengths[chunk][j] > 0){
+				value = lex.lexeme(starts[chunk][j], lengths[chunk][j]);
+			}else if(lex != null && symbols[chunk][j] >= 0){
+				value = lex.symbols().name(symbols[chunk][j]);
+			}else if(token.keyword() != null){
+				value = token.keyword();
+			}else if(token.pattern() != null && symbols[chunk][j] < 0){
+				value = token.pattern().replace("\\", "");	//Punctuation patterns are escaped literals
+			}else{
+				value = null;
+			}
+			builder.append("KeyVal [key=").append(token).append(", value=").append(value).append(']');
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,271 @@
+package edu.utt.wallace.syntax;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *	Description:
+ *		Runs a lexical analyzer on its own thread, ahead of the parser.
+ *		The lexer thread appends tokens to a bounded ring buffer and the
+ *		parser takes every token available at once, so lexing and reading
+ *		the source overlap with parsing and writing the 3AC.
+ *
+ *		The ring has exactly one producer and one consumer, so it needs no
+ *		locks: the producer publishes whole lines by advancing head and the
+ *		consumer frees slots by advancing tail. Each side keeps a cached copy
+ *		of the other's index and only rereads it when the ring looks full (or
+ *		empty). A side that has to wait spins briefly, then yields, then
+ *		parks for short intervals, which bounds both latency and wasted CPU.
+ *
+ *		The tokens handed to the parser carry their symbol IDs and lines but
+ *		no lexeme offsets, since the lexer's line buffer belongs to its thread.
+ */
+public class TokenPipeline implements TokenSource, Closeable {
+	
+	/**
+	 * Default number of tokens the ring buffer holds
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 14;
+	
+	/**
+	 * Number of busy-wait iterations before a waiting side starts yielding
+	 */
+	private static final int SPINS = 256;
+	
+	/**
+	 * Number of waiting iterations before a waiting side starts parking
+	 */
+	private static final int YIELDS = 512;
+	
+	/**
+	 * Length of a park once a side has waited for a while
+	 */
+	private static final long PARK_NANOS = 20000;
+	
+	/**
+	 * Token values, indexed by ordinal.
+	 */
+	private static final Token[] TOKENS = Token.values();
+	
+	/**
+	 * Lexical analyzer run by the producer thread
+	 */
+	private final LexicalAnalyzer lex;
+	
+	/**
+	 * Token ordinals of the ring
+	 */
+	private final int[] tokens;
+	
+	/**
+	 * Symbol IDs of the ring
+	 */
+	private final int[] symbols;
+	
+	/**
+	 * Source lines of the ring
+	 */
+	private final int[] lines;
+	
+	/**
+	 * Mask of a slot's index in the ring
+	 */
+	private final int mask;
+	
+	/**
+	 * Producer thread
+	 */
+	private final Thread producer;
+	
+	/**
+	 * Number of tokens published by the producer
+	 */
+	private volatile long head;
+	
+	/**
+	 * Number of tokens taken by the consumer
+	 */
+	private volatile long tail;
+	
+	/**
+	 * Set by the producer once everything it will ever publish is published
+	 */
+	private volatile boolean finished;
+	
+	/**
+	 * Set by the consumer to stop the producer early
+	 */
+	private volatile boolean closed;
+	
+	/**
+	 * Error that stopped the producer, read once finished is set
+	 */
+	private IOException error;
+	
+	/**
+	 * Consumer's cached copy of head
+	 */
+	private long knownHead;
+	
+	/**Constructor
+	 * @param lex	Lexical analyzer to run on the producer thread
+	 */
+	public TokenPipeline(LexicalAnalyzer lex){
+		this(lex, DEFAULT_CAPACITY, null);
+	}
+	
+	/**Constructor
+	 * @param lex		Lexical analyzer to run on the producer thread
+	 * @param capacity	Number of tokens the ring holds, rounded up to a power of two
+	 * @param threads	Factory of the producer thread (e.g. of virtual threads),
+	 * 					null for a dedicated daemon thread
+	 */
+	public TokenPipeline(LexicalAnalyzer lex, int capacity, ThreadFactory threads){
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.lex = lex;
+		this.tokens = new int[size];
+		this.symbols = new int[size];
+		this.lines = new int[size];
+		this.mask = size - 1;
+		
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				produce();
+			}
+		};
+		if(threads != null){
+			producer = threads.newThread(task);
+		}else{
+			producer = new Thread(task, "lexer");
+			producer.setDaemon(true);
+		}
+	}
+	
+	/**Method: start(void)
+	 * Description:
+	 * 		Starts lexing on the producer thread.
+	 * @return	This pipeline
+	 */
+	public TokenPipeline start(){
+		producer.start();
+		return this;
+	}
+	
+	/**Method: produce(void)
+	 * Description:
+	 * 		Body of the producer thread: lexes the source line by line
+	 * 		and publishes the tokens of each line, waiting for the
+	 * 		consumer whenever the ring is full.
+	 */
+	private void produce(){
+		TokenBuffer line = new TokenBuffer();
+		int capacity = mask + 1;
+		long written = 0;
+		long knownTail = 0;
+		try {
+			while(!closed && lex.nextLine(line)){
+				while(line.hasNext()){
+					if(written - knownTail == capacity){
+						head = written;
+						int idle = 0;
+						while(written - (knownTail = tail) == capacity){
+							if(closed){
+								return;
+							}
+							backOff(idle++);
+						}
+					}
+					int slot = (int) written & mask;
+					tokens[slot] = line.peek().ordinal();
+					symbols[slot] = line.symbol();
+					lines[slot] = line.line();
+					++written;
+					line.advance();
+				}
+				head = written;
+				line.clear();
+			}
+		} catch (IOException e) {
+			error = e;
+		} catch (RuntimeException e) {
+			error = new IOException("The lexical analyzer failed", e);
+		} finally {
+			head = written;
+			finished = true;
+		}
+	}
+	
+	/**Method: nextLine(TokenBuffer)
+	 * Description:
+	 * 		Moves every published token to the output buffer, waiting
+	 * 		for the producer if none is available yet.
+	 * @param output	Buffer receiving the tokens
+	 * @return	False if the end of file is reached, true otherwise
+	 * @throws IOException	The lexical analyzer failed on the producer thread
+	 */
+	@Override
+	public boolean nextLine(TokenBuffer output) throws IOException{
+		long read = tail;
+		if(knownHead == read){
+			int idle = 0;
+			while((knownHead = head) == read){
+				if(finished){
+					if((knownHead = head) != read){
+						break;
+					}
+					if(error != null){
+						throw error;
+					}
+					return false;
+				}
+				backOff(idle++);
+			}
+		}
+		
+		for(long i = read; i < knownHead; ++i){
+			int slot = (int) i & mask;
+			output.add(TOKENS[tokens[slot]], symbols[slot], 0, 0, lines[slot]);
+		}
+		tail = knownHead;
+		return true;
+	}
+	
+	/**Method: backOff(int)
+	 * Description:
+	 * 		Waits a little, longer the longer a side has been waiting.
+	 * @param idle	Number of times the caller already waited
+	 */
+	private static void backOff(int idle){
+		if(idle < SPINS){
+			Thread.onSpinWait();
+		}else if(idle < YIELDS){
+			Thread.yield();
+		}else{
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+	
+	/**Method: close(void)
+	 * Description:
+	 * 		Stops the producer, even if it did not reach the end of file,
+	 * 		and waits for its thread to end. Does not close the lexical analyzer.
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		boolean interrupted = false;
+		while(producer.isAlive()){
+			try {
+				producer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+}
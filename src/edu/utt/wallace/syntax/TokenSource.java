@@ -0,0 +1,22 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+
+/**
+ *	Description:
+ *		Supplies the parser with tokens, one batch at a time. Implemented by
+ *		LexicalAnalyzer, which lexes a line per call on the caller's thread,
+ *		and by TokenPipeline, which hands over tokens lexed on another thread.
+ */
+public interface TokenSource {
+	
+	/**Method: nextLine(TokenBuffer)
+	 * Description:
+	 * 		Appends the next batch of tokens to the output buffer.
+	 * 		A batch may be empty.
+	 * @param output	Buffer receiving the tokens
+	 * @return	False if the end of file is reached, true otherwise
+	 * @throws IOException
+	 */
+	boolean nextLine(TokenBuffer output) throws IOException;
+}
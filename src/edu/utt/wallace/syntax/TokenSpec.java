@@ -0,0 +1,130 @@
+package edu.utt.wallace.syntax;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *	Description:
+ *		Declarative specification of the tokens recognized by the lexical
+ *		analyzer: an ordered list of rules, each pairing a pattern with the
+ *		Token it produces (or with nothing, for text that is skipped such as
+ *		white space and comments). LexerGenerator turns a specification into
+ *		a minimized DFA.
+ *
+ *		Patterns use a small regular expression syntax:
+ *			c		the character c (escape ( ) [ ] { } | * + ? ^ . \ with \)
+ *			[a-z0-9]	any character of a class, [^...] any character not in it
+ *			xy		x followed by y
+ *			x|y		x or y
+ *			x* x+ x?	repetition
+ *			(x)		grouping
+ *
+ *		Rules are matched longest first; when two rules match the same
+ *		longest lexeme, the rule added first wins.
+ */
+public class TokenSpec {
+	
+	/**
+	 * Patterns of the rules, in priority order
+	 */
+	private final List<String> patterns = new ArrayList<String>();
+	
+	/**
+	 * Tokens of the rules, null for skipped text
+	 */
+	private final List<Token> tokens = new ArrayList<Token>();
+	
+	/**
+	 * Whether letters match regardless of case
+	 */
+	private final boolean caseInsensitive;
+	
+	/**Constructor
+	 * @param caseInsensitive	Whether letters match regardless of case
+	 */
+	public TokenSpec(boolean caseInsensitive){
+		this.caseInsensitive = caseInsensitive;
+	}
+	
+	/**Method: standard(void)
+	 * Description:
+	 * 		Builds the specification of the language: the pattern of every Token
+	 * 		that has one, in declaration order, followed by white space and
+	 * 		comments. A comment runs from { to } or to the end of the line.
+	 * @return	The language's token specification
+	 */
+	public static TokenSpec standard(){
+		TokenSpec spec = new TokenSpec(true);
+		for(Token token : Token.values()){
+			if(token.pattern() != null){
+				spec.rule(token, token.pattern());
+			}
+		}
+		spec.skip("[ \t\f\r]+");
+		spec.skip("\\{[^}]*\\}?");
+		return spec;
+	}
+	
+	/**Method: rule(Token, String)
+	 * Description:
+	 * 		Adds a rule producing a token.
+	 * @param token
+	 * @param pattern
+	 * @return	This specification
+	 */
+	public TokenSpec rule(Token token, String pattern){
+		tokens.add(token);
+		patterns.add(pattern);
+		return this;
+	}
+	
+	/**Method: skip(String)
+	 * Description:
+	 * 		Adds a rule for text that produces no token.
+	 * @param pattern
+	 * @return	This specification
+	 */
+	public TokenSpec skip(String pattern){
+		tokens.add(null);
+		patterns.add(pattern);
+		return this;
+	}
+	
+	/**Method: size(void)
+	 * @return	Number of rules
+	 */
+	public int size(){
+		return patterns.size();
+	}
+	
+	/**Method: pattern(int)
+	 * @param rule
+	 * @return	Pattern of a rule
+	 */
+	public String pattern(int rule){
+		return patterns.get(rule);
+	}
+	
+	/**Method: token(int)
+	 * @param rule
+	 * @return	Token of a rule, null if the rule's text is skipped
+	 */
+	public Token token(int rule){
+		return tokens.get(rule);
+	}
+	
+	/**Method: isCaseInsensitive(void)
+	 * @return	Whether letters match regardless of case
+	 */
+	public boolean isCaseInsensitive(){
+		return caseInsensitive;
+	}
+	
+	/**Method: tokens(void)
+	 * @return	Read-only list of the rules' tokens
+	 */
+	public List<Token> tokens(){
+		return Collections.unmodifiableList(tokens);
+	}
+}
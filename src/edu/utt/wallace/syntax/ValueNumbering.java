@@ -0,0 +1,477 @@
+package edu.utt.wallace.syntax;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *	Description:
+ *		Local value numbering pass: removes the quads that recompute a value
+ *		already held by a temp or a variable, such as the second (1+rate)^n
+ *		of amount=amount*rate*(1+rate)^n/((1+rate)^n-1), and makes their
+ *		readers use the earlier holder instead.
+ *
+ *		Every operand is given a value number; a quad's value number is
+ *		looked up by (opcode, value numbers of its operands), with the
+ *		operands of ADD and MUL in a canonical order. A MOV gives the
+ *		assigned variable the value number of its source, so the variable
+ *		takes over as the holder of the value and it can be reused by the
+ *		following statements; redefining a variable gives it a new value
+ *		number, which invalidates everything computed from its old value.
+ *
+ *		Numbering covers a straight-line region of the 3AC: it starts over
+ *		at every LBL and JMP, and carries on along the fall-through of a
+ *		TST; a very long region is also cut between two statements. Temps
+ *		only hold values for the statement (or condition) that computed
+ *		them, since the parser reuses their numbers afterwards, so a temp
+ *		is never made to live longer than it already does.
+ *
+ *		The pass expects the 3AC of the parser, where quads other than MOV
+ *		only write temps. Its output is passed on to the next sink chunk by
+ *		chunk.
+ */
+public class ValueNumbering implements TACSink {
+	
+	/**
+	 * Value number of the second operand of UNARY quads
+	 */
+	private static final int NO_VALUE = -1;
+	
+	/**
+	 * Number of value numbers after which a region is cut
+	 */
+	private static final int MAX_VALUES = 1 << 14;
+	
+	/**
+	 * Sink of the optimized 3AC
+	 */
+	private final TACSink next;
+	
+	/**
+	 * Optimized chunk
+	 */
+	private final QuadBuffer out = new QuadBuffer();
+	
+	/**
+	 * Current region, stamping the value numbers of symbols, constants and expressions
+	 */
+	private int region;
+	
+	/**
+	 * Current statement, stamping the value numbers of temps
+	 */
+	private int segment;
+	
+	/**
+	 * Next value number of the region
+	 */
+	private int values;
+	
+	/**
+	 * Operand holding each value number, indexed by value number
+	 */
+	private int[] holders = new int[256];
+	
+	/**
+	 * Value numbers of the symbols (variables and number literals), indexed by symbol ID
+	 */
+	private int[] symbolValues = new int[64];
+	
+	/**
+	 * Region of symbolValues, indexed by symbol ID
+	 */
+	private int[] symbolStamps = new int[64];
+	
+	/**
+	 * Value numbers of the constants, indexed by constant index
+	 */
+	private int[] constantValues = new int[16];
+	
+	/**
+	 * Region of constantValues, indexed by constant index
+	 */
+	private int[] constantStamps = new int[16];
+	
+	/**
+	 * Value numbers of the temps, indexed by temp number
+	 */
+	private int[] tempValues = new int[16];
+	
+	/**
+	 * Operand read in place of each temp, indexed by temp number
+	 */
+	private int[] tempNames = new int[16];
+	
+	/**
+	 * Statement of tempValues and tempNames, indexed by temp number
+	 */
+	private int[] tempStamps = new int[16];
+	
+	/**
+	 * Open-addressed hash table of the expressions: opcode ordinals
+	 */
+	private int[] keyOpcodes = new int[256];
+	
+	/**
+	 * Value numbers of the first operands, indexed like keyOpcodes
+	 */
+	private int[] keyArgs1 = new int[256];
+	
+	/**
+	 * Value numbers of the second operands, indexed like keyOpcodes
+	 */
+	private int[] keyArgs2 = new int[256];
+	
+	/**
+	 * Value numbers of the expressions, indexed like keyOpcodes
+	 */
+	private int[] keyValues = new int[256];
+	
+	/**
+	 * Region of each slot, indexed like keyOpcodes. Slots of other regions are empty.
+	 */
+	private int[] keyStamps = new int[256];
+	
+	/**
+	 * Number of expressions in the region
+	 */
+	private int expressions;
+	
+	/**
+	 * Number of quads removed so far
+	 */
+	private long removed;
+	
+	/**Constructor
+	 * @param next	Sink of the optimized 3AC
+	 */
+	public ValueNumbering(TACSink next){
+		this.next = next;
+		region = 1;
+		segment = 1;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#accept(edu.utt.wallace.syntax.QuadBuffer)
+	 * Numbers the chunk and passes on the quads that are kept.
+	 */
+	@Override
+	public void accept(QuadBuffer quads) throws IOException{
+		int size = quads.size();
+		for(int i = 0; i < size; ++i){
+			Opcode opcode = quads.opcode(i);
+			switch (opcode.form()){
+			case Opcode.LABEL:
+				out.label(quads.result(i));
+				newRegion();
+				break;
+			case Opcode.JUMP:
+				out.jump(quads.result(i));
+				newRegion();
+				break;
+			case Opcode.TEST:
+				out.test(name(quads.arg1(i)), name(quads.arg2(i)), quads.comparison(i), quads.result(i));
+				endStatement();
+				break;
+			default:
+				if(opcode == Opcode.MOV){
+					move(quads.arg1(i), quads.result(i));
+				}else{
+					compute(opcode, quads.arg1(i), quads.arg2(i), quads.result(i));
+				}
+				break;
+			}
+		}
+		next.accept(out);
+		out.clear();
+	}
+	
+	/**Method: move(int, int)
+	 * Description:
+	 * 		Handles a MOV, which ends a statement: the target takes the value
+	 * 		number of the source and becomes the holder of the value.
+	 * @param source
+	 * @param target
+	 */
+	private void move(int source, int target){
+		int value = value(source);
+		out.add(Opcode.MOV, name(source), target);
+		define(target, value, target);
+		if(Operand.kind(holders[value]) == Operand.TEMP || !holds(holders[value], value)){
+			holders[value] = target;
+		}
+		endStatement();
+	}
+	
+	/**Method: endStatement(void)
+	 * Description:
+	 * 		Retires the temps of the statement (or condition) that just ended.
+	 * 		A very long region is cut here, so that the tables stay small
+	 * 		enough to be fast; giving up on values numbered that far back
+	 * 		loses next to nothing.
+	 */
+	private void endStatement(){
+		++segment;
+		if(values > MAX_VALUES){
+			newRegion();
+		}
+	}
+	
+	/**Method: compute(Opcode, int, int, int)
+	 * Description:
+	 * 		Handles an arithmetic quad, dropping it if its value is already held.
+	 * @param opcode
+	 * @param arg1
+	 * @param arg2
+	 * @param result
+	 */
+	private void compute(Opcode opcode, int arg1, int arg2, int result){
+		int name1 = name(arg1);
+		int name2 = name(arg2);
+		int value1 = value(arg1);
+		int value2 = opcode.form() == Opcode.UNARY ? NO_VALUE : value(arg2);
+		if((opcode == Opcode.ADD || opcode == Opcode.MUL) && value1 > value2){
+			int swap = value1;
+			value1 = value2;
+			value2 = swap;
+		}
+		
+		int slot = find(opcode.ordinal(), value1, value2);
+		if(keyStamps[slot] == region && Operand.kind(result) == Operand.TEMP){
+			int value = keyValues[slot];
+			int holder = holders[value];
+			if(holds(holder, value)){
+				define(result, value, holder);
+				++removed;
+				return;
+			}
+		}
+		
+		out.add(opcode, name1, name2, result);
+		int value = newValue(result);
+		define(result, value, result);
+		keyValues[slot] = value;
+		if(keyStamps[slot] != region){
+			keyOpcodes[slot] = opcode.ordinal();
+			keyArgs1[slot] = value1;
+			keyArgs2[slot] = value2;
+			keyStamps[slot] = region;
+			if(++expressions * 2 > keyStamps.length){
+				rehash();
+			}
+		}
+	}
+	
+	/**Method: find(int, int, int)
+	 * @param opcode	Opcode ordinal
+	 * @param value1	Value number of the first operand
+	 * @param value2	Value number of the second operand, NO_VALUE if none
+	 * @return	Slot of the expression, or the empty slot where it belongs
+	 */
+	private int find(int opcode, int value1, int value2){
+		int mask = keyStamps.length - 1;
+		int slot = hash(opcode, value1, value2) & mask;
+		while(keyStamps[slot] == region){
+			if(keyOpcodes[slot] == opcode && keyArgs1[slot] == value1 && keyArgs2[slot] == value2){
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/**Method: hash(int, int, int)
+	 * @param opcode
+	 * @param value1
+	 * @param value2
+	 * @return	Hash of an expression
+	 */
+	private static int hash(int opcode, int value1, int value2){
+		long h = ((long) value1 << 32 ^ value2 & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L + opcode;
+		h *= 0x9E3779B97F4A7C15L;
+		return (int) (h ^ h >>> 32);
+	}
+	
+	/**Method: rehash(void)
+	 * Description:
+	 * 		Doubles the expression table, keeping the entries of the region only.
+	 */
+	private void rehash(){
+		int[] opcodes = keyOpcodes;
+		int[] args1 = keyArgs1;
+		int[] args2 = keyArgs2;
+		int[] values = keyValues;
+		int[] stamps = keyStamps;
+		int capacity = stamps.length * 2;
+		keyOpcodes = new int[capacity];
+		keyArgs1 = new int[capacity];
+		keyArgs2 = new int[capacity];
+		keyValues = new int[capacity];
+		keyStamps = new int[capacity];
+		for(int i = 0; i < stamps.length; ++i){
+			if(stamps[i] == region){
+				int slot = find(opcodes[i], args1[i], args2[i]);
+				keyOpcodes[slot] = opcodes[i];
+				keyArgs1[slot] = args1[i];
+				keyArgs2[slot] = args2[i];
+				keyValues[slot] = values[i];
+				keyStamps[slot] = region;
+			}
+		}
+	}
+	
+	/**Method: newRegion(void)
+	 * Description:
+	 * 		Forgets every value number, at the start of a straight-line region.
+	 */
+	private void newRegion(){
+		++region;
+		++segment;
+		values = 0;
+		expressions = 0;
+	}
+	
+	/**Method: newValue(int)
+	 * @param holder	Operand holding the value
+	 * @return	A new value number
+	 */
+	private int newValue(int holder){
+		if(values == holders.length){
+			holders = Arrays.copyOf(holders, values * 2);
+		}
+		holders[values] = holder;
+		return values++;
+	}
+	
+	/**Method: value(int)
+	 * Description:
+	 * 		Gives the value number of an operand, numbering it first if it
+	 * 		has none in this region. A missing operand gets a new value
+	 * 		number every time, so it is never matched.
+	 * @param operand
+	 * @return	Its value number
+	 */
+	private int value(int operand){
+		if(operand == Operand.NONE){
+			return newValue(Operand.NONE);
+		}
+		int index = Operand.index(operand);
+		switch (Operand.kind(operand)){
+		case Operand.TEMP:
+			if(index < tempStamps.length && tempStamps[index] == segment){
+				return tempValues[index];
+			}
+			break;
+		case Operand.CONST:
+			if(index < constantStamps.length && constantStamps[index] == region){
+				return constantValues[index];
+			}
+			break;
+		case Operand.LABEL:
+			return newValue(operand);
+		default:
+			if(index < symbolStamps.length && symbolStamps[index] == region){
+				return symbolValues[index];
+			}
+			break;
+		}
+		int value = newValue(operand);
+		define(operand, value, operand);
+		return value;
+	}
+	
+	/**Method: name(int)
+	 * @param operand
+	 * @return	The operand to read in place of the given one
+	 */
+	private int name(int operand){
+		if(Operand.kind(operand) == Operand.TEMP){
+			int index = Operand.index(operand);
+			if(index < tempStamps.length && tempStamps[index] == segment){
+				return tempNames[index];
+			}
+		}
+		return operand;
+	}
+	
+	/**Method: holds(int, int)
+	 * @param operand
+	 * @param value
+	 * @return	True if the operand still holds the given value number
+	 */
+	private boolean holds(int operand, int value){
+		if(operand == Operand.NONE){
+			return false;
+		}
+		int index = Operand.index(operand);
+		switch (Operand.kind(operand)){
+		case Operand.TEMP:
+			return tempStamps[index] == segment && tempValues[index] == value && tempNames[index] == operand;
+		case Operand.CONST:
+			return constantStamps[index] == region && constantValues[index] == value;
+		case Operand.LABEL:
+			return false;
+		default:
+			return symbolStamps[index] == region && symbolValues[index] == value;
+		}
+	}
+	
+	/**Method: define(int, int, int)
+	 * Description:
+	 * 		Records the value number of an operand that was written.
+	 * @param operand	A temp, a variable or a constant
+	 * @param value		Its value number
+	 * @param name		The operand to read in place of it, for temps
+	 */
+	private void define(int operand, int value, int name){
+		int index = Operand.index(operand);
+		switch (Operand.kind(operand)){
+		case Operand.TEMP:
+			if(index >= tempStamps.length){
+				int capacity = Math.max(index + 1, tempStamps.length * 2);
+				tempValues = Arrays.copyOf(tempValues, capacity);
+				tempNames = Arrays.copyOf(tempNames, capacity);
+				tempStamps = Arrays.copyOf(tempStamps, capacity);
+			}
+			tempValues[index] = value;
+			tempNames[index] = name;
+			tempStamps[index] = segment;
+			break;
+		case Operand.CONST:
+			if(index >= constantStamps.length){
+				int capacity = Math.max(index + 1, constantStamps.length * 2);
+				constantValues = Arrays.copyOf(constantValues, capacity);
+				constantStamps = Arrays.copyOf(constantStamps, capacity);
+			}
+			constantValues[index] = value;
+			constantStamps[index] = region;
+			break;
+		default:
+			if(index >= symbolStamps.length){
+				int capacity = Math.max(index + 1, symbolStamps.length * 2);
+				symbolValues = Arrays.copyOf(symbolValues, capacity);
+				symbolStamps = Arrays.copyOf(symbolStamps, capacity);
+			}
+			symbolValues[index] = value;
+			symbolStamps[index] = region;
+			break;
+		}
+	}
+	
+	/**Method: removed(void)
+	 * @return	Number of quads removed so far
+	 */
+	public long removed(){
+		return removed;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utt.wallace.syntax.TACSink#flush()
+	 * Flushes the next sink.
+	 */
+	@Override
+	public void flush() throws IOException{
+		next.flush();
+	}
+}